@@ -0,0 +1,131 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Запуск замеров JMH с сохранением результатов в JSON и сравнением с базовой линией.
+ * Аргументы командной строки передаются JMH как есть, например: StorageBenchmark -p rows=1000000
+ * <p>
+ * Системные свойства:
+ * jmh.baseline - файл базовой линии (по умолчанию src/jmh/baseline.json),
+ * jmh.threshold - допустимое ухудшение, доля (по умолчанию 0.10),
+ * jmh.updateBaseline - записать текущие результаты как новую базовую линию.
+ * Если хотя бы один замер хуже базовой линии больше допустимого, процесс завершается с кодом 1.
+ */
+public class BenchmarkRunner {
+
+    static final String DEFAULT_RESULT = "target/jmh-result.json";
+    static final String DEFAULT_BASELINE = "src/jmh/baseline.json";
+    static final double DEFAULT_THRESHOLD = 0.10;
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Path result = Paths.get(cli.getResult().orElse(DEFAULT_RESULT));
+        if (result.getParent() != null) {
+            Files.createDirectories(result.getParent());
+        }
+        Options options = new OptionsBuilder()
+                .parent(cli)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Path baseline = Paths.get(System.getProperty("jmh.baseline", DEFAULT_BASELINE));
+        double threshold = Double.parseDouble(System.getProperty("jmh.threshold", String.valueOf(DEFAULT_THRESHOLD)));
+        int regressions = 0;
+        if (Files.exists(baseline)) {
+            regressions = compare(results, readBaseline(baseline), threshold);
+        } else {
+            System.out.println("Базовая линия " + baseline + " не найдена, сравнение пропущено");
+        }
+        if (Boolean.getBoolean("jmh.updateBaseline")) {
+            Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Базовая линия обновлена: " + baseline);
+        } else if (regressions > 0) {
+            System.out.println("Ухудшений больше " + Math.round(threshold * 100) + "%: " + regressions);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Ключ замера: имя метода и значения параметров, например "org.example.StorageBenchmark.gameExists{rows=10000}".
+     */
+    private static String key(String benchmark, Map<String, String> params) {
+        return benchmark + new TreeMap<>(params);
+    }
+
+    /**
+     * Читает результаты JMH в формате JSON: ключ замера -> [оценка, 1 если больше - лучше].
+     */
+    private static Map<String, double[]> readBaseline(Path file) throws IOException {
+        JSONArray runs = new JSONArray(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        Map<String, double[]> scores = new HashMap<>();
+        for (int i = 0; i < runs.length(); i++) {
+            JSONObject run = runs.getJSONObject(i);
+            Map<String, String> params = new HashMap<>();
+            JSONObject json = run.optJSONObject("params");
+            if (json != null) {
+                for (String name : json.keySet()) {
+                    params.put(name, json.getString(name));
+                }
+            }
+            double higherIsBetter = "thrpt".equals(run.getString("mode")) ? 1 : 0;
+            scores.put(key(run.getString("benchmark"), params),
+                    new double[]{run.getJSONObject("primaryMetric").getDouble("score"), higherIsBetter});
+        }
+        return scores;
+    }
+
+    /**
+     * Печатает изменение каждого замера относительно базовой линии.
+     *
+     * @return число замеров, ухудшившихся больше допустимого
+     */
+    private static int compare(Collection<RunResult> results, Map<String, double[]> baseline, double threshold) {
+        int regressions = 0;
+        System.out.println();
+        System.out.printf("%-90s %14s %14s %9s%n", "Замер", "База", "Сейчас", "Изменение");
+        for (RunResult run : results) {
+            Map<String, String> params = new HashMap<>();
+            for (String name : run.getParams().getParamsKeys()) {
+                params.put(name, run.getParams().getParam(name));
+            }
+            String key = key(run.getParams().getBenchmark(), params);
+            double score = run.getPrimaryResult().getScore();
+            double[] base = baseline.get(key);
+            if (base == null) {
+                System.out.printf("%-90s %14s %14.3f %9s%n", key, "-", score, "новый");
+                continue;
+            }
+            double change = (score - base[0]) / base[0];
+            // Для времени выполнения рост - ухудшение, для пропускной способности - улучшение
+            double worse = base[1] > 0 ? -change : change;
+            String mark = "";
+            if (worse > threshold) {
+                regressions++;
+                mark = " !";
+            }
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%%s%n", key, base[0], score, change * 100, mark);
+        }
+        return regressions;
+    }
+}
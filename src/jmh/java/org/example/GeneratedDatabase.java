@@ -0,0 +1,145 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * Тестовая база пройденных игр заданного размера для замеров.
+ * Строки записываются в таблицу старого формата, а схему до последней версии доводят
+ * обычные миграции при открытии Storage, поэтому база соответствует текущему коду.
+ * Готовый файл переиспользуется между запусками: база на 10 млн строк создается несколько минут.
+ * Замеры записи работают с временной копией (см. copy), чтобы общая база не росла от запуска к запуску.
+ */
+class GeneratedDatabase {
+
+    /** Каталог с файлами сгенерированных баз */
+    static final String DIRECTORY = System.getProperty("jmh.db.dir", "target/jmh-db");
+
+    /** Сколько игр в среднем приходится на один чат */
+    static final int GAMES_PER_CHAT = 50;
+
+    /** Число разных названий */
+    static final int TITLES = 5000;
+
+    /** Число разных издателей */
+    static final int AUTHORS = 500;
+
+    /** Первый год выхода игр */
+    static final int FIRST_YEAR = 1980;
+
+    /** Число разных годов выхода */
+    static final int YEARS = 44;
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private GeneratedDatabase() {
+    }
+
+    /**
+     * Возвращает адрес базы с указанным числом строк, создавая ее при первом обращении.
+     *
+     * @param rows число пройденных игр
+     * @return адрес базы для JDBC
+     */
+    static synchronized String url(int rows) throws SQLException {
+        File file = file(rows);
+        String url = "jdbc:sqlite:" + file.getPath();
+        if (!file.exists()) {
+            file.getParentFile().mkdirs();
+            File partial = new File(DIRECTORY, "games-" + rows + ".db.partial");
+            partial.delete();
+            fill("jdbc:sqlite:" + partial.getPath(), rows);
+            if (!partial.renameTo(file)) {
+                throw new SQLException("Не удалось переименовать " + partial);
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Копирует базу с указанным числом строк во временный файл рядом с ней, создавая базу при необходимости.
+     * Копию удаляет delete.
+     *
+     * @param rows число пройденных игр
+     * @return файл копии
+     */
+    static File copy(int rows) throws SQLException {
+        url(rows);
+        File source = file(rows);
+        try {
+            File copy = File.createTempFile("games-" + rows + "-", ".db", new File(DIRECTORY));
+            Files.copy(source.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return copy;
+        } catch (IOException e) {
+            throw new SQLException("Не удалось скопировать " + source, e);
+        }
+    }
+
+    /**
+     * Удаляет копию базы вместе с файлами журнала
+     */
+    static void delete(File copy) {
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            new File(copy.getPath() + suffix).delete();
+        }
+    }
+
+    private static File file(int rows) {
+        return new File(DIRECTORY, "games-" + rows + ".db");
+    }
+
+    /**
+     * Число чатов в базе с указанным числом строк
+     */
+    static int chats(int rows) {
+        return Math.max(1, rows / GAMES_PER_CHAT);
+    }
+
+    static String title(int i) {
+        return "Game " + i;
+    }
+
+    static String author(int i) {
+        return "Publisher " + i;
+    }
+
+    private static void fill(String url, int rows) throws SQLException {
+        Random random = new Random(42);
+        int chats = chats(rows);
+        try (Connection connection = DriverManager.getConnection(url)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=OFF");
+                statement.execute("PRAGMA synchronous=OFF");
+                statement.execute("CREATE TABLE completed_games (title TEXT, author TEXT, year INTEGER, chat_id INTEGER, rating INTEGER)");
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO completed_games (title, author, year, chat_id, rating) VALUES (?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    insert.setString(1, title(random.nextInt(TITLES)));
+                    insert.setString(2, author(random.nextInt(AUTHORS)));
+                    insert.setInt(3, FIRST_YEAR + random.nextInt(YEARS));
+                    insert.setLong(4, random.nextInt(chats));
+                    insert.setInt(5, 1 + random.nextInt(5));
+                    insert.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        }
+        // Миграции добавят id, индексы и накопленные оценки
+        Storage storage = new Storage(new SqliteConnectionPool(url));
+        storage.close();
+    }
+}
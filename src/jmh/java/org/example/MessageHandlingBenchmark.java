@@ -0,0 +1,154 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеры MessageHandling.parseMessage: от разбора команды до готового ответа, включая запросы к базе.
+ * Одношаговые команды перебираются параметром Command.text, многошаговые диалоги замеряются целиком,
+ * чтобы чат после каждого вызова возвращался в исходное состояние.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageHandlingBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    /**
+     * Одношаговая команда, отдельным состоянием, чтобы диалоги не повторялись для каждой команды
+     */
+    @State(Scope.Benchmark)
+    public static class Command {
+        @Param({"/start", "/help", "/get", "/getplayed", "/getbyrating", "/getbyrating 2", "Привет"})
+        public String text;
+    }
+
+    /**
+     * Обработчик на временной копии базы для диалогов с записью. Названия вида "Bench n" остаются
+     * в словарях и полнотекстовом индексе, поэтому пишутся в копию, которая удаляется после замера.
+     */
+    @State(Scope.Benchmark)
+    public static class Writes {
+        /** Чат, в который пишут замеры изменений */
+        static final long CHAT = -1;
+
+        private File copy;
+        private Storage storage;
+        private MessageHandling messageHandling;
+        private int counter;
+
+        @Setup(Level.Trial)
+        public void setUp(MessageHandlingBenchmark benchmark) throws SQLException {
+            copy = GeneratedDatabase.copy(benchmark.rows);
+            storage = Storage.withWal("jdbc:sqlite:" + copy.getPath(), 4);
+            messageHandling = new MessageHandling(storage);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            storage.close();
+            GeneratedDatabase.delete(copy);
+        }
+    }
+
+    private Storage storage;
+    private MessageHandling messageHandling;
+    private int chats;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        storage = Storage.withWal(GeneratedDatabase.url(rows), 4);
+        messageHandling = new MessageHandling(storage);
+        chats = GeneratedDatabase.chats(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storage.close();
+    }
+
+    private long randomChat() {
+        return ThreadLocalRandom.current().nextInt(chats);
+    }
+
+    @Benchmark
+    public String command(Command command) {
+        return messageHandling.parseMessage(command.text, randomChat());
+    }
+
+    /**
+     * /getbyauthor и имя издателя
+     */
+    @Benchmark
+    public void gamesByAuthorDialog(Blackhole blackhole) {
+        long chatId = randomChat();
+        blackhole.consume(messageHandling.parseMessage("/getbyauthor", chatId));
+        blackhole.consume(messageHandling.parseMessage(
+                GeneratedDatabase.author(ThreadLocalRandom.current().nextInt(GeneratedDatabase.AUTHORS)), chatId));
+    }
+
+    /**
+     * /getbyyear и год
+     */
+    @Benchmark
+    public void gamesByYearDialog(Blackhole blackhole) {
+        long chatId = randomChat();
+        blackhole.consume(messageHandling.parseMessage("/getbyyear", chatId));
+        blackhole.consume(messageHandling.parseMessage(
+                String.valueOf(GeneratedDatabase.FIRST_YEAR + ThreadLocalRandom.current().nextInt(GeneratedDatabase.YEARS)), chatId));
+    }
+
+    /**
+     * /addgame с оценкой, /editgame и /removegame в отдельном чате копии базы, который в конце снова пуст
+     */
+    @Benchmark
+    public void addEditRemoveDialog(Writes writes, Blackhole blackhole) {
+        int n = writes.counter++;
+        MessageHandling handling = writes.messageHandling;
+        blackhole.consume(handling.parseMessage("/addgame", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("Bench " + n, Writes.CHAT));
+        blackhole.consume(handling.parseMessage("Author", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("2000", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("5", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("/editgame", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("1", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("Edited " + n, Writes.CHAT));
+        blackhole.consume(handling.parseMessage("Author", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("2001", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("/removegame", Writes.CHAT));
+        blackhole.consume(handling.parseMessage("1", Writes.CHAT));
+    }
+
+    /**
+     * /playpuzzle, неверный ответ и /stoppuzzle
+     */
+    @Benchmark
+    public void puzzleDialog(Blackhole blackhole) {
+        long chatId = randomChat();
+        blackhole.consume(messageHandling.parseMessage("/playpuzzle", chatId));
+        blackhole.consume(messageHandling.parseMessage("не знаю", chatId));
+        blackhole.consume(messageHandling.parseMessage("/stoppuzzle", chatId));
+    }
+}
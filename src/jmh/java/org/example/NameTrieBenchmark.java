@@ -0,0 +1,94 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Замеры подсказок имен по дереву с миллионом разных имен.
+ * Подсказка по первым буквам должна занимать микросекунды и не зависеть от числа имен,
+ * а чтения из нескольких потоков не должны мешать друг другу.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dnames.trie.max=4000000")
+@Threads(4)
+public class NameTrieBenchmark {
+
+    private static final String[] WORDS = {"Blizzard", "Bethesda", "Мосигра", "Ёжик", "Valve", "Nival",
+            "Акелла", "Bioware", "Ubisoft", "Бука", "Paradox", "Owlcat"};
+
+    @Param({"1000000"})
+    public int names;
+
+    private NameTrie trie;
+
+    /** Номера для имен, которых еще нет в дереве */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Имя с номером i: слово из небольшого набора, как у настоящих издателей с общим началом, и номер
+     */
+    static String name(long i) {
+        return WORDS[(int) (i % WORDS.length)] + " Studio " + i;
+    }
+
+    @Setup
+    public void setUp() {
+        trie = new NameTrie();
+        for (int i = 0; i < names; i++) {
+            trie.add(name(i));
+        }
+        next.set(names);
+        System.out.println("\n" + trie.getStatistics());
+    }
+
+    /**
+     * Подсказка после трех букв: под префиксом десятки тысяч имен, берутся первые пять
+     */
+    @Benchmark
+    public List<String> suggestShortPrefix() {
+        String word = WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)];
+        return trie.suggest(word.substring(0, 3), MessageHandling.SUGGEST_LIMIT);
+    }
+
+    /**
+     * Подсказка по почти полному имени
+     */
+    @Benchmark
+    public List<String> suggestLongPrefix() {
+        String name = name(ThreadLocalRandom.current().nextInt(names));
+        return trie.suggest(name.substring(0, name.length() - 1), MessageHandling.SUGGEST_LIMIT);
+    }
+
+    @Benchmark
+    public List<String> suggestMissing() {
+        return trie.suggest("Zzz", MessageHandling.SUGGEST_LIMIT);
+    }
+
+    /**
+     * Добавление нового имени, как после записи игры с новым издателем
+     */
+    @Benchmark
+    @Threads(1)
+    public boolean addName() {
+        return trie.add(name(next.getAndIncrement()));
+    }
+}
@@ -0,0 +1,85 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеры режима загадок: выбор случайной загадки и проверка ответа.
+ * Проверка ответа должна оставаться в пределах долей микросекунды и не создавать объектов
+ * (удобно смотреть с -prof gc).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PuzzleBenchmark {
+
+    private static final long CHAT_ID = 1;
+
+    /** Номера загадок встроенного корпуса: "Часы" и "Обещание" */
+    private static final int CLOCK_PUZZLE = 2;
+    private static final int PROMISE_PUZZLE = 18;
+
+    private PuzzleGame game;
+    private final AnswerMatcher matcher = new AnswerMatcher(PuzzleCorpus.defaultCorpus());
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        game = new PuzzleGame();
+        game.startPuzzle(CHAT_ID);
+    }
+
+    @Benchmark
+    public int getRandomPuzzle() {
+        return game.progress(CHAT_ID).pickRandom();
+    }
+
+    /**
+     * Проверка ответа без выбора следующей загадки: нормализация и сравнение с вариантами
+     */
+    @Benchmark
+    public boolean matchExactAnswer() {
+        return matcher.matches(CLOCK_PUZZLE, "Часы");
+    }
+
+    @Benchmark
+    public boolean matchAnswerWithTypo() {
+        return matcher.matches(PROMISE_PUZZLE, "  обешанее!");
+    }
+
+    @Benchmark
+    public boolean matchWrongAnswer() {
+        return matcher.matches(PROMISE_PUZZLE, "объяснение");
+    }
+
+    @Benchmark
+    public String checkWrongAnswer() {
+        return game.checkAnswer(CHAT_ID, "не знаю");
+    }
+
+    /**
+     * Верный ответ переходит к следующей загадке. Когда загадки кончаются,
+     * игра начинается заново, и эта стоимость делится на все загадки.
+     */
+    @Benchmark
+    public String checkCorrectAnswer() {
+        String response = game.checkAnswer(CHAT_ID, game.getCurrentPuzzle(CHAT_ID).getAnswer());
+        if (!response.startsWith("Верно!")) {
+            game.restart(CHAT_ID);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,76 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеры выдачи цитат из большого корпуса в файле.
+ * Время /get не должно зависеть от числа цитат, а потоки не должны мешать друг другу.
+ * Файл корпуса создается один раз и переиспользуется, как база в GeneratedDatabase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class QuoteBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int quotes;
+
+    private QuoteService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path file = Paths.get(GeneratedDatabase.DIRECTORY, "quotes-" + quotes + ".txt");
+        if (!Files.exists(file)) {
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < quotes; i++) {
+                    out.write("Цитата: мысль номер " + i + ", записанная для замера.\n\nАвтор " + (i % 5000) + "\n%\n");
+                }
+            }
+        }
+        service = new QuoteService(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.close();
+    }
+
+    @Benchmark
+    public String getRandQuote() {
+        return service.getRandQuote();
+    }
+
+    /**
+     * Цитата без повторов для одного из тысячи чатов
+     */
+    @Benchmark
+    public String getRandQuoteNoRepeat() {
+        return service.getRandQuote(ThreadLocalRandom.current().nextInt(1000));
+    }
+}
@@ -0,0 +1,157 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Замеры запросов Storage на сгенерированной базе.
+ * Размер базы задается параметром rows, например: -p rows=10000,1000000,10000000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    /**
+     * Хранилище на временной копии базы для замеров записи. Новые игры оставляют строки в словарях
+     * и полнотекстовом индексе, поэтому пишутся в копию, которая удаляется после замера.
+     */
+    @State(Scope.Benchmark)
+    public static class Writes {
+        /** Чат, в который пишут замеры изменений, чтобы не трогать сгенерированные данные */
+        static final long CHAT = -1;
+
+        private File copy;
+        private Storage storage;
+
+        @Setup(Level.Trial)
+        public void setUp(StorageBenchmark benchmark) throws SQLException {
+            copy = GeneratedDatabase.copy(benchmark.rows);
+            storage = Storage.withWal("jdbc:sqlite:" + copy.getPath(), 4);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            storage.close();
+            GeneratedDatabase.delete(copy);
+        }
+    }
+
+    private Storage storage;
+    private int chats;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        storage = Storage.withWal(GeneratedDatabase.url(rows), 4);
+        chats = GeneratedDatabase.chats(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storage.close();
+    }
+
+    private long randomChat() {
+        return ThreadLocalRandom.current().nextInt(chats);
+    }
+
+    @Benchmark
+    public List<String> getPlayedGames() {
+        return storage.getPlayedGames(randomChat());
+    }
+
+    @Benchmark
+    public List<PlayedGame> getGames() {
+        return storage.getGames(randomChat());
+    }
+
+    /**
+     * Обход игр чата потоком, без сборки списка
+     */
+    @Benchmark
+    public long streamGames() {
+        try (Stream<PlayedGame> games = storage.streamGames(randomChat())) {
+            return games.mapToInt(PlayedGame::year).sum();
+        }
+    }
+
+    @Benchmark
+    public List<String> getGamesByAuthor() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return storage.getGamesByAuthor(GeneratedDatabase.author(random.nextInt(GeneratedDatabase.AUTHORS)), randomChat());
+    }
+
+    @Benchmark
+    public List<String> getGamesByYear() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return storage.getGamesByYear(GeneratedDatabase.FIRST_YEAR + random.nextInt(GeneratedDatabase.YEARS), randomChat());
+    }
+
+    @Benchmark
+    public boolean gameExists() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return storage.gameExists(GeneratedDatabase.title(random.nextInt(GeneratedDatabase.TITLES)),
+                GeneratedDatabase.author(random.nextInt(GeneratedDatabase.AUTHORS)),
+                GeneratedDatabase.FIRST_YEAR + random.nextInt(GeneratedDatabase.YEARS), randomChat());
+    }
+
+    @Benchmark
+    public List<String> getTopRatedGames() {
+        return storage.getTopRatedGames(0, MessageHandling.RATING_PAGE_SIZE + 1);
+    }
+
+    @Benchmark
+    public List<String> getGamesByAverageRating() {
+        return storage.getGamesByAverageRating(randomChat());
+    }
+
+    @Benchmark
+    public String getRandQuote() {
+        return storage.getRandQuote();
+    }
+
+    /**
+     * Добавление и изменение игры, затем очистка списка: полный цикл записи через поток писателя.
+     */
+    @Benchmark
+    public void addEditClear(Writes writes) {
+        writes.storage.addPlayedGame("Bench", "Author", 2000, 5, Writes.CHAT);
+        writes.storage.editPlayedGame("Bench", "Author", 2000, "Bench 2", "Author", 2001, Writes.CHAT);
+        writes.storage.clearPlayedGames(Writes.CHAT);
+    }
+
+    /**
+     * Оценки от многих чатов одновременно: писатель собирает их в общие транзакции,
+     * поэтому время одной записи должно падать с ростом числа потоков, а не упираться в синхронизацию диска.
+     */
+    @Benchmark
+    @Threads(8)
+    public void addPlayedGameConcurrent(Writes writes) {
+        writes.storage.addPlayedGame("Bench " + ThreadLocalRandom.current().nextLong(), "Author", 2000, 5, Writes.CHAT);
+    }
+}
@@ -0,0 +1,189 @@
+package org.example;
+
+/**
+ * Проверка ответов на загадки с допуском опечаток.
+ * Ответ и его синонимы (в корпусе они записаны через |) заранее приводятся к нормальной форме:
+ * нижний регистр, ё заменена на е, знаки препинания убраны, пробелы схлопнуты.
+ * Ответ пользователя нормализуется так же и сравнивается по расстоянию Левенштейна
+ * с допуском, зависящим от длины ответа: короткие ответы должны совпасть точно.
+ * Проверка не создает объектов: буферы у каждого потока свои.
+ */
+final class AnswerMatcher {
+
+    /** Разделитель синонимов в поле ответа */
+    static final char SYNONYM_SEPARATOR = '|';
+
+    /** До скольких загадок ответы нормализуются сразу при создании, а не при первой проверке */
+    static final int EAGER_LIMIT = 10_000;
+
+    /**
+     * Нормализованные варианты ответа на одну загадку.
+     */
+    private static final class CompiledAnswer {
+        final char[][] variants;
+
+        CompiledAnswer(char[][] variants) {
+            this.variants = variants;
+        }
+    }
+
+    /**
+     * Буферы потока для нормализации ответа и строк таблицы расстояний.
+     */
+    private static final class Scratch {
+        char[] input = new char[64];
+        int[] previous = new int[65];
+        int[] current = new int[65];
+
+        void ensureCapacity(int length) {
+            if (input.length < length) {
+                int capacity = Math.max(length, input.length * 2);
+                input = new char[capacity];
+                previous = new int[capacity + 1];
+                current = new int[capacity + 1];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final PuzzleCatalog catalog;
+
+    /** Скомпилированные ответы по номеру загадки; заполняется лениво, гонка при заполнении безвредна */
+    private final CompiledAnswer[] compiled;
+
+    AnswerMatcher(PuzzleCatalog catalog) {
+        this.catalog = catalog;
+        this.compiled = new CompiledAnswer[catalog.size()];
+        if (catalog.size() <= EAGER_LIMIT) {
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = compile(catalog.acceptedAnswers(i));
+            }
+        }
+    }
+
+    /**
+     * Нормализует ответы, записанные через разделитель синонимов.
+     */
+    private static CompiledAnswer compile(String answers) {
+        String[] parts = answers.split("\\|");
+        char[][] variants = new char[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            variants[i] = normalize(parts[i]).toCharArray();
+        }
+        return new CompiledAnswer(variants);
+    }
+
+    /**
+     * Нормальная форма строки: "Капля  дождя!" -> "капля дождя", "Ёлка" -> "елка".
+     */
+    static String normalize(String text) {
+        char[] buffer = new char[text.length()];
+        return new String(buffer, 0, normalize(text, buffer));
+    }
+
+    /**
+     * Записывает нормальную форму строки в буфер длиной не меньше text.length().
+     *
+     * @return длина нормальной формы
+     */
+    private static int normalize(String text, char[] out) {
+        int length = 0;
+        boolean separator = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                separator = true;
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (separator && length > 0) {
+                out[length++] = ' ';
+            }
+            separator = false;
+            out[length++] = c;
+        }
+        return length;
+    }
+
+    /**
+     * Сколько опечаток допускается в ответе такой длины.
+     */
+    static int allowedDistance(int length) {
+        if (length <= 3) {
+            return 0;
+        }
+        return length <= 7 ? 1 : 2;
+    }
+
+    /**
+     * Проверяет ответ пользователя на загадку.
+     *
+     * @param puzzle     номер загадки в каталоге
+     * @param userAnswer ответ пользователя
+     * @return true, если ответ совпал с одним из вариантов с учетом допустимых опечаток
+     */
+    boolean matches(int puzzle, String userAnswer) {
+        CompiledAnswer answer = compiled[puzzle];
+        if (answer == null) {
+            answer = compile(catalog.acceptedAnswers(puzzle));
+            compiled[puzzle] = answer;
+        }
+        Scratch scratch = SCRATCH.get();
+        scratch.ensureCapacity(userAnswer.length());
+        int length = normalize(userAnswer, scratch.input);
+        for (char[] variant : answer.variants) {
+            if (withinDistance(variant, scratch.input, length, allowedDistance(variant.length), scratch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверяет, что расстояние Левенштейна между образцом и вводом не больше k.
+     * Считаются только клетки в полосе шириной 2k + 1 вокруг диагонали, и проверка
+     * прекращается, как только вся строка таблицы превысила k.
+     */
+    private static boolean withinDistance(char[] pattern, char[] input, int n, int k, Scratch scratch) {
+        int m = pattern.length;
+        if (Math.abs(m - n) > k) {
+            return false;
+        }
+        int outside = k + 1;
+        int[] previous = scratch.previous;
+        int[] current = scratch.current;
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j <= k ? j : outside;
+        }
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - k);
+            int to = Math.min(n, i + k);
+            current[0] = i <= k ? i : outside;
+            if (from > 1) {
+                current[from - 1] = outside;
+            }
+            int rowMin = current[0];
+            char c = pattern[i - 1];
+            for (int j = from; j <= to; j++) {
+                int substitution = previous[j - 1] + (c == input[j - 1] ? 0 : 1);
+                int distance = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(distance, outside);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < n) {
+                current[to + 1] = outside;
+            }
+            if (rowMin > k) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[n] <= k;
+    }
+}
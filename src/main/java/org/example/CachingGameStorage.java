@@ -0,0 +1,497 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Кэш списков пройденных игр перед хранилищем.
+ * Список чата загружается из базы целиком при первом чтении и сразу индексируется по издателю и году,
+ * поэтому повторные /getplayed, /getbyauthor, /getbyyear, /removegame и /editgame не обращаются к диску.
+ * Список больше всего кэша не загружается: чат запоминается как слишком большой на время жизни списка,
+ * и его чтения идут в хранилище постранично и по индексам.
+ * Все записи идут через кэш: удаление и изменение по id правят закэшированный список,
+ * новая игра дописывается в его конец (у нее самый большой id),
+ * остальные записи сбрасывают его, и следующее чтение загружает список заново.
+ * Отказ записи из-за дубликата список не меняет, если кэш уже знает об этой игре.
+ * Кэш ограничен числом игр во всех списках (вытесняются давно не читавшиеся чаты) и временем жизни списка.
+ */
+class CachingGameStorage implements GameStorage {
+
+    /** Сколько игр всех чатов держать в памяти */
+    static final int DEFAULT_MAX_GAMES = 200_000;
+
+    /** Сколько живет закэшированный список, мс */
+    static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    /** Число полос счетчиков записи, см. versions */
+    private static final int STRIPES = 64;
+
+    /**
+     * Неизменяемый список игр одного чата с индексами.
+     */
+    private static final class ChatLibrary {
+        final List<PlayedGame> games;
+        final List<String> titles;
+        final Map<String, List<String>> titlesByAuthor = new HashMap<>();
+        final Map<Integer, List<String>> titlesByYear = new HashMap<>();
+        final Set<PlayedGame> keys = new HashSet<>();
+        final long loadedAt;
+
+        ChatLibrary(List<PlayedGame> games, long loadedAt) {
+            this.games = Collections.unmodifiableList(games);
+            this.loadedAt = loadedAt;
+            List<String> allTitles = new ArrayList<>(games.size());
+            for (PlayedGame game : games) {
+                allTitles.add(game.title());
+                titlesByAuthor.computeIfAbsent(game.author(), author -> new ArrayList<>()).add(game.title());
+                titlesByYear.computeIfAbsent(game.year(), year -> new ArrayList<>()).add(game.title());
+                keys.add(key(game.title(), game.author(), game.year()));
+            }
+            this.titles = Collections.unmodifiableList(allTitles);
+        }
+
+        /**
+         * Ключ для проверки gameExists: сравниваются только название, издатель и год
+         */
+        static PlayedGame key(String title, String author, int year) {
+            return new PlayedGame(0, title, author, year, null);
+        }
+
+        /**
+         * Позиция первой игры с id больше указанного
+         */
+        int indexAfter(long id) {
+            int low = 0;
+            int high = games.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (games.get(middle).id() <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        int indexOf(long id) {
+            int index = indexAfter(id - 1);
+            return index < games.size() && games.get(index).id() == id ? index : -1;
+        }
+
+        PlayedGame last() {
+            return games.isEmpty() ? null : games.get(games.size() - 1);
+        }
+
+        /**
+         * Список с дописанными в конец играми
+         */
+        ChatLibrary append(List<PlayedGame> added) {
+            List<PlayedGame> grown = new ArrayList<>(games.size() + added.size());
+            grown.addAll(games);
+            grown.addAll(added);
+            return new ChatLibrary(grown, loadedAt);
+        }
+
+        /**
+         * Список с замененной игрой; replacement == null удаляет игру
+         */
+        ChatLibrary replace(int index, PlayedGame replacement) {
+            List<PlayedGame> changed = new ArrayList<>(games);
+            if (replacement == null) {
+                changed.remove(index);
+            } else {
+                changed.set(index, replacement);
+            }
+            return new ChatLibrary(changed, loadedAt);
+        }
+    }
+
+    private final GameStorage delegate;
+    private final int maxGames;
+    private final long ttl;
+
+    /** Списки чатов в порядке последнего чтения; доступ под блокировкой самой карты */
+    private final LinkedHashMap<Long, ChatLibrary> libraries = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedGames;
+
+    /** Чаты, список которых не поместится в кэш, и время, когда это выяснилось; доступ под блокировкой libraries */
+    private final Map<Long, Long> oversized = new HashMap<>();
+
+    /**
+     * Счетчики записей по полосам чатов. Загруженный список кладется в кэш, только если во время загрузки
+     * в его полосе не было записей, иначе в кэш мог бы попасть список до записи.
+     */
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    CachingGameStorage(GameStorage delegate) {
+        this(delegate, DEFAULT_MAX_GAMES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param delegate хранилище, к которому обращаются промахи и записи
+     * @param maxGames сколько игр всех чатов держать в памяти
+     * @param ttl      сколько живет закэшированный список, мс
+     */
+    CachingGameStorage(GameStorage delegate, int maxGames, long ttl) {
+        this.delegate = delegate;
+        this.maxGames = maxGames;
+        this.ttl = ttl;
+    }
+
+    private static int stripe(long chatId) {
+        return (int) (chatId ^ (chatId >>> 32)) & (STRIPES - 1);
+    }
+
+    /**
+     * Список чата из кэша без загрузки из базы
+     *
+     * @return закэшированный список или null, если его нет или он устарел
+     */
+    private ChatLibrary cached(long chatId) {
+        synchronized (libraries) {
+            ChatLibrary library = libraries.get(chatId);
+            if (library != null) {
+                if (System.currentTimeMillis() - library.loadedAt < ttl) {
+                    hits.incrementAndGet();
+                    return library;
+                }
+                remove(chatId);
+                evictions.incrementAndGet();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Список чата из кэша или из базы
+     *
+     * @return список или null, если он не помещается в кэш и чтение нужно передать хранилищу
+     */
+    private ChatLibrary library(long chatId) {
+        ChatLibrary cached = cached(chatId);
+        if (cached != null) {
+            return cached;
+        }
+        misses.incrementAndGet();
+        if (isOversized(chatId)) {
+            return null;
+        }
+        long version = versions.get(stripe(chatId));
+        // Читается на одну игру больше предела: так большой список виден, но целиком не загружается
+        List<PlayedGame> games = delegate.getGamesPage(chatId, 0, maxGames + 1);
+        long now = System.currentTimeMillis();
+        synchronized (libraries) {
+            if (games.size() > maxGames) {
+                oversized.put(chatId, now);
+                return null;
+            }
+            ChatLibrary library = new ChatLibrary(new ArrayList<>(games), now);
+            if (versions.get(stripe(chatId)) == version) {
+                put(chatId, library);
+            }
+            return library;
+        }
+    }
+
+    /**
+     * Отмечен ли чат как слишком большой для кэша; отметка живет столько же, сколько список
+     */
+    private boolean isOversized(long chatId) {
+        synchronized (libraries) {
+            Long markedAt = oversized.get(chatId);
+            if (markedAt == null) {
+                return false;
+            }
+            if (System.currentTimeMillis() - markedAt < ttl) {
+                return true;
+            }
+            oversized.remove(chatId);
+            return false;
+        }
+    }
+
+    private void put(long chatId, ChatLibrary library) {
+        remove(chatId);
+        libraries.put(chatId, library);
+        cachedGames += library.games.size();
+        Iterator<Map.Entry<Long, ChatLibrary>> eldest = libraries.entrySet().iterator();
+        while (cachedGames > maxGames && eldest.hasNext()) {
+            Map.Entry<Long, ChatLibrary> entry = eldest.next();
+            if (entry.getKey() == chatId) {
+                continue;
+            }
+            cachedGames -= entry.getValue().games.size();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(long chatId) {
+        ChatLibrary removed = libraries.remove(chatId);
+        if (removed != null) {
+            cachedGames -= removed.games.size();
+        }
+    }
+
+    /**
+     * Отмечает запись в чат и сбрасывает его список
+     */
+    private void invalidate(long chatId) {
+        synchronized (libraries) {
+            versions.incrementAndGet(stripe(chatId));
+            remove(chatId);
+        }
+    }
+
+    /**
+     * Отмечает добавление игры и дописывает в закэшированный список игры после его последней.
+     * Если список за это время заменили, он сбрасывается, а если перестал помещаться, чат отмечается как большой.
+     */
+    private void append(long chatId) {
+        ChatLibrary library;
+        synchronized (libraries) {
+            versions.incrementAndGet(stripe(chatId));
+            library = libraries.get(chatId);
+            if (library == null) {
+                return;
+            }
+        }
+        PlayedGame last = library.last();
+        List<PlayedGame> added = delegate.getGamesPage(chatId, last == null ? 0 : last.id(),
+                maxGames - library.games.size() + 1);
+        synchronized (libraries) {
+            versions.incrementAndGet(stripe(chatId));
+            if (libraries.get(chatId) != library) {
+                remove(chatId);
+            } else if (library.games.size() + added.size() > maxGames) {
+                remove(chatId);
+                oversized.put(chatId, System.currentTimeMillis());
+            } else {
+                put(chatId, library.append(added));
+            }
+        }
+    }
+
+    /**
+     * Отмечает запись в чат и заменяет игру в закэшированном списке, если он есть
+     */
+    private void update(long chatId, long id, PlayedGame replacement) {
+        synchronized (libraries) {
+            versions.incrementAndGet(stripe(chatId));
+            ChatLibrary library = libraries.get(chatId);
+            if (library == null) {
+                return;
+            }
+            int index = library.indexOf(id);
+            if (index < 0) {
+                remove(chatId);
+                return;
+            }
+            PlayedGame updated = replacement == null ? null : new PlayedGame(id, replacement.title(),
+                    replacement.author(), replacement.year(), library.games.get(index).rating());
+            put(chatId, library.replace(index, updated));
+        }
+    }
+
+    /**
+     * Есть ли игра в закэшированном списке чата. Не загружает список и не меняет счетчики.
+     */
+    private boolean cachedContains(long chatId, String title, String author, int year) {
+        synchronized (libraries) {
+            ChatLibrary library = libraries.get(chatId);
+            return library != null && library.keys.contains(ChatLibrary.key(title, author, year));
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Возвращает сводку по работе кэша для логов.
+     */
+    String getStatistics() {
+        synchronized (libraries) {
+            return "Кэш списков игр: попаданий " + hits.get() + ", промахов " + misses.get()
+                    + ", вытеснено " + evictions.get() + ", чатов " + libraries.size() + ", игр " + cachedGames
+                    + ", больших чатов " + oversized.size();
+        }
+    }
+
+    @Override
+    public List<String> getPlayedGames(long chatId) {
+        ChatLibrary library = library(chatId);
+        return library == null ? delegate.getPlayedGames(chatId) : library.titles;
+    }
+
+    @Override
+    public List<PlayedGame> getGames(long chatId) {
+        ChatLibrary library = library(chatId);
+        return library == null ? delegate.getGames(chatId) : library.games;
+    }
+
+    @Override
+    public Stream<PlayedGame> streamGames(long chatId, int fetchSize) {
+        ChatLibrary library = library(chatId);
+        return library == null ? delegate.streamGames(chatId, fetchSize) : library.games.stream();
+    }
+
+    @Override
+    public List<PlayedGame> getGamesPage(long chatId, long afterId, int limit) {
+        ChatLibrary library = library(chatId);
+        if (library == null) {
+            return delegate.getGamesPage(chatId, afterId, limit);
+        }
+        int from = library.indexAfter(afterId);
+        return library.games.subList(from, Math.min(library.games.size(), from + limit));
+    }
+
+    @Override
+    public List<PlayedGame> getGamesPageBefore(long chatId, long beforeId, int limit) {
+        ChatLibrary library = library(chatId);
+        if (library == null) {
+            return delegate.getGamesPageBefore(chatId, beforeId, limit);
+        }
+        int to = library.indexAfter(beforeId - 1);
+        return library.games.subList(Math.max(0, to - limit), to);
+    }
+
+    @Override
+    public List<String> getGamesByAuthor(String author, long chatId) {
+        ChatLibrary library = library(chatId);
+        return library == null ? delegate.getGamesByAuthor(author, chatId)
+                : library.titlesByAuthor.getOrDefault(author, List.of());
+    }
+
+    @Override
+    public List<String> getGamesByYear(int year, long chatId) {
+        ChatLibrary library = library(chatId);
+        return library == null ? delegate.getGamesByYear(year, chatId)
+                : library.titlesByYear.getOrDefault(year, List.of());
+    }
+
+    @Override
+    public List<PlayedGame> searchGames(long chatId, String query, int limit) {
+        // Поиск - один запрос по полнотекстовому индексу, его результаты не кэшируются
+        return delegate.searchGames(chatId, query, limit);
+    }
+
+    @Override
+    public List<PlayedGame> searchGamesByAuthor(String author, long chatId, int limit) {
+        return delegate.searchGamesByAuthor(author, chatId, limit);
+    }
+
+    @Override
+    public List<String> getAuthorsByPrefix(String prefix, long chatId, int limit) {
+        ChatLibrary library = library(chatId);
+        return library == null ? delegate.getAuthorsByPrefix(prefix, chatId, limit)
+                : NameTrie.withPrefix(library.titlesByAuthor.keySet(), prefix, limit);
+    }
+
+    @Override
+    public boolean gameExists(String title, String author, int year, long chatId) {
+        // Ради одной проверки список не загружается: хранилище ответит по фильтру или по индексу
+        ChatLibrary library = cached(chatId);
+        if (library == null) {
+            return delegate.gameExists(title, author, year, chatId);
+        }
+        return library.keys.contains(ChatLibrary.key(title, author, year));
+    }
+
+    @Override
+    public long findGameId(long chatId, int number) {
+        ChatLibrary library = library(chatId);
+        if (library == null) {
+            return delegate.findGameId(chatId, number);
+        }
+        List<PlayedGame> games = library.games;
+        return number >= 1 && number <= games.size() ? games.get(number - 1).id() : 0;
+    }
+
+    @Override
+    public void addPlayedGame(String title, String author, int year, int rating, long chatId) {
+        insertIfAbsent(title, author, year, rating, chatId);
+    }
+
+    @Override
+    public boolean insertIfAbsent(String title, String author, int year, int rating, long chatId) {
+        boolean inserted = delegate.insertIfAbsent(title, author, year, rating, chatId);
+        if (inserted) {
+            append(chatId);
+        } else if (!cachedContains(chatId, title, author, year)) {
+            // Игра добавлена мимо кэша: список нужно перечитать
+            invalidate(chatId);
+        }
+        return inserted;
+    }
+
+    @Override
+    public void editPlayedGame(String oldTitle, String oldAuthor, int oldYear,
+                               String newTitle, String newAuthor, int newYear, long chatId) {
+        delegate.editPlayedGame(oldTitle, oldAuthor, oldYear, newTitle, newAuthor, newYear, chatId);
+        invalidate(chatId);
+    }
+
+    @Override
+    public String removeById(long chatId, long id) {
+        String removed = delegate.removeById(chatId, id);
+        update(chatId, id, null);
+        return removed;
+    }
+
+    @Override
+    public GameUpdate updateById(long chatId, long id, String title, String author, int year) {
+        GameUpdate result = delegate.updateById(chatId, id, title, author, year);
+        if (result.applied()) {
+            update(chatId, id, new PlayedGame(id, title, author, year, null));
+        } else if (!result.duplicate() || !cachedContains(chatId, title, author, year)) {
+            // Игры нет или дубликат не виден в кэше: список устарел
+            invalidate(chatId);
+        }
+        return result;
+    }
+
+    @Override
+    public void clearPlayedGames(long chatId) {
+        delegate.clearPlayedGames(chatId);
+        synchronized (libraries) {
+            versions.incrementAndGet(stripe(chatId));
+            oversized.remove(chatId);
+            put(chatId, new ChatLibrary(new ArrayList<>(), System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public List<String> getGamesByAverageRating(long chatId) {
+        return delegate.getGamesByAverageRating(chatId);
+    }
+
+    @Override
+    public List<String> getTopRatedGames(int offset, int limit) {
+        return delegate.getTopRatedGames(offset, limit);
+    }
+}
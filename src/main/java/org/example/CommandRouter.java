@@ -0,0 +1,112 @@
+package org.example;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Обработчик команды или шага диалога.
+ */
+interface CommandHandler {
+    /**
+     * @param textMsg текст сообщения пользователя целиком
+     * @param chatId  идентификатор чата
+     * @return ответ пользователю
+     */
+    String handle(String textMsg, long chatId);
+}
+
+
+/**
+ * Реестр команд бота.
+ * Команды, которые сравниваются целиком, и их псевдонимы (например "Список_игр") лежат в хеш-таблице.
+ * Команды с аргументом после имени, например "/getbyrating 2" или "/checkanswer ответ",
+ * лежат в префиксном дереве. Поиск обработчика стоит одно обращение к таблице и проход по дереву
+ * не длиннее самой длинной команды, сколько бы команд ни было зарегистрировано.
+ */
+class CommandRouter {
+
+    /**
+     * Узел префиксного дерева.
+     */
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        CommandHandler handler;
+    }
+
+    private final Map<String, CommandHandler> exact = new HashMap<>();
+    private final Map<String, CommandHandler> ignoreCase = new HashMap<>();
+    private final Node prefixes = new Node();
+
+    /**
+     * Регистрирует команду, которая должна совпасть с сообщением целиком.
+     *
+     * @param handler обработчик
+     * @param names   имя команды и ее псевдонимы
+     * @return этот же реестр
+     */
+    CommandRouter register(CommandHandler handler, String... names) {
+        for (String name : names) {
+            exact.put(name, handler);
+        }
+        return this;
+    }
+
+    /**
+     * Регистрирует фразу, которая совпадает с сообщением без учета регистра, например "Дай подсказку".
+     */
+    CommandRouter registerIgnoreCase(CommandHandler handler, String... names) {
+        for (String name : names) {
+            ignoreCase.put(name.toLowerCase(Locale.ROOT), handler);
+        }
+        return this;
+    }
+
+    /**
+     * Регистрирует команду, с которой сообщение должно начинаться.
+     * Если подходит несколько команд, выбирается самая длинная.
+     *
+     * @param prefix  начало сообщения
+     * @param handler обработчик
+     * @return этот же реестр
+     */
+    CommandRouter registerPrefix(String prefix, CommandHandler handler) {
+        Node node = prefixes;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+        }
+        node.handler = handler;
+        return this;
+    }
+
+    /**
+     * Находит обработчик сообщения. Точное совпадение важнее совпадения по началу.
+     *
+     * @param textMsg текст сообщения
+     * @return обработчик или null, если сообщение не является командой
+     */
+    CommandHandler route(String textMsg) {
+        CommandHandler handler = exact.get(textMsg);
+        if (handler != null) {
+            return handler;
+        }
+        if (!ignoreCase.isEmpty()) {
+            handler = ignoreCase.get(textMsg.toLowerCase(Locale.ROOT));
+            if (handler != null) {
+                return handler;
+            }
+        }
+        Node node = prefixes;
+        CommandHandler longest = null;
+        for (int i = 0; i < textMsg.length(); i++) {
+            node = node.children.get(textMsg.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.handler != null) {
+                longest = node.handler;
+            }
+        }
+        return longest;
+    }
+}
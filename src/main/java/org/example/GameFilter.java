@@ -0,0 +1,203 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Фильтр Блума по ключам (chat_id, название, издатель, год) всех пройденных игр.
+ * Если фильтр отвечает "нет", игры точно нет в базе, и gameExists не обращается к диску.
+ * Ответ "возможно" проверяется запросом. Почти все добавляемые игры новые, поэтому до базы доходит
+ * в основном доля ложных срабатываний.
+ * Фильтр общий на все чаты: чат входит в ключ. Биты ставятся без блокировок, поэтому
+ * добавление и проверка могут идти из разных потоков. Удаленные игры из фильтра не убираются,
+ * они только немного повышают долю ложных срабатываний.
+ * Пока фильтр не заполнен по таблице (см. markReady), он на все отвечает "возможно".
+ */
+class GameFilter {
+
+    /** Системное свойство с ожидаемым числом игр, например -Dgames.filter.keys=10000000 */
+    static final String KEYS_PROPERTY = "games.filter.keys";
+
+    /** Системное свойство с допустимой долей ложных срабатываний, например -Dgames.filter.fpp=0.001 */
+    static final String FPP_PROPERTY = "games.filter.fpp";
+
+    static final long DEFAULT_EXPECTED_KEYS = 1_000_000;
+    static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+    private final long bits;
+    private final int hashes;
+    private final AtomicLongArray words;
+    private volatile boolean ready;
+
+    private final AtomicLong keys = new AtomicLong();
+    private final AtomicLong negatives = new AtomicLong();
+    private final AtomicLong positives = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     * @param expectedKeys      сколько игр ожидается; при большем числе доля ложных срабатываний растет
+     * @param falsePositiveRate допустимая доля ложных срабатываний при expectedKeys играх
+     */
+    GameFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Неверные параметры фильтра: " + expectedKeys + ", " + falsePositiveRate);
+        }
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        this.bits = Math.max(64, bitsFor(expectedKeys, falsePositiveRate));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedKeys * Math.log(2)));
+        this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+    }
+
+    /**
+     * Фильтр с размером из свойств games.filter.keys и games.filter.fpp
+     */
+    static GameFilter fromProperties() {
+        long expected = Long.getLong(KEYS_PROPERTY, DEFAULT_EXPECTED_KEYS);
+        String fpp = System.getProperty(FPP_PROPERTY);
+        return new GameFilter(expected, fpp == null ? DEFAULT_FALSE_POSITIVE_RATE : Double.parseDouble(fpp));
+    }
+
+    /**
+     * Число бит, при котором n ключей дают долю ложных срабатываний p: m = -n ln p / (ln 2)^2
+     */
+    static long bitsFor(long n, double p) {
+        return (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+    }
+
+    /**
+     * Сколько памяти нужно на миллион игр при доле ложных срабатываний p, байт
+     */
+    static long bytesPerMillion(double p) {
+        return (bitsFor(1_000_000, p) + 7) / 8;
+    }
+
+    /**
+     * 64-битный хэш ключа игры: FNV-1a по полям с перемешиванием в конце
+     */
+    private static long hash(long chatId, String title, String author, int year) {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ chatId) * 0x100000001b3L;
+        h = (h ^ year) * 0x100000001b3L;
+        h = mixString(h, title);
+        h = mixString(h, author);
+        return mix(h);
+    }
+
+    private static long mixString(long h, String value) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        // Разделитель, чтобы ("ab", "c") и ("a", "bc") давали разные хэши
+        return (h ^ 0xff) * 0x100000001b3L;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Позиция i-го бита ключа: двойное хэширование h1 + i * h2
+     */
+    private long bit(long h1, long h2, int i) {
+        return Math.floorMod(h1 + i * h2, bits);
+    }
+
+    /**
+     * Добавляет игру в фильтр. Вызывается до записи игры в базу, чтобы фильтр не отставал от базы.
+     */
+    void add(long chatId, String title, String author, int year) {
+        long h1 = hash(chatId, title, author, year);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = bit(h1, h2, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+        keys.incrementAndGet();
+    }
+
+    /**
+     * @return false, если игры точно нет; true, если она возможно есть или фильтр еще не заполнен
+     */
+    boolean mightContain(long chatId, String title, String author, int year) {
+        if (!ready) {
+            return true;
+        }
+        long h1 = hash(chatId, title, author, year);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = bit(h1, h2, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                negatives.incrementAndGet();
+                return false;
+            }
+        }
+        positives.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Отмечает, что в фильтр добавлены все игры из базы, и его ответам "нет" можно верить
+     */
+    void markReady() {
+        ready = true;
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Учитывает ответ "возможно", на который база ответила "нет"
+     */
+    void recordFalsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    long getNegatives() {
+        return negatives.get();
+    }
+
+    long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /** Память под биты фильтра, байт */
+    long memoryBytes() {
+        return words.length() * 8L;
+    }
+
+    /**
+     * Ожидаемая доля ложных срабатываний при текущем числе добавленных игр: (1 - e^(-kn/m))^k
+     */
+    double currentFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashes * keys.get() / bits), hashes);
+    }
+
+    /**
+     * Возвращает сводку по работе фильтра для логов.
+     */
+    String getStatistics() {
+        long checked = positives.get();
+        return String.format(java.util.Locale.ROOT,
+                "Фильтр игр: %s, ключей %d из %d, бит %d, хэшей %d, память %d КБ (%d КБ на миллион ключей "
+                        + "при доле ложных срабатываний %s), ожидаемая доля ложных срабатываний %.4f, "
+                        + "без запроса %d, с запросом %d, ложных срабатываний %d",
+                ready ? "заполнен" : "заполняется", keys.get(), expectedKeys, bits, hashes, memoryBytes() / 1024,
+                bytesPerMillion(falsePositiveRate) / 1024, falsePositiveRate, currentFalsePositiveRate(),
+                negatives.get(), checked, falsePositives.get());
+    }
+}
@@ -3,6 +3,7 @@ package org.example;
 import org.apache.logging.log4j.*;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 /**
@@ -16,19 +17,37 @@ public class Main {
      */
     private static final Logger logger = LogManager.getLogger(Main.class);
 
+    /**
+     Число соединений для чтения в общем хранилище.
+     */
+    private static final int STORAGE_READERS = 4;
+
     /**
      * Главный метод, который запускает бота.
      * Создает объект TelegramBotsApi, который используется для регистрации бота.
      * Регистрирует новый экземпляр класса TelegramBot с помощью метода registerBot().
+     * Оба бота работают с одним хранилищем в режиме WAL, чтобы их записи не мешали друг другу.
+     * При завершении процесса сначала останавливаются боты, затем закрывается хранилище:
+     * очередь записи и несохраненная статистика загадок успевают попасть в базу.
      * Если при регистрации происходит ошибка, то выводит ее в консоль.
      */
     public static void main(String[] args)
     {
         try {
+            Storage storage = Storage.withWal(Storage.DATABASE_URL, STORAGE_READERS);
+
             TelegramBotsApi telegramBotsApi = new TelegramBotsApi(DefaultBotSession.class);
-            telegramBotsApi.registerBot(new TelegramBot());
+            BotSession session = telegramBotsApi.registerBot(new TelegramBot(storage));
+
+            VkBot vkBot = new VkBot(storage);
+            vkBot.startBot(); // запуск VK бота с общим хранилищем в собственных потоках
 
-            VkBot.main(args); // вызов main метода VkBot
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                // Сессия вызывает onClosing бота, и он дожидается своих очередей
+                session.stop();
+                vkBot.close();
+                storage.close();
+            }, "shutdown"));
         } catch (TelegramApiException e) {
             logger.error("Error registering bot", e);
         }
@@ -1,7 +1,9 @@
 package org.example;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.io.IOException;
 
 /**
@@ -25,62 +27,191 @@ interface MessageProcessor {
  */
 public class MessageHandling implements MessageProcessor {
 
+    /**
+     * Сколько игр показывать на одной странице рейтинга /getbyrating
+     */
+    static final int RATING_PAGE_SIZE = 10;
+
+    /**
+     * Сколько игр показывать на одной странице /getplayed
+     */
+    static final int PLAYED_PAGE_SIZE = 20;
+
+    /**
+     * Сколько игр показывать в результатах /search и похожих издателей в /getbyauthor
+     */
+    static final int SEARCH_LIMIT = 10;
+
+    /**
+     * Префикс данных кнопок листания /getplayed
+     */
+    static final String PLAYED_CALLBACK = "played:";
+
+    /**
+     * Префикс данных кнопок подсказок имен, за ним идет номер кнопки
+     */
+    static final String SUGGEST_CALLBACK = "suggest:";
+
+    /**
+     * Со скольких введенных букв бот подсказывает известные имена
+     */
+    static final int MIN_SUGGEST_LENGTH = 3;
+
+    /**
+     * Сколько подсказок показывать под ответом
+     */
+    static final int SUGGEST_LIMIT = 5;
+
+    /**
+     * Ответ на попытку добавить игру, которая уже есть в списке
+     */
+    static final String DUPLICATE_GAME = "Игра с таким названием, автором и годом уже существует. Пожалуйста, введите название заново:";
+
     private Storage storage;
+
+    /**
+     * Списки игр: кэш перед хранилищем, а если его нет - само хранилище
+     */
+    private final GameStorage games;
     private PuzzleGame puzzleGame;
-    private boolean puzzleMode;
-    private boolean awaitingRating;
-    private boolean awaitingAuthor;
-    private boolean awaitingAuthorForGamesByAuthor;
-    private boolean awaitingYearForGamesByYear;
-    private boolean awaitingGameNumberForRemoval;
-    private boolean awaitingGameNumberForEdit;
-    private String lastAddedGameTitle;
-    private String lastAddedGameAuthor;
-    private int lastAddedGameYear;
-    private int lastAddedGameNumber;
-    private long lastAddedGameChatId;
-    private boolean awaitingTitle;
-    private boolean awaitingYear;
-    private boolean awaitingEditYear;
-    private boolean awaitingEditAuthor;
-    private boolean awaitingEditTitle;
-    private boolean awaitngStart;
-    private boolean awaitingcancel;
-
-
-    public boolean isAwaitingRating() {
-        return awaitingRating;
+
+    /**
+     * Состояния диалогов по чатам
+     */
+    private final SessionStore sessions;
+
+    /**
+     * Команды режима по умолчанию
+     */
+    private final CommandRouter commands;
+
+    /**
+     * Команды режима головоломки
+     */
+    private final CommandRouter puzzleCommands;
+
+    /**
+     * Таблица переходов: обработчик сообщения для каждого шага диалога
+     */
+    private final Map<DialogState, CommandHandler> dialog = new EnumMap<>(DialogState.class);
+
+
+    public boolean isAwaitingRating(long chatId) {
+        return sessions.get(chatId).state == DialogState.AWAITING_RATING;
     }
 
     /**
      * Для кнопок при старте бота вылезут полезные кнопки
+     * @param chatId id беседы
      * @return флаг true/false
      */
-    public boolean isAwaitingStart() { return awaitngStart; }
-    public boolean isAwaitingCancel() { return awaitingcancel; }
+    public boolean isAwaitingStart(long chatId) { return sessions.get(chatId).awaitngStart; }
+    public boolean isAwaitingCancel(long chatId) { return sessions.get(chatId).awaitingcancel; }
+
+    /**
+     * Забирает кнопки листания, подготовленные последним ответом чату.
+     *
+     * @param chatId id беседы
+     * @return кнопки листания или null, если ответ не постраничный
+     */
+    public PageNavigation takeNavigation(long chatId) {
+        ChatSession session = sessions.get(chatId);
+        synchronized (session) {
+            PageNavigation navigation = session.navigation;
+            session.navigation = null;
+            return navigation;
+        }
+    }
+
+    /**
+     * Подсказки имен, подготовленные последним ответом чату. Остаются в сессии до следующего сообщения,
+     * чтобы нажатие кнопки нашло выбранное имя.
+     *
+     * @param chatId id беседы
+     * @return подсказки или null, если их нет
+     */
+    public NameSuggestions getSuggestions(long chatId) {
+        ChatSession session = sessions.get(chatId);
+        synchronized (session) {
+            return session.suggestions;
+        }
+    }
+
+
+    /**
+     * Счетчики хранилища: соединений, записи, кэша списков игр, фильтра дубликатов и подсказок
+     */
+    public String getStorageStatistics() {
+        return storage.getStatistics();
+    }
 
 
     /**
      * Конструктор класса MessageHandling. Инициализирует объекты Storage и PuzzleGame,
-     * а также устанавливает начальное значение режима головоломки как false.
+     * а также хранилище сессий, в котором у каждого чата свое состояние диалога.
      */
     public MessageHandling() {
-        storage = new Storage();
-        puzzleGame = new PuzzleGame();
-        puzzleMode = false;
-        awaitingRating = false;
-        awaitingAuthor = false;
-        awaitingTitle = false;
-        awaitingYear = false;
-        awaitingAuthorForGamesByAuthor = false;
-        awaitingYearForGamesByYear = false;
-        awaitingGameNumberForRemoval = false;
-        awaitingGameNumberForEdit = false;
-        awaitingEditYear  = false;
-        awaitingEditAuthor = false;
-        awaitingEditTitle = false;
-        awaitngStart = false;
-        awaitingcancel = false;
+        this(new Storage());
+    }
+
+
+    /**
+     * Конструктор класса MessageHandling с общим хранилищем, например одним на всех ботов.
+     *
+     * @param storage хранилище пройденных игр и цитат
+     */
+    public MessageHandling(Storage storage) {
+        this.storage = storage;
+        games = storage.getGameCache();
+        puzzleGame = new PuzzleGame(storage.getPuzzleStatistics());
+        sessions = new SessionStore()
+                .onRemove(puzzleGame::forget)
+                .onRemove(storage::forgetChat);
+
+        commands = new CommandRouter()
+                .register(this::handleStart, "/start", "Старт")
+                .register(this::handleHelp, "/help", "Помощь")
+                .register((textMsg, chatId) -> storage.getRandQuote(chatId), "/get", "Просвети")
+                .register(this::handleClearPlayed, "/clearplayed")
+                .register(this::handleGetPlayed, "Список_игр")
+                .registerPrefix("/getplayed", this::handleGetPlayed)
+                .register(this::handleStartAddGame, "Добавить_игру")
+                .register(this::handleStartPuzzle, "/playpuzzle", "Загадки")
+                .register((textMsg, chatId) -> puzzleGame.getTotalStatistics(chatId), "/puzzlestats")
+                .registerPrefix("/addgame", this::handleStartAddGame)
+                .registerPrefix("/editgame", this::handleStartEditGame)
+                .registerPrefix("/getbyauthor", this::handleStartGamesByAuthor)
+                .registerPrefix("/getbyyear", this::handleStartGamesByYear)
+                .registerPrefix("/search", this::handleSearch)
+                .registerPrefix("/getbyrating", this::handleGamesByRating)
+                .registerPrefix("/removegame", this::handleStartRemoveGame);
+
+        puzzleCommands = new CommandRouter()
+                .register((textMsg, chatId) -> puzzleGame.getHint(chatId), "/gethint")
+                .registerIgnoreCase((textMsg, chatId) -> puzzleGame.getHint(chatId), "дай подсказку")
+                .register((textMsg, chatId) -> puzzleGame.getNextPuzzle(chatId), "/anotheriddle")
+                .registerIgnoreCase((textMsg, chatId) -> puzzleGame.getNextPuzzle(chatId), "следующая загадка")
+                .register((textMsg, chatId) -> puzzleGame.restart(chatId), "/restart")
+                .register((textMsg, chatId) -> puzzleGame.getAnswerAndNextPuzzle(chatId), "/getanswer")
+                .registerIgnoreCase((textMsg, chatId) -> puzzleGame.getAnswerAndNextPuzzle(chatId), "какой ответ")
+                .register(this::handleStopPuzzle, "/stoppuzzle")
+                .register((textMsg, chatId) -> puzzleGame.getTotalStatistics(chatId), "/puzzlestats")
+                .registerPrefix("/checkanswer", (textMsg, chatId) ->
+                        puzzleGame.checkAnswer(chatId, textMsg.substring("/checkanswer".length()).trim()));
+
+        dialog.put(DialogState.PUZZLE, this::handlePuzzleMode);
+        dialog.put(DialogState.AWAITING_TITLE, this::handleAddTitle);
+        dialog.put(DialogState.AWAITING_AUTHOR, this::handleAddAuthor);
+        dialog.put(DialogState.AWAITING_YEAR, this::handleAddYear);
+        dialog.put(DialogState.AWAITING_RATING, this::handleRating);
+        dialog.put(DialogState.AWAITING_AUTHOR_FOR_SEARCH, this::handleAuthorForGamesByAuthor);
+        dialog.put(DialogState.AWAITING_YEAR_FOR_SEARCH, this::handleYearForGamesByYear);
+        dialog.put(DialogState.AWAITING_SEARCH_QUERY, this::handleSearchQuery);
+        dialog.put(DialogState.AWAITING_REMOVAL_NUMBER, this::handleRemoveGame);
+        dialog.put(DialogState.AWAITING_EDIT_NUMBER, this::handleEditNumber);
+        dialog.put(DialogState.AWAITING_EDIT_TITLE, this::handleEditTitle);
+        dialog.put(DialogState.AWAITING_EDIT_AUTHOR, this::handleEditAuthor);
+        dialog.put(DialogState.AWAITING_EDIT_YEAR, this::handleEditYear);
     }
 
 
@@ -93,39 +224,21 @@ public class MessageHandling implements MessageProcessor {
      */
 
     public String parseMessage(String textMsg, long chatId) {
-        String response;
-
-        if (awaitingEditYear){
-            response = handleEditYear(textMsg, chatId);
-        }else if (awaitingEditAuthor) {
-            response = handleEditAuthor(textMsg, chatId);
-        }else if (awaitingEditTitle) {
-            response = handleEditTitle(textMsg, chatId);
-        } else if (awaitingGameNumberForEdit){
-            response = handleEditNumber(textMsg, chatId);
-        }else if (awaitingYearForGamesByYear){
-            response = handleYearForGamesByYear(textMsg, chatId);
-        }else if (awaitingAuthorForGamesByAuthor) {
-            response = handleAuthorForGamesByAuthor(textMsg, chatId);
-        }else if (awaitingTitle) {
-            response = handleAddTitle(textMsg, chatId);
-        } else if (awaitingAuthor) {
-            response = handleAddAuthor(textMsg, chatId);
-        } else if (awaitingYear) {
-            response = handleAddYear(textMsg, chatId);
-        } else if (awaitingRating) {
-            response = handleRating(textMsg);
-        } else if (awaitingGameNumberForRemoval) {
-            response = handleRemoveGame(textMsg, chatId);
-        } else if (puzzleMode) {
-            response = handlePuzzleMode(textMsg, chatId);
-        } else {
-            response = handleDefaultMode(textMsg, chatId);
-            awaitngStart = true;
-            awaitingcancel = false;
+        ChatSession session = sessions.get(chatId);
+        // Сообщения одного чата обрабатываются по очереди, сообщения разных чатов - параллельно
+        synchronized (session) {
+            session.navigation = null;
+            session.suggestions = null;
+            // Если идет многошаговый диалог, сообщение обрабатывает его текущий шаг
+            CommandHandler step = dialog.get(session.state);
+            if (step != null) {
+                return step.handle(textMsg, chatId);
+            }
+            String response = handleDefaultMode(textMsg, chatId);
+            session.awaitngStart = true;
+            session.awaitingcancel = false;
+            return response;
         }
-
-        return response;
     }
 
 
@@ -137,28 +250,21 @@ public class MessageHandling implements MessageProcessor {
      * @return Ответ на запрос пользователя в режиме головоломки.
      */
     private String handlePuzzleMode(String textMsg, long chatId) {
-        String response;
-        if ((textMsg.equalsIgnoreCase("дай подсказку"))||(textMsg.equals("/gethint"))) {
-            response = puzzleGame.getHint();
-        } else if ((textMsg.equalsIgnoreCase("следующая загадка"))||(textMsg.equals("/anotheriddle"))) {
-            response = puzzleGame.getNextPuzzle(chatId);
-        } else if (textMsg.equals("/restart")) {
-            response = puzzleGame.restart(chatId);
-        } else if ((textMsg.equalsIgnoreCase("какой ответ"))||(textMsg.equals("/getanswer"))) {
-            response = puzzleGame.getAnswerAndNextPuzzle(chatId);
-        } else if (textMsg.equals("/stoppuzzle")) {
-            response = "Режим головоломки завершен.\n" + puzzleGame.getStatistics(chatId);
-
-            puzzleMode = false; // Выход из режима головоломки
-        }else if (textMsg.startsWith("/checkanswer")) {
-            // Извлеките ответ пользователя из сообщения
-            String userAnswer = textMsg.substring("/checkanswer".length()).trim();
-            // Передайте ответ пользователя в PuzzleGame для проверки
-            response = puzzleGame.checkAnswer(chatId, userAnswer);
-        } else {
-            response = puzzleGame.checkAnswer(chatId, textMsg);
+        CommandHandler command = puzzleCommands.route(textMsg);
+        if (command != null) {
+            return command.handle(textMsg, chatId);
         }
-        return response;
+        // Все остальное считается ответом на загадку
+        return puzzleGame.checkAnswer(chatId, textMsg);
+    }
+
+
+    /**
+     * Выход из режима головоломки со статистикой ответов.
+     */
+    private String handleStopPuzzle(String textMsg, long chatId) {
+        sessions.get(chatId).state = DialogState.IDLE;
+        return "Режим головоломки завершен.\n" + puzzleGame.getStatistics(chatId);
     }
 
     /**
@@ -169,21 +275,12 @@ public class MessageHandling implements MessageProcessor {
      * @return Ответ на отмену действия
      */
     private String CancelButton(String textMsg, long chatId){
+        ChatSession session = sessions.get(chatId);
         String response = null;
-        awaitingcancel = true;
+        session.awaitingcancel = true;
         if (textMsg.equals("Отменить")){
-            awaitingRating = false;
-            awaitingAuthor = false;
-            awaitingTitle = false;
-            awaitingYear = false;
-            awaitingAuthorForGamesByAuthor = false;
-            awaitingYearForGamesByYear = false;
-            awaitingGameNumberForRemoval = false;
-            awaitingGameNumberForEdit = false;
-            awaitingEditYear  = false;
-            awaitingEditAuthor = false;
-            awaitingEditTitle = false;
-            awaitngStart = true;
+            session.state = DialogState.IDLE;
+            session.awaitngStart = true;
             response = "Процедура отменена";
         }
         return response;
@@ -197,16 +294,17 @@ public class MessageHandling implements MessageProcessor {
      * @return стринговый ответ для пользователя
      */
     public String handleAddTitle(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
-        awaitingcancel = true;
-        if (!awaitingTitle) {
+        session.awaitingcancel = true;
+        if (session.state != DialogState.AWAITING_TITLE) {
             response = "Введите название игры:";
-            awaitingTitle = true;
+            session.state = DialogState.AWAITING_TITLE;
         }else if(textMsg.equals("Отменить")){
-            awaitingTitle = false;
+            session.state = DialogState.IDLE;
             response = "Отменено";
-            awaitngStart = true;
-            awaitingcancel = false;
+            session.awaitngStart = true;
+            session.awaitingcancel = false;
         }
         else {
             if (textMsg.contains("\n") || (textMsg.contains("  "))){
@@ -214,10 +312,11 @@ public class MessageHandling implements MessageProcessor {
             }
             else {
                 CancelButton(textMsg, chatId);
-                awaitingTitle = false;
-                lastAddedGameTitle = textMsg.trim();
+                session.lastAddedGameTitle = textMsg.trim();
                 response = "Введите издателя игры:";
-                awaitingAuthor = true;
+                session.state = DialogState.AWAITING_AUTHOR;
+                response += offerNames(session, storage.suggestTitles(session.lastAddedGameTitle, SUGGEST_LIMIT + 1),
+                        session.lastAddedGameTitle, "Похожие известные игры", this::selectAddedTitle);
             }
         }
 
@@ -233,21 +332,23 @@ public class MessageHandling implements MessageProcessor {
      * @return стринговый ответ для пользователя
      */
     public String handleAddAuthor(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
         CancelButton(textMsg, chatId);
-        if (!awaitingAuthor) {
+        if (session.state != DialogState.AWAITING_AUTHOR) {
             response = "Введите издателя игры";
-            awaitingAuthor = true;
+            session.state = DialogState.AWAITING_AUTHOR;
         } else {
             if (textMsg.contains("\n") || (textMsg.contains("  "))){
                 response = "Неверный формат. Введите издателя игры";
             }
             else {
-                awaitingAuthor = false;
-                lastAddedGameAuthor = textMsg.trim();
-                lastAddedGameChatId = chatId;
+                session.lastAddedGameAuthor = textMsg.trim();
+                session.lastAddedGameChatId = chatId;
                 response = "Введите год выхода игры:";
-                awaitingYear = true;
+                session.state = DialogState.AWAITING_YEAR;
+                response += offerNames(session, storage.suggestAuthors(session.lastAddedGameAuthor, SUGGEST_LIMIT + 1),
+                        session.lastAddedGameAuthor, "Похожие известные издатели", this::selectAddedAuthor);
             }
         }
 
@@ -263,30 +364,27 @@ public class MessageHandling implements MessageProcessor {
      * @return стринговый ответ для пользователя
      */
     public String handleAddYear(String textMsg, long chatId) {
-        String title = lastAddedGameTitle;
+        ChatSession session = sessions.get(chatId);
+        String title = session.lastAddedGameTitle;
         String response;
-        String author = lastAddedGameAuthor;
+        String author = session.lastAddedGameAuthor;
         CancelButton(textMsg, chatId);
 
-        if (!awaitingYear) {
+        if (session.state != DialogState.AWAITING_YEAR) {
             response = "Введите год выхода игры.";
-            awaitingYear = true;
+            session.state = DialogState.AWAITING_YEAR;
             // Проверка формата
         }else if (!textMsg.matches("\\d{4}") || textMsg.matches(".*[a-zA-Z].*")) {
             response = "Некорректный формат года. Пожалуйста, введите четыре цифры без букв.";
         }
         int year = Integer.parseInt(textMsg.trim());
-        if (storage.gameExists(title, author, year, chatId)) {
-            awaitingTitle = true;
-            awaitingAuthor = false;
-            awaitingYear = false;
-            awaitingRating = false;
-            response = "Игра с таким названием, автором и годом уже существует. Пожалуйста, введите название заново:";
+        if (games.gameExists(title, author, year, chatId)) {
+            session.state = DialogState.AWAITING_TITLE;
+            response = DUPLICATE_GAME;
         } else {
-            lastAddedGameYear = year;
-            lastAddedGameChatId = chatId;
-            awaitingYear = false;
-            awaitingRating = true;
+            session.lastAddedGameYear = year;
+            session.lastAddedGameChatId = chatId;
+            session.state = DialogState.AWAITING_RATING;
             response = "Игра '" + title + "' издателя " + author + " (" + year + ") успешно добавлена!\nОцените игру от 1 до 5:";
         }
         return response;
@@ -297,9 +395,11 @@ public class MessageHandling implements MessageProcessor {
      * Обрабатывает ввод рейтинга для недавно добавленной игры.
      *
      * @param textMsg текст сообщения с введённым рейтингом
+     * @param chatId id беседы, в которой пришло сообщение
      * @return стринговый ответ для пользователя
      */
-    public String handleRating(String textMsg) {
+    public String handleRating(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
 
         try {
@@ -308,9 +408,14 @@ public class MessageHandling implements MessageProcessor {
             // Добавьте дополнительную проверку на допустимые значения рейтинга
             if (rating >= 1 && rating <= 5) {
                 // Обновьте базу данных с рейтингом
-                storage.addPlayedGame(lastAddedGameTitle, lastAddedGameAuthor, lastAddedGameYear, rating, lastAddedGameChatId);
-                awaitingRating = false;
-                response = "Отзыв " + rating + "⭐ оставлен.";
+                // Одна запись: если игру успели добавить после проверки года, база ее не продублирует
+                if (games.insertIfAbsent(session.lastAddedGameTitle, session.lastAddedGameAuthor, session.lastAddedGameYear, rating, session.lastAddedGameChatId)) {
+                    session.state = DialogState.IDLE;
+                    response = "Отзыв " + rating + "⭐ оставлен.";
+                } else {
+                    session.state = DialogState.AWAITING_TITLE;
+                    response = DUPLICATE_GAME;
+                }
             } else {
                 response = "Пожалуйста, введите оценку от 1 до 5.";
             }
@@ -323,26 +428,38 @@ public class MessageHandling implements MessageProcessor {
 
 
     public String handleAuthorForGamesByAuthor(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
         CancelButton(textMsg, chatId);
 
         // Проверяем, что ожидается ввод имени автора
-        if (awaitingAuthorForGamesByAuthor) {
+        if (session.state == DialogState.AWAITING_AUTHOR_FOR_SEARCH) {
             // Проверяем, что введенное имя автора не содержит цифр, двух пробелов и символа перевода строки
             if (!textMsg.contains("  ") && !textMsg.contains("\n")) {
                 String author = textMsg.trim();
-                List<String> gamesByAuthor = storage.getGamesByAuthor(author, chatId);
+                List<String> gamesByAuthor = games.getGamesByAuthor(author, chatId);
                 if (!gamesByAuthor.isEmpty()) {
                     response = "Игры издателя '" + author + "':\n" + String.join("\n", gamesByAuthor);
                 } else {
-                    response = "Нет пройденных игр этого издателя.";
+                    // Точного совпадения нет: ищем издателя без учета регистра и по началу слов
+                    List<PlayedGame> similar = games.searchGamesByAuthor(author, chatId, SEARCH_LIMIT);
+                    List<String> played = playedAuthors(author, chatId);
+                    if (similar.isEmpty() && played.isEmpty()) {
+                        response = "Нет пройденных игр этого издателя.";
+                    } else {
+                        response = renderFoundGames("Издателя '" + author + "' нет, но есть похожие:\n", similar);
+                    }
+                    if (!played.isEmpty()) {
+                        response += "Издатели из вашего списка (можно выбрать кнопкой): " + String.join(", ", played);
+                        session.suggestions = new NameSuggestions(played, DialogState.IDLE, this::selectSearchedAuthor);
+                    }
                 }
             } else {
                 response = "Некорректный формат. Пожалуйста, введите корректно издателя игры.";
             }
 
             // Сбрасываем флаг ожидания имени автора
-            awaitingAuthorForGamesByAuthor = false;
+            session.state = DialogState.IDLE;
         } else {
             response = "Неверное состояние для ввода издателя.";
         }
@@ -352,18 +469,19 @@ public class MessageHandling implements MessageProcessor {
 
 
     public String handleYearForGamesByYear(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
         CancelButton(textMsg, chatId);
 
         // Проверяем, что ожидается ввод года
-        if (awaitingYearForGamesByYear) {
+        if (session.state == DialogState.AWAITING_YEAR_FOR_SEARCH) {
             try {
                 int year = Integer.parseInt(textMsg.trim());
 
                 // Проверяем, что введенный год не содержит букв и не более 4 цифр
                 if (textMsg.matches("\\d{1,4}")) {
-                    List<String> gamesByYear = storage.getGamesByYear(year, chatId);
-                    awaitingYearForGamesByYear = false;
+                    List<String> gamesByYear = games.getGamesByYear(year, chatId);
+                    session.state = DialogState.IDLE;
                     if (!gamesByYear.isEmpty()) {
                         response = "Игры " + year + " года:\n" + String.join("\n", gamesByYear);
                     } else {
@@ -383,20 +501,134 @@ public class MessageHandling implements MessageProcessor {
     }
 
 
+    /**
+     * Предлагает кнопками известные имена, начинающиеся с введенного текста, если введено хотя бы
+     * MIN_SUGGEST_LENGTH букв. Кнопки действуют, пока чат остается на текущем шаге диалога.
+     *
+     * @param names  известные имена, начинающиеся с typed
+     * @param typed  введенное пользователем имя, его самого кнопкой не предлагаем
+     * @param header заголовок строки с подсказками
+     * @param select обработчик выбранного имени
+     * @return строка с подсказками для ответа или пустая строка
+     */
+    private String offerNames(ChatSession session, List<String> names, String typed, String header, CommandHandler select) {
+        if (typed.length() < MIN_SUGGEST_LENGTH) {
+            return "";
+        }
+        List<String> offered = new ArrayList<>(names);
+        offered.remove(typed);
+        if (offered.isEmpty()) {
+            return "";
+        }
+        offered = offered.subList(0, Math.min(SUGGEST_LIMIT, offered.size()));
+        session.suggestions = new NameSuggestions(offered, session.state, select);
+        return "\n" + header + " (можно выбрать кнопкой): " + String.join(", ", offered);
+    }
+
+
+    private String selectAddedTitle(String title, long chatId) {
+        sessions.get(chatId).lastAddedGameTitle = title;
+        return "Название: " + title + "\nВведите издателя игры:";
+    }
+
+
+    private String selectAddedAuthor(String author, long chatId) {
+        sessions.get(chatId).lastAddedGameAuthor = author;
+        return "Издатель: " + author + "\nВведите год выхода игры:";
+    }
+
+
+    /**
+     * Издатели из списка чата, начинающиеся с введенного текста: один запрос к хранилищу
+     * или к закэшированному списку чата
+     */
+    private List<String> playedAuthors(String typed, long chatId) {
+        List<String> played = new ArrayList<>();
+        if (typed.length() < MIN_SUGGEST_LENGTH) {
+            return played;
+        }
+        for (String name : games.getAuthorsByPrefix(typed, chatId, SUGGEST_LIMIT + 1)) {
+            if (played.size() >= SUGGEST_LIMIT) {
+                break;
+            }
+            if (!name.equals(typed)) {
+                played.add(name);
+            }
+        }
+        return played;
+    }
+
+
+    private String selectSearchedAuthor(String author, long chatId) {
+        List<String> gamesByAuthor = games.getGamesByAuthor(author, chatId);
+        if (gamesByAuthor.isEmpty()) {
+            return "Нет пройденных игр этого издателя.";
+        }
+        return "Игры издателя '" + author + "':\n" + String.join("\n", gamesByAuthor);
+    }
+
+
+    /**
+     * Обработка команды /search [запрос]. Без запроса бот спрашивает его следующим сообщением.
+     */
+    private String handleSearch(String textMsg, long chatId) {
+        String query = textMsg.substring("/search".length()).trim();
+        if (query.isEmpty()) {
+            return startDialog(chatId, DialogState.AWAITING_SEARCH_QUERY, "Введите часть названия, издателя или год:");
+        }
+        return searchGames(query, chatId);
+    }
+
+
+    /**
+     * Обрабатывает текст запроса для /search, введенный отдельным сообщением.
+     */
+    private String handleSearchQuery(String textMsg, long chatId) {
+        String cancelled = CancelButton(textMsg, chatId);
+        if (cancelled != null) {
+            return cancelled;
+        }
+        sessions.get(chatId).state = DialogState.IDLE;
+        return searchGames(textMsg.trim(), chatId);
+    }
+
+
+    private String searchGames(String query, long chatId) {
+        List<PlayedGame> found = games.searchGames(chatId, query, SEARCH_LIMIT);
+        if (found.isEmpty()) {
+            return "По запросу '" + query + "' ничего не найдено.";
+        }
+        return renderFoundGames("Найденные игры:\n", found);
+    }
+
+
+    /**
+     * Список найденных игр с издателем и годом, самые подходящие первыми.
+     */
+    private static String renderFoundGames(String header, List<PlayedGame> found) {
+        StringBuilder responseBuilder = new StringBuilder(header);
+        for (PlayedGame game : found) {
+            responseBuilder.append(game.title()).append(" - ").append(game.author())
+                    .append(", ").append(game.year()).append("\n");
+        }
+        return responseBuilder.toString();
+    }
+
+
     // Метод обработки сообщения для удаления игры
     public String handleRemoveGame(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
         CancelButton(textMsg, chatId);
 
-        if (awaitingGameNumberForRemoval) {
+        if (session.state == DialogState.AWAITING_REMOVAL_NUMBER) {
             try {
                 int gameNumber = Integer.parseInt(textMsg.trim());
-                List<String> playedGames = storage.getPlayedGames(chatId);
+                long gameId = games.findGameId(chatId, gameNumber);
+                String removedGame = gameId > 0 ? games.removeById(chatId, gameId) : null;
 
-                if (gameNumber >= 1 && gameNumber <= playedGames.size()) {
-                    String removedGame = playedGames.remove(gameNumber - 1);
-                    storage.updatePlayedGames(chatId, playedGames);
-                    awaitingGameNumberForRemoval = false;
+                if (removedGame != null) {
+                    session.state = DialogState.IDLE;
                     response = "Игра '" + removedGame + "' успешно удалена из списка пройденных!";
                 } else {
                     response = "Указанный номер игры не существует.";
@@ -408,7 +640,7 @@ public class MessageHandling implements MessageProcessor {
         } else {
             // Запросим номер игры для удаления
             response = "Введите номер игры, которую вы хотите удалить из списка пройденных:";
-            awaitingGameNumberForRemoval = true;
+            session.state = DialogState.AWAITING_REMOVAL_NUMBER;
         }
 
         return response;
@@ -417,21 +649,21 @@ public class MessageHandling implements MessageProcessor {
 
 
     public String handleEditNumber(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
         CancelButton(textMsg, chatId);
         int gameNumber = Integer.parseInt(textMsg.trim());
-        List<String> playedGames = storage.getPlayedGames(chatId);
 
-        if (!awaitingGameNumberForEdit) {
+        if (session.state != DialogState.AWAITING_EDIT_NUMBER) {
             response = "Введите номер игры";
-            awaitingGameNumberForEdit = true;
+            session.state = DialogState.AWAITING_EDIT_NUMBER;
         } else {
-            if (gameNumber >= 1 && gameNumber <= playedGames.size()) {
-                lastAddedGameNumber = gameNumber;
-                awaitingGameNumberForEdit = false;
-                lastAddedGameTitle = textMsg.trim();
+            long gameId = games.findGameId(chatId, gameNumber);
+            if (gameId > 0) {
+                session.editedGameId = gameId;
+                session.lastAddedGameTitle = textMsg.trim();
                 response = "Введите новое название игры.";
-                awaitingEditTitle = true;
+                session.state = DialogState.AWAITING_EDIT_TITLE;
             }
             else {
                 response = "Неверный формат. Введите номер игры из списка /getplayed";
@@ -450,21 +682,21 @@ public class MessageHandling implements MessageProcessor {
      * @return стринговый ответ для пользователя
      */
     public String handleEditTitle(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
         CancelButton(textMsg, chatId);
 
-        if (!awaitingEditTitle) {
+        if (session.state != DialogState.AWAITING_EDIT_TITLE) {
             response = "Введите новое название игры";
-            awaitingEditTitle = true;
+            session.state = DialogState.AWAITING_EDIT_TITLE;
         } else {
             if (textMsg.contains("\n") || (textMsg.contains("  "))){
                 response = "Неверный формат. Введите название игры";
             }
             else {
-                awaitingEditTitle = false;
-                lastAddedGameTitle = textMsg.trim();
+                session.lastAddedGameTitle = textMsg.trim();
                 response = "Введите нового издателя игры.";
-                awaitingEditAuthor = true;
+                session.state = DialogState.AWAITING_EDIT_AUTHOR;
             }
         }
 
@@ -480,21 +712,21 @@ public class MessageHandling implements MessageProcessor {
      * @return стринговый ответ для пользователя
      */
     public String handleEditAuthor(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         String response;
         CancelButton(textMsg, chatId);
-        if (!awaitingEditAuthor) {
+        if (session.state != DialogState.AWAITING_EDIT_AUTHOR) {
             response = "Введите нового издателя игры";
-            awaitingEditAuthor = true;
+            session.state = DialogState.AWAITING_EDIT_AUTHOR;
         } else {
             if (textMsg.contains("\n") || (textMsg.contains("  "))){
                 response = "Неверный формат. Введите издателя игры";
             }
             else {
-                awaitingEditAuthor = false;
-                lastAddedGameAuthor = textMsg.trim();
-                lastAddedGameChatId = chatId;
+                session.lastAddedGameAuthor = textMsg.trim();
+                session.lastAddedGameChatId = chatId;
                 response = "Введите год новый выхода игры.";
-                awaitingEditYear = true;
+                session.state = DialogState.AWAITING_EDIT_YEAR;
             }
         }
 
@@ -510,42 +742,54 @@ public class MessageHandling implements MessageProcessor {
      * @return стринговый ответ для пользователя
      */
     public String handleEditYear(String textMsg, long chatId) {
+        ChatSession session = sessions.get(chatId);
         CancelButton(textMsg, chatId);
-        int gameNumber;
         String newTitle;
         String newAuthor;
         int newYear;
-        newTitle = lastAddedGameTitle;
-        newAuthor = lastAddedGameAuthor;
+        newTitle = session.lastAddedGameTitle;
+        newAuthor = session.lastAddedGameAuthor;
         // Проверка формата
         if (!textMsg.matches("\\d{4}") || textMsg.matches(".*[a-zA-Z].*")) {
             return "Некорректный формат года. Пожалуйста, введите четыре цифры без букв.";
         }
         newYear = Integer.parseInt(textMsg.trim());
-        if (storage.gameExists(newTitle, newAuthor, newYear, chatId)) {
-            awaitingEditTitle = true;
-            awaitingEditAuthor = false;
-            awaitingEditYear = false;
-            return "Игра с таким названием, автором и годом уже существует. Пожалуйста, введите название заново:";
+        if (games.gameExists(newTitle, newAuthor, newYear, chatId)) {
+            session.state = DialogState.AWAITING_EDIT_TITLE;
+            return DUPLICATE_GAME;
         } else {
-            gameNumber = lastAddedGameNumber;
-            List<String> playedGames = storage.getAllValues(chatId);
-            String[] oldGameParts = playedGames.get(gameNumber - 1).split("\n");
-            String oldTitle = oldGameParts[0];
-            String oldAuthor = oldGameParts[1];
-            int oldYear = Integer.parseInt(oldGameParts[2]);
-
-            // Заменяем книгу в базе данных
-            storage.editPlayedGame(oldTitle, oldAuthor, oldYear, newTitle, newAuthor, newYear, chatId);
-
-            awaitingEditYear = false;
-            return "Игра '" + oldTitle + "' успешно заменена на игру '" + newTitle + "' от издателя " + newAuthor + " (" + newYear + ") в списке пройденных!";
+            // Заменяем игру в базе данных одним обновлением по id
+            GameUpdate result = games.updateById(chatId, session.editedGameId, newTitle, newAuthor, newYear);
+            if (result.duplicate()) {
+                session.state = DialogState.AWAITING_EDIT_TITLE;
+                return DUPLICATE_GAME;
+            }
+            session.state = DialogState.IDLE;
+            if (result.previousTitle() == null) {
+                return "Игра уже удалена из списка пройденных.";
+            }
+            return "Игра '" + result.previousTitle() + "' успешно заменена на игру '" + newTitle + "' от издателя " + newAuthor + " (" + newYear + ") в списке пройденных!";
         }
     }
 
 
 
 
+    /**
+     * Разбирает номер страницы из аргумента команды. Пустой или некорректный аргумент означает первую страницу.
+     *
+     * @param argument текст после команды
+     * @return номер страницы, начиная с 1
+     */
+    private static int parsePageNumber(String argument) {
+        try {
+            return Math.max(1, Integer.parseInt(argument.trim()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+
     /**
      * Обработчик сообщений в режиме по умолчанию.
      *
@@ -554,107 +798,222 @@ public class MessageHandling implements MessageProcessor {
      * @return Ответ на запрос пользователя в режиме по умолчанию.
      */
     private String handleDefaultMode(String textMsg, long chatId) {
-        String response;
-        awaitngStart = true;
-        // Сравниваем текст пользователя с командами, на основе этого формируем ответ
-        if (textMsg.equals("/start") || textMsg.equals("Старт")) {
-            response = "Привет, я игровой бот. Жми /help, чтобы узнать что я могу.";
-        } else if (textMsg.equals("/help") || textMsg.equals("Помощь")){
-            response = """
-                    Привет, я умею:
-                    /addgame - Добавить игру, которую ты уже прошел
-                    /getplayed - Список пройденных игр
-                    /getbyrating - Рейтинг игр всех пользователей
-                    /getbyauthor - Получить список игр по конкретному автору
-                    /getbyyear - Получить список игр по конкретному году
-                    /removegame - Удалить игру из списка
-                    /editgame - Изменяет выбранную игру из списка на написанную
-                    /playpuzzle - Быстрый квиз по разным темам для развлечения
-                    """
-            ;
-        }else if (textMsg.equals("/get") || textMsg.equals("Просвети")) {
-            response = storage.getRandQuote();
-
-        } else if (textMsg.startsWith("/editgame")) {
-            String numberRequest = "Введите номер из списка:";
-            response = numberRequest;
-            awaitingGameNumberForEdit = true; // Флаг ожидания имени автора для команды /getbyauthor
-            awaitingcancel = true;
-
-
-        }else if (textMsg.startsWith("/addgame") || textMsg.equals("Добавить_игру")){
-            String titleRequest = "Введите название игры:";
-            response = titleRequest;
-            awaitingTitle = true;
-            awaitingcancel = true;
-
-        } else if (textMsg.equals("/clearplayed")) {
-            // Очищаем список пройденных игр
-            storage.clearPlayedGames(chatId);
-            response = "Список пройденных игр очищен!";
-
-
-        } else if (textMsg.equals("/getplayed") || textMsg.equals("Список_игр")) {
-            // Получаем список пройденных игр с уникальными номерами
-            List<String> playedGames = storage.getPlayedGames(chatId);
-            if (playedGames.isEmpty()) {
-                response = "Список пройденных игр пуст.";
-            } else {
-                StringBuilder responseBuilder = new StringBuilder("Пройденные игры:\n");
-                for (int i = 0; i < playedGames.size(); i++) {
-                    responseBuilder.append(i + 1).append(". ").append(playedGames.get(i)).append("\n");
-                }
-                response = responseBuilder.toString();
-            }
+        ChatSession session = sessions.get(chatId);
+        session.awaitngStart = true;
+        // Ищем команду в реестре, на основе этого формируем ответ
+        CommandHandler command = commands.route(textMsg);
+        if (command == null) {
+            return textMsg;
+        }
+        return command.handle(textMsg, chatId);
+    }
 
 
-        } else if (textMsg.startsWith("/getbyauthor")) {
-            String authorRequest = "Введите имя автора:";
-            response = authorRequest;
-            awaitingcancel = true;
-            awaitingAuthorForGamesByAuthor = true; // Флаг ожидания имени автора для команды /getbyauthor
+    private String handleStart(String textMsg, long chatId) {
+        return "Привет, я игровой бот. Жми /help, чтобы узнать что я могу.";
+    }
 
 
-        } else if (textMsg.startsWith("/getbyyear")) {
-            String yearRequest = "Введите год (не более 4 цифр):";
-            response = yearRequest;
-            awaitingcancel = true;
-            awaitingYearForGamesByYear = true; // Флаг ожидания года для команды /getbyyear
+    private String handleHelp(String textMsg, long chatId) {
+        return """
+                Привет, я умею:
+                /addgame - Добавить игру, которую ты уже прошел
+                /getplayed - Список пройденных игр
+                /getbyrating - Рейтинг игр всех пользователей
+                /getbyauthor - Получить список игр по конкретному автору
+                /getbyyear - Получить список игр по конкретному году
+                /search - Найти игру по части названия, издателя или году
+                /removegame - Удалить игру из списка
+                /editgame - Изменяет выбранную игру из списка на написанную
+                /playpuzzle - Быстрый квиз по разным темам для развлечения
+                /puzzlestats - Статистика загадок за все игры
+                """;
+    }
 
 
-        } else if (textMsg.startsWith("/getbyrating")) {
-            // Обработка команды /getbyrating
-            List<String> gamesByRating = storage.getGamesByAverageRating(chatId);
+    private String handleClearPlayed(String textMsg, long chatId) {
+        // Очищаем список пройденных игр
+        games.clearPlayedGames(chatId);
+        return "Список пройденных игр очищен!";
+    }
 
-            if (!gamesByRating.isEmpty()) {
-                response = "Список игр по среднему рейтингу:\n";
-                for (String game : gamesByRating) {
-                    response += game + "\n";
-                }
-            } else {
-                response = "Нет данных о среднем рейтинге игр.";
+
+    /**
+     * Обработка команды /getplayed [номер первой игры на странице]
+     */
+    private String handleGetPlayed(String textMsg, long chatId) {
+        String argument = textMsg.startsWith("/getplayed") ? textMsg.substring("/getplayed".length()) : "";
+        int first = parsePageNumber(argument);
+        long afterId = 0;
+        if (first > 1) {
+            long firstId = games.findGameId(chatId, first);
+            if (firstId == 0) {
+                return "В списке нет игры с номером " + first + ".";
             }
+            afterId = firstId - 1;
+        }
+        List<PlayedGame> page = games.getGamesPage(chatId, afterId, PLAYED_PAGE_SIZE + 1);
+        boolean hasNext = page.size() > PLAYED_PAGE_SIZE;
+        return renderPlayedPage(chatId, hasNext ? page.subList(0, PLAYED_PAGE_SIZE) : page, first, hasNext);
+    }
 
 
-        } else if (textMsg.startsWith("/removegame")) {
-            String removeRequest = "Введите номер игры, которую нужно удалить:";
-            response = removeRequest;
-            awaitingcancel = true;
-            awaitingGameNumberForRemoval = true; // Флаг ожидания года для команды /getbyyear
+    /**
+     * Обрабатывает нажатие кнопки под сообщением.
+     *
+     * @param data   данные кнопки
+     * @param chatId id беседы
+     * @return новый текст сообщения или null, если кнопка неизвестна
+     */
+    public String handleCallback(String data, long chatId) {
+        ChatSession session = sessions.get(chatId);
+        synchronized (session) {
+            if (data.startsWith(SUGGEST_CALLBACK)) {
+                return handleSuggestion(data.substring(SUGGEST_CALLBACK.length()), chatId);
+            }
+            if (!data.startsWith(PLAYED_CALLBACK)) {
+                return null;
+            }
+            // played:next:<id последней игры>:<ее номер> или played:prev:<id первой игры>:<ее номер>
+            String[] parts = data.split(":");
+            if (parts.length != 4) {
+                return null;
+            }
+            long boundaryId;
+            int boundaryNumber;
+            try {
+                boundaryId = Long.parseLong(parts[2]);
+                boundaryNumber = Integer.parseInt(parts[3]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if ("prev".equals(parts[1])) {
+                List<PlayedGame> page = games.getGamesPageBefore(chatId, boundaryId, PLAYED_PAGE_SIZE);
+                return renderPlayedPage(chatId, page, Math.max(1, boundaryNumber - page.size()), true);
+            }
+            List<PlayedGame> page = games.getGamesPage(chatId, boundaryId, PLAYED_PAGE_SIZE + 1);
+            boolean hasNext = page.size() > PLAYED_PAGE_SIZE;
+            return renderPlayedPage(chatId, hasNext ? page.subList(0, PLAYED_PAGE_SIZE) : page, boundaryNumber + 1, hasNext);
+        }
+    }
 
 
+    /**
+     * Обрабатывает нажатие кнопки подсказки: выбранное имя передается обработчику подсказок,
+     * если они еще действуют.
+     *
+     * @param index номер кнопки
+     * @return новый текст сообщения или null, если подсказки устарели
+     */
+    private String handleSuggestion(String index, long chatId) {
+        ChatSession session = sessions.get(chatId);
+        NameSuggestions suggestions = session.suggestions;
+        int number;
+        try {
+            number = Integer.parseInt(index);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (suggestions == null || suggestions.state() != session.state
+                || number < 0 || number >= suggestions.names().size()) {
+            return null;
+        }
+        session.suggestions = null;
+        return suggestions.select().handle(suggestions.names().get(number), chatId);
+    }
+
 
-        } else if (textMsg.equals("/playpuzzle") || textMsg.equals("Загадки")) {
-            // Вход в режим головоломки
-            puzzleMode = true;
-            awaitingcancel = true;
-            response = puzzleGame.startPuzzle(chatId);
+    /**
+     * Собирает страницу списка пройденных игр и кнопки листания к ней.
+     *
+     * @param page    игры страницы
+     * @param first   номер первой игры страницы
+     * @param hasNext есть ли игры после страницы
+     */
+    private String renderPlayedPage(long chatId, List<PlayedGame> page, int first, boolean hasNext) {
+        ChatSession session = sessions.get(chatId);
+        if (page.isEmpty()) {
+            session.navigation = null;
+            return first == 1 ? "Список пройденных игр пуст." : "На этой странице игр больше нет.";
         }
+        StringBuilder responseBuilder = new StringBuilder("Пройденные игры:\n");
+        for (int i = 0; i < page.size(); i++) {
+            responseBuilder.append(first + i).append(". ").append(page.get(i).title()).append("\n");
+        }
+        int last = first + page.size() - 1;
+        if (hasNext) {
+            responseBuilder.append("Следующая страница: /getplayed ").append(last + 1).append("\n");
+        }
+        String previous = first > 1 ? PLAYED_CALLBACK + "prev:" + page.get(0).id() + ":" + first : null;
+        String next = hasNext ? PLAYED_CALLBACK + "next:" + page.get(page.size() - 1).id() + ":" + last : null;
+        session.navigation = previous == null && next == null ? null : new PageNavigation(previous, next);
+        return responseBuilder.toString();
+    }
 
-        else {
-            response = textMsg;
+
+    /**
+     * Начинает многошаговый диалог: переводит чат в указанный шаг и показывает кнопку отмены.
+     */
+    private String startDialog(long chatId, DialogState state, String request) {
+        ChatSession session = sessions.get(chatId);
+        session.state = state;
+        session.awaitingcancel = true;
+        return request;
+    }
+
+
+    private String handleStartAddGame(String textMsg, long chatId) {
+        return startDialog(chatId, DialogState.AWAITING_TITLE, "Введите название игры:");
+    }
+
+
+    private String handleStartEditGame(String textMsg, long chatId) {
+        return startDialog(chatId, DialogState.AWAITING_EDIT_NUMBER, "Введите номер из списка:");
+    }
+
+
+    private String handleStartGamesByAuthor(String textMsg, long chatId) {
+        return startDialog(chatId, DialogState.AWAITING_AUTHOR_FOR_SEARCH, "Введите имя автора:");
+    }
+
+
+    private String handleStartGamesByYear(String textMsg, long chatId) {
+        return startDialog(chatId, DialogState.AWAITING_YEAR_FOR_SEARCH, "Введите год (не более 4 цифр):");
+    }
+
+
+    private String handleStartRemoveGame(String textMsg, long chatId) {
+        return startDialog(chatId, DialogState.AWAITING_REMOVAL_NUMBER, "Введите номер игры, которую нужно удалить:");
+    }
+
+
+    private String handleStartPuzzle(String textMsg, long chatId) {
+        // Вход в режим головоломки
+        startDialog(chatId, DialogState.PUZZLE, null);
+        return puzzleGame.startPuzzle(chatId);
+    }
+
+
+    /**
+     * Обработка команды /getbyrating [страница]
+     */
+    private String handleGamesByRating(String textMsg, long chatId) {
+        int page = parsePageNumber(textMsg.substring("/getbyrating".length()));
+        // Номер страницы может быть любым int, поэтому смещение считается в long и ограничивается сверху
+        int offset = (int) Math.min(Integer.MAX_VALUE, (page - 1L) * RATING_PAGE_SIZE);
+        // Запрашиваем на одну игру больше, чтобы узнать, есть ли следующая страница
+        List<String> gamesByRating = games.getTopRatedGames(offset, RATING_PAGE_SIZE + 1);
+        if (gamesByRating.isEmpty()) {
+            return "Нет данных о среднем рейтинге игр.";
         }
-        return response;
+        StringBuilder responseBuilder = new StringBuilder("Список игр по среднему рейтингу:\n");
+        for (String game : gamesByRating.subList(0, Math.min(RATING_PAGE_SIZE, gamesByRating.size()))) {
+            responseBuilder.append(game).append("\n");
+        }
+        if (gamesByRating.size() > RATING_PAGE_SIZE) {
+            responseBuilder.append("Следующая страница: /getbyrating ").append(page + 1).append("\n");
+        }
+        return responseBuilder.toString();
     }
 
 
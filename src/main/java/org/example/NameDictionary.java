@@ -0,0 +1,123 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Словарь названий или издателей: таблица (id, name), на которую ссылаются строки completed_games.
+ * Одно название хранится в базе один раз, сколько бы чатов ни прошли эту игру.
+ * Перед таблицей стоит кэш name -> id в памяти, поэтому запись игры с уже известным названием
+ * не ищет его в базе. Новые имена попадают в кэш только после фиксации транзакции (см. learn):
+ * при откате id из незафиксированной транзакции в кэше остался бы ссылкой в никуда.
+ */
+class NameDictionary {
+
+    /** Сколько имен держать в кэше по умолчанию */
+    static final int DEFAULT_CAPACITY = 100_000;
+
+    private final String insertName;
+    private final String selectId;
+    private final String table;
+
+    /** Имена в порядке последнего обращения; доступ под блокировкой самой карты */
+    private final LinkedHashMap<String, Long> ids;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param table    таблица словаря со столбцами id и name
+     * @param capacity сколько имен держать в кэше
+     */
+    NameDictionary(String table, int capacity) {
+        this.table = table;
+        this.insertName = "INSERT INTO " + table + " (name) VALUES (?) ON CONFLICT (name) DO NOTHING";
+        this.selectId = "SELECT id FROM " + table + " WHERE name = ?";
+        this.ids = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    NameDictionary(String table) {
+        this(table, DEFAULT_CAPACITY);
+    }
+
+    private Long cached(String name) {
+        synchronized (ids) {
+            Long id = ids.get(name);
+            if (id != null) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Возвращает id имени, добавляя имя в словарь, если его там нет. Вызывается в транзакции писателя.
+     *
+     * @param connection соединение писателя
+     * @param name       название или издатель
+     * @param learned    новые для кэша имена этой транзакции; передаются в learn после фиксации
+     * @return id имени
+     */
+    long intern(PooledConnection connection, String name, Map<String, Long> learned) throws SQLException {
+        Long id = cached(name);
+        if (id == null) {
+            id = learned.get(name);
+        }
+        if (id != null) {
+            return id;
+        }
+        PreparedStatement insert = connection.prepare(insertName);
+        insert.setString(1, name);
+        insert.executeUpdate();
+        long found = find(connection, name);
+        if (found == 0) {
+            throw new SQLException("Имя не записалось в словарь " + table + ": " + name);
+        }
+        learned.put(name, found);
+        return found;
+    }
+
+    /**
+     * Ищет id имени в базе, не добавляя его.
+     *
+     * @return id имени или 0, если имени нет в словаре
+     */
+    private long find(PooledConnection connection, String name) throws SQLException {
+        PreparedStatement select = connection.prepare(selectId);
+        select.setString(1, name);
+        try (ResultSet resultSet = select.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Запоминает имена, записанные в зафиксированной транзакции.
+     */
+    void learn(Map<String, Long> learned) {
+        if (learned.isEmpty()) {
+            return;
+        }
+        synchronized (ids) {
+            ids.putAll(learned);
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+}
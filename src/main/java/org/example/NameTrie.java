@@ -0,0 +1,299 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Сжатое префиксное дерево имен для подсказок при вводе издателя или названия.
+ * Ребро хранит целый кусок имени, а не одну букву, поэтому узлов примерно столько же, сколько имен,
+ * а цепочки без ветвлений не занимают память.
+ * Ключи сравниваются без учета регистра и различия е/ё, в узле хранится исходное написание имени.
+ * Дерево только растет: имена приходят из словарей titles и authors, из которых ничего не удаляется.
+ * Число имен ограничено, имена сверх предела не добавляются и учитываются в статистике.
+ */
+class NameTrie {
+
+    /** Системное свойство с пределом числа имен в одном дереве, например -Dnames.trie.max=2000000 */
+    static final String MAX_NAMES_PROPERTY = "names.trie.max";
+
+    static final int DEFAULT_MAX_NAMES = 200_000;
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /**
+     * Узел дерева: кусок ключа на ребре от родителя, дети по возрастанию первой буквы ребра
+     * и исходное имя, если здесь заканчивается ключ.
+     */
+    private static final class Node {
+        char[] label;
+        Node[] children = NO_CHILDREN;
+        String name;
+
+        Node(char[] label) {
+            this.label = label;
+        }
+
+        /**
+         * Позиция ребенка с ребром на букву c или (-(позиция вставки) - 1), как в Arrays.binarySearch
+         */
+        int find(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char first = children[middle].label[0];
+                if (first < c) {
+                    low = middle + 1;
+                } else if (first > c) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        void insertChild(int position, Node child) {
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, position);
+            grown[position] = child;
+            System.arraycopy(children, position, grown, position + 1, children.length - position);
+            children = grown;
+        }
+    }
+
+    private final Node root = new Node(new char[0]);
+    private final int maxNames;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Счетчики меняются под блокировкой записи
+    private int size;
+    private long nodes = 1;
+    private long edges;
+    private long labelChars;
+    private long nameChars;
+    private long dropped;
+
+    NameTrie() {
+        this(Integer.getInteger(MAX_NAMES_PROPERTY, DEFAULT_MAX_NAMES));
+    }
+
+    /**
+     * @param maxNames сколько имен хранить не больше
+     */
+    NameTrie(int maxNames) {
+        this.maxNames = maxNames;
+    }
+
+    /**
+     * Ключ имени в дереве: строчные буквы, ё заменена на е
+     */
+    static String normalize(String name) {
+        return SchemaMigrations.foldSearchText(name).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Добавляет имя. Если имя с тем же ключом уже есть, остается первое написание.
+     *
+     * @return true, если имя добавлено
+     */
+    boolean add(String name) {
+        String key = normalize(name);
+        if (key.isEmpty()) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            Node node = root;
+            int i = 0;
+            while (i < key.length()) {
+                int position = node.find(key.charAt(i));
+                if (position < 0) {
+                    if (full()) {
+                        return false;
+                    }
+                    Node leaf = new Node(key.substring(i).toCharArray());
+                    node.insertChild(-position - 1, leaf);
+                    grow(leaf);
+                    return put(leaf, name);
+                }
+                Node child = node.children[position];
+                int common = commonPrefix(child.label, key, i);
+                if (common < child.label.length) {
+                    // Ключ расходится с ребром посередине: ребро делится, и общая часть становится новым узлом
+                    if (full()) {
+                        return false;
+                    }
+                    Node middle = new Node(Arrays.copyOf(child.label, common));
+                    child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                    middle.children = new Node[]{child};
+                    node.children[position] = middle;
+                    nodes++;
+                    edges++;
+                    child = middle;
+                }
+                node = child;
+                i += common;
+            }
+            if (node.name != null || full()) {
+                return false;
+            }
+            return put(node, name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean full() {
+        if (size < maxNames) {
+            return false;
+        }
+        dropped++;
+        return true;
+    }
+
+    private void grow(Node leaf) {
+        nodes++;
+        edges++;
+        labelChars += leaf.label.length;
+    }
+
+    private boolean put(Node node, String name) {
+        node.name = name;
+        nameChars += name.length();
+        size++;
+        return true;
+    }
+
+    private static int commonPrefix(char[] label, String key, int from) {
+        int limit = Math.min(label.length, key.length() - from);
+        int i = 0;
+        while (i < limit && label[i] == key.charAt(from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Имена, ключ которых начинается с ключа prefix, по алфавиту ключей: дерево обходится сверху вниз,
+     * дети узла по возрастанию буквы. Имя, совпадающее с prefix, поэтому идет первым, но длина имен
+     * на порядок не влияет: "abcd" идет раньше "ac".
+     *
+     * @param prefix начало имени в любом регистре
+     * @param limit  сколько имен вернуть
+     * @return найденные имена в исходном написании
+     */
+    List<String> suggest(String prefix, int limit) {
+        List<String> found = new ArrayList<>(Math.min(limit, 16));
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return found;
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int i = 0;
+            while (i < key.length()) {
+                int position = node.find(key.charAt(i));
+                if (position < 0) {
+                    return found;
+                }
+                node = node.children[position];
+                int common = commonPrefix(node.label, key, i);
+                // Ключ может закончиться посередине ребра: тогда подходит все поддерево
+                if (common < node.label.length && i + common < key.length()) {
+                    return found;
+                }
+                i += common;
+            }
+            collect(node, limit, found);
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Имена из names, ключ которых начинается с ключа prefix, в том же порядке, что и suggest.
+     * Для небольших наборов имен одного чата, где дерево не нужно.
+     *
+     * @param names  имена в исходном написании
+     * @param prefix начало имени в любом регистре
+     * @param limit  сколько имен вернуть
+     * @return найденные имена; из имен с одинаковым ключом остается первое
+     */
+    static List<String> withPrefix(Collection<String> names, String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        TreeMap<String, String> found = new TreeMap<>();
+        for (String name : names) {
+            String nameKey = normalize(name);
+            if (nameKey.startsWith(key)) {
+                found.putIfAbsent(nameKey, name);
+            }
+        }
+        List<String> sorted = new ArrayList<>(Math.min(limit, found.size()));
+        for (String name : found.values()) {
+            if (sorted.size() >= limit) {
+                break;
+            }
+            sorted.add(name);
+        }
+        return sorted;
+    }
+
+    private static void collect(Node node, int limit, List<String> found) {
+        if (node.name != null) {
+            found.add(node.name);
+        }
+        for (Node child : node.children) {
+            if (found.size() >= limit) {
+                return;
+            }
+            collect(child, limit, found);
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Примерный объем дерева вместе со строками имен, байт. Узел с заголовком и тремя ссылками около 32 байт,
+     * массив букв - 16 байт и по 2 на букву, массив детей - 16 байт и по 4 на ребенка,
+     * строка имени - около 40 байт и не больше 2 на букву.
+     */
+    long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return nodes * (32 + 16 + 16) + labelChars * 2 + edges * 4 + size * 40L + nameChars * 2;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает сводку по дереву для логов.
+     */
+    String getStatistics() {
+        lock.readLock().lock();
+        try {
+            return "имен " + size + " из " + maxNames + ", узлов " + nodes + ", память " + memoryBytes() / 1024
+                    + " КБ, не поместилось " + dropped;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Способ доставки исходящего сообщения на платформу (Telegram, VK или заглушка для тестов).
+ *
+ * @param <M> тип сообщения платформы
+ */
+interface MessageTransport<M> {
+    /**
+     * Отправляет сообщение в чат.
+     *
+     * @param chatId  идентификатор чата
+     * @param message сообщение
+     * @throws RateLimitedException если платформа просит подождать перед повтором
+     * @throws IOException          при временной ошибке сети или сервера, отправка будет повторена
+     * @throws Exception            если платформа отклонила сообщение, повторять его бесполезно
+     */
+    void send(long chatId, M message) throws Exception;
+}
+
+
+/**
+ * Платформа отклонила отправку из-за превышения лимитов (HTTP 429 или flood control).
+ */
+class RateLimitedException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    /**
+     * @param retryAfterMillis через сколько миллисекунд можно повторить, 0 - если платформа не сообщила
+     */
+    RateLimitedException(long retryAfterMillis) {
+        super("Превышен лимит отправки, повтор через " + retryAfterMillis + " мс");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
+
+
+/**
+ * Ведро токенов: не более capacity отправок подряд и затем ratePerSecond отправок в секунду.
+ */
+class TokenBucket {
+    private final double capacity;
+    private final double refillPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double capacity, double ratePerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Забирает один токен. Если токенов нет, токен берется в долг.
+     *
+     * @return сколько наносекунд нужно подождать до отправки, 0 - можно отправлять сразу
+     */
+    synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / refillPerNano);
+    }
+
+    /**
+     * true, если ведро снова полное и его можно забыть без потери лимита
+     */
+    synchronized boolean isIdle() {
+        return tokens + (System.nanoTime() - lastRefill) * refillPerNano >= capacity;
+    }
+}
+
+
+/**
+ * Асинхронная отправка исходящих сообщений.
+ * Сообщения ставятся в ограниченные очереди и отправляются рабочими потоками, поэтому обработка
+ * следующего входящего сообщения не ждет ответа платформы. Очередь выбирается по чату,
+ * так что ответы одному чату уходят в исходном порядке. Отправка соблюдает общий лимит и лимит
+ * на чат. Рабочий поток никогда не спит: сообщение, которому нужно подождать лимита или повтора,
+ * откладывается в очередь с задержкой, а следующие сообщения того же чата ждут за ним,
+ * пока поток отправляет сообщения других чатов. Повторяются только ответы 429 и сетевые ошибки,
+ * остальные ошибки платформы сразу отбрасывают сообщение.
+ *
+ * @param <M> тип сообщения платформы
+ */
+class OutboundSender<M> implements AutoCloseable {
+
+    /** Емкость очереди одного рабочего потока */
+    static final int QUEUE_CAPACITY = 1000;
+
+    /** Сколько раз пытаться отправить сообщение */
+    static final int MAX_ATTEMPTS = 5;
+
+    /** Начальная задержка перед повтором, мс */
+    static final long BASE_BACKOFF = 500;
+
+    /** Сколько чатов хранить у одного потока, прежде чем убирать неактивные */
+    private static final int MAX_CHAT_BUCKETS = 10_000;
+
+    /**
+     * Сообщение в очереди вместе с чатом, временем постановки и состоянием попыток.
+     * Поля попыток меняет только рабочий поток чата.
+     */
+    private static final class Outgoing<M> implements Delayed {
+        final long chatId;
+        final M message;
+        final long enqueuedAt = System.nanoTime();
+        int attempts;
+        boolean reserved;
+        long readyAt;
+
+        Outgoing(long chatId, M message) {
+            this.chatId = chatId;
+            this.message = message;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(readyAt, ((Outgoing<?>) other).readyAt);
+        }
+    }
+
+    /**
+     * Состояние чата у рабочего потока: лимит чата и сообщения, ждущие за отложенным.
+     */
+    private static final class ChatLane<M> {
+        final TokenBucket bucket;
+        final ArrayDeque<Outgoing<M>> backlog = new ArrayDeque<>();
+        boolean waiting;
+
+        ChatLane(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * Рабочий поток со своей очередью новых сообщений, отложенными сообщениями и чатами.
+     */
+    private final class Worker implements Runnable {
+        final BlockingQueue<Outgoing<M>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final DelayQueue<Outgoing<M>> delayed = new DelayQueue<>();
+        final Map<Long, ChatLane<M>> lanes = new HashMap<>();
+        volatile int held;
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty() || !delayed.isEmpty()) {
+                try {
+                    Outgoing<M> due;
+                    while ((due = delayed.poll()) != null) {
+                        resume(due);
+                    }
+                    // Пока за отложенными ждет слишком много сообщений, новые не берутся,
+                    // и очередь заполняется, заставляя отправителей ждать
+                    Outgoing<M> outgoing = held < QUEUE_CAPACITY ? queue.poll(nextWakeup(), TimeUnit.NANOSECONDS)
+                            : delayed.poll(nextWakeup(), TimeUnit.NANOSECONDS);
+                    if (outgoing == null) {
+                        continue;
+                    }
+                    if (outgoing.readyAt != 0) {
+                        resume(outgoing);
+                    } else {
+                        accept(outgoing);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Сколько можно ждать нового сообщения, не пропустив отложенное, нс
+         */
+        private long nextWakeup() {
+            Outgoing<M> next = delayed.peek();
+            long limit = TimeUnit.SECONDS.toNanos(1);
+            return next == null ? limit : Math.max(0, Math.min(limit, next.getDelay(TimeUnit.NANOSECONDS)));
+        }
+
+        /**
+         * Новое сообщение: отправляется сразу или встает за отложенным сообщением своего чата.
+         */
+        private void accept(Outgoing<M> outgoing) {
+            ChatLane<M> lane = lane(outgoing.chatId);
+            if (lane.waiting) {
+                lane.backlog.add(outgoing);
+                held++;
+                return;
+            }
+            drain(lane, outgoing);
+        }
+
+        /**
+         * Отложенное сообщение дождалось своего времени и снова первое в своем чате.
+         */
+        private void resume(Outgoing<M> outgoing) {
+            drain(lanes.get(outgoing.chatId), outgoing);
+        }
+
+        /**
+         * Отправляет сообщение и затем ждущие за ним, пока очередное не придется отложить.
+         */
+        private void drain(ChatLane<M> lane, Outgoing<M> first) {
+            Outgoing<M> next = first;
+            while (next != null) {
+                long delay = attempt(lane, next);
+                if (delay > 0) {
+                    lane.waiting = true;
+                    next.readyAt = System.nanoTime() + delay;
+                    delayed.add(next);
+                    return;
+                }
+                next = lane.backlog.poll();
+                if (next != null) {
+                    held--;
+                }
+            }
+            lane.waiting = false;
+        }
+
+        private ChatLane<M> lane(long chatId) {
+            if (lanes.size() > MAX_CHAT_BUCKETS) {
+                lanes.values().removeIf(lane -> !lane.waiting && lane.bucket.isIdle());
+            }
+            return lanes.computeIfAbsent(chatId, id -> new ChatLane<>(new TokenBucket(chatBurst, chatRatePerSecond)));
+        }
+
+        int depth() {
+            return queue.size() + delayed.size() + held;
+        }
+    }
+
+    private final String name;
+    private final MessageTransport<M> transport;
+    private final TokenBucket globalBucket;
+    private final double chatBurst;
+    private final double chatRatePerSecond;
+    private final List<Worker> workers = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LatencyStats latency = new LatencyStats();
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /**
+     * @param name              имя для потоков и логов
+     * @param transport         способ доставки сообщений
+     * @param workers           число рабочих потоков
+     * @param globalRate        общий лимит, сообщений в секунду
+     * @param chatBurst         сколько сообщений подряд можно отправить в один чат
+     * @param chatRatePerSecond лимит на один чат, сообщений в секунду
+     */
+    OutboundSender(String name, MessageTransport<M> transport, int workers,
+                   double globalRate, double chatBurst, double chatRatePerSecond) {
+        this.name = name;
+        this.transport = transport;
+        this.globalBucket = new TokenBucket(globalRate, globalRate);
+        this.chatBurst = chatBurst;
+        this.chatRatePerSecond = chatRatePerSecond;
+        for (int i = 0; i < workers; i++) {
+            Worker worker = new Worker();
+            Thread thread = new Thread(worker, name + "-sender-" + i);
+            thread.setDaemon(true);
+            this.workers.add(worker);
+            this.threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Ставит сообщение в очередь на отправку. Если очередь заполнена, ждет освобождения места.
+     *
+     * @param chatId  идентификатор чата
+     * @param message сообщение
+     * @return false, если отправитель закрыт или ожидание было прервано
+     */
+    boolean submit(long chatId, M message) {
+        if (!running) {
+            return false;
+        }
+        try {
+            workers.get(Math.floorMod(Long.hashCode(chatId), workers.size())).queue.put(new Outgoing<>(chatId, message));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Одна попытка отправить сообщение с соблюдением лимитов.
+     *
+     * @return 0, если с сообщением покончено (отправлено или отброшено),
+     * иначе через сколько наносекунд попробовать снова
+     */
+    private long attempt(ChatLane<M> lane, Outgoing<M> outgoing) {
+        if (!outgoing.reserved) {
+            // Токен берется один раз: отложенное по лимиту сообщение при возврате уже оплачено
+            long wait = Math.max(lane.bucket.reserve(), globalBucket.reserve());
+            outgoing.reserved = true;
+            if (wait > 0) {
+                throttledNanos.addAndGet(wait);
+                return wait;
+            }
+        }
+        outgoing.reserved = false;
+        outgoing.attempts++;
+        try {
+            transport.send(outgoing.chatId, outgoing.message);
+            sent.increment();
+            latency.record(System.nanoTime() - outgoing.enqueuedAt);
+            return 0;
+        } catch (RateLimitedException e) {
+            return retry(outgoing, Math.max(e.getRetryAfterMillis(), backoff(outgoing)));
+        } catch (IOException e) {
+            return retry(outgoing, backoff(outgoing));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.increment();
+            return 0;
+        } catch (Exception e) {
+            dropped.increment();
+            System.err.println(name + ": сообщение в чат " + outgoing.chatId + " отклонено: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static long backoff(Outgoing<?> outgoing) {
+        return BASE_BACKOFF << (outgoing.attempts - 1);
+    }
+
+    private long retry(Outgoing<M> outgoing, long delayMillis) {
+        if (outgoing.attempts >= MAX_ATTEMPTS) {
+            failed.increment();
+            System.err.println(name + ": не удалось отправить сообщение в чат " + outgoing.chatId);
+            return 0;
+        }
+        retries.increment();
+        return TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    /** Число отправленных сообщений */
+    long getSent() {
+        return sent.sum();
+    }
+
+    /** Число повторных попыток */
+    long getRetries() {
+        return retries.sum();
+    }
+
+    /** Число сообщений, которые так и не удалось отправить после всех повторов */
+    long getFailed() {
+        return failed.sum();
+    }
+
+    /** Число сообщений, отклоненных платформой без повторов */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /** Число сообщений в очередях, включая отложенные */
+    int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : workers) {
+            depth += worker.depth();
+        }
+        return depth;
+    }
+
+    /**
+     * Возвращает сводку по отправке для логов.
+     */
+    String getStatistics() {
+        return name + ": отправлено " + sent.sum() + ", повторов " + retries.sum() + ", ошибок " + failed.sum()
+                + ", отклонено " + dropped.sum() + ", в очередях " + getQueueDepth()
+                + ", от постановки до доставки в среднем " + Math.round(latency.getAverageMillis()) + " мс"
+                + ", ожидание лимитов " + TimeUnit.NANOSECONDS.toMillis(throttledNanos.get()) + " мс";
+    }
+
+    /**
+     * Перестает принимать сообщения и дает рабочим потокам отправить оставшиеся, включая отложенные.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
+
+
+
+/**
+ * Заглушка транспорта для замеров пропускной способности без сети.
+ * Имитирует задержку ответа платформы и, при желании, ответ 429 на каждое n-е сообщение.
+ *
+ * @param <M> тип сообщения
+ */
+class StubTransport<M> implements MessageTransport<M> {
+    private final long latencyMillis;
+    private final int rateLimitEvery;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * @param latencyMillis  задержка одной отправки, мс
+     * @param rateLimitEvery каждое какое сообщение отклонять с 429, 0 - никогда
+     */
+    StubTransport(long latencyMillis, int rateLimitEvery) {
+        this.latencyMillis = latencyMillis;
+        this.rateLimitEvery = rateLimitEvery;
+    }
+
+    @Override
+    public void send(long chatId, M message) throws Exception {
+        calls.increment();
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+        }
+        if (rateLimitEvery > 0 && calls.sum() % rateLimitEvery == 0) {
+            throw new RateLimitedException(0);
+        }
+        delivered.increment();
+    }
+
+    /** Число доставленных сообщений */
+    long getDelivered() {
+        return delivered.sum();
+    }
+}
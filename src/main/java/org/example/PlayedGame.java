@@ -0,0 +1,13 @@
+package org.example;
+
+/**
+ * Пройденная игра из списка чата.
+ *
+ * @param id     стабильный id строки в базе данных
+ * @param title  название игры
+ * @param author издатель игры
+ * @param year   год выхода
+ * @param rating оценка пользователя или null, если игра добавлена без оценки
+ */
+record PlayedGame(long id, String title, String author, int year, Integer rating) {
+}
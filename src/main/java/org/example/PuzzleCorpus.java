@@ -0,0 +1,229 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Набор загадок, общий для всех чатов. Загадки адресуются номером от 0 до size() - 1,
+ * поэтому прогресс чата хранит только номера.
+ */
+interface PuzzleCatalog {
+
+    /**
+     * Число загадок
+     */
+    int size();
+
+    String question(int index);
+
+    /**
+     * Основной ответ, который показывается пользователю
+     */
+    String answer(int index);
+
+    /**
+     * Основной ответ и принимаемые синонимы через |, например "Игла|иголка"
+     */
+    String acceptedAnswers(int index);
+
+    String hint(int index);
+
+    /**
+     * Номер категории загадки, см. categoryName
+     */
+    int category(int index);
+
+    String categoryName(int category);
+
+    /**
+     * Сложность загадки от 1 до 3
+     */
+    int difficulty(int index);
+
+    /**
+     * Загадка целиком
+     */
+    default Puzzle get(int index) {
+        return new Puzzle(question(index), answer(index), hint(index));
+    }
+}
+
+
+/**
+ * Корпус загадок в компактном двоичном формате.
+ * Формат (все числа big-endian):
+ * <pre>
+ * int     MAGIC
+ * int     число загадок
+ * int     число категорий, затем для каждой: unsigned short длина + название в UTF-8
+ * индекс  по RECORD_SIZE байт на загадку: int смещение текста, unsigned short длины
+ *         вопроса, ответа и подсказки, byte категория, byte сложность
+ * текст   вопрос, ответ и подсказка подряд в UTF-8; ответ может содержать синонимы через |
+ * </pre>
+ * Файл отображается в память, и строки декодируются только при обращении к загадке,
+ * поэтому время запуска и занятая куча не растут вместе с корпусом.
+ * Файл собирается из CSV утилитой PuzzleCorpusBuilder.
+ */
+final class PuzzleCorpus implements PuzzleCatalog {
+
+    /** "PZC1" */
+    static final int MAGIC = 0x505A4331;
+
+    /** Размер записи индекса, байт */
+    static final int RECORD_SIZE = 12;
+
+    /** Встроенный корпус в формате CSV */
+    static final String DEFAULT_RESOURCE = "/puzzles.csv";
+
+    /** Системное свойство с путем к собранному двоичному корпусу */
+    static final String CORPUS_PROPERTY = "puzzles.corpus";
+
+    private final ByteBuffer data;
+    private final int size;
+    private final String[] categories;
+    private final int indexStart;
+    private final int textStart;
+
+    /**
+     * @param data корпус в двоичном формате; буфер не копируется и дальше только читается
+     */
+    PuzzleCorpus(ByteBuffer data) {
+        this.data = data;
+        if (data.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Это не корпус загадок");
+        }
+        size = data.getInt(4);
+        categories = new String[data.getInt(8)];
+        int position = 12;
+        for (int i = 0; i < categories.length; i++) {
+            int length = Short.toUnsignedInt(data.getShort(position));
+            categories[i] = decode(position + 2, length);
+            position += 2 + length;
+        }
+        indexStart = position;
+        textStart = indexStart + size * RECORD_SIZE;
+    }
+
+    /**
+     * Отображает в память собранный файл корпуса.
+     */
+    static PuzzleCorpus map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Отображение остается действительным и после закрытия канала
+            return new PuzzleCorpus(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Корпус по умолчанию загружается один раз, при первом обращении.
+     */
+    private static final class DefaultCorpus {
+        static final PuzzleCorpus INSTANCE = load();
+    }
+
+    /**
+     * Корпус по умолчанию, общий для всех игр.
+     */
+    static PuzzleCorpus defaultCorpus() {
+        return DefaultCorpus.INSTANCE;
+    }
+
+    /**
+     * Загружает корпус: файл из системного свойства puzzles.corpus,
+     * а если он не задан - встроенные загадки из puzzles.csv.
+     */
+    static PuzzleCorpus load() {
+        try {
+            String file = System.getProperty(CORPUS_PROPERTY);
+            if (file != null) {
+                return map(Paths.get(file));
+            }
+            try (InputStream csv = PuzzleCorpus.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+                if (csv == null) {
+                    throw new IOException("Не найден ресурс " + DEFAULT_RESOURCE);
+                }
+                return new PuzzleCorpus(PuzzleCorpusBuilder.build(new InputStreamReader(csv, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось загрузить загадки", e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int record(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return indexStart + index * RECORD_SIZE;
+    }
+
+    private int length(int index, int field) {
+        return Short.toUnsignedInt(data.getShort(record(index) + 4 + field * 2));
+    }
+
+    /**
+     * Декодирует поле загадки: 0 - вопрос, 1 - ответ, 2 - подсказка.
+     */
+    private String field(int index, int field) {
+        int offset = textStart + data.getInt(record(index));
+        for (int i = 0; i < field; i++) {
+            offset += length(index, i);
+        }
+        return decode(offset, length(index, field));
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        data.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String question(int index) {
+        return field(index, 0);
+    }
+
+    @Override
+    public String answer(int index) {
+        String answers = field(index, 1);
+        int separator = answers.indexOf(AnswerMatcher.SYNONYM_SEPARATOR);
+        return separator < 0 ? answers : answers.substring(0, separator);
+    }
+
+    @Override
+    public String acceptedAnswers(int index) {
+        return field(index, 1);
+    }
+
+    @Override
+    public String hint(int index) {
+        return field(index, 2);
+    }
+
+    @Override
+    public int category(int index) {
+        return Byte.toUnsignedInt(data.get(record(index) + 10));
+    }
+
+    @Override
+    public String categoryName(int category) {
+        return categories[category];
+    }
+
+    @Override
+    public int difficulty(int index) {
+        return data.get(record(index) + 11);
+    }
+}
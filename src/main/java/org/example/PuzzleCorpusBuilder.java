@@ -0,0 +1,140 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сборка двоичного корпуса загадок (см. PuzzleCorpus) из CSV.
+ * Строка CSV: категория;сложность;вопрос;ответ;подсказка. Строки, начинающиеся с #,
+ * и строка заголовка пропускаются. Поля не должны содержать точку с запятой.
+ * <p>
+ * Запуск: java org.example.PuzzleCorpusBuilder puzzles.csv puzzles.bin
+ */
+class PuzzleCorpusBuilder {
+
+    private static final String HEADER = "category;";
+
+    private final List<String> categories = new ArrayList<>();
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+    private int count;
+
+    /**
+     * Добавляет загадку в корпус.
+     *
+     * @param category   категория
+     * @param difficulty сложность от 1 до 3
+     */
+    void add(String category, int difficulty, String question, String answer, String hint) throws IOException {
+        if (difficulty < 1 || difficulty > 3) {
+            throw new IllegalArgumentException("Сложность должна быть от 1 до 3: " + difficulty);
+        }
+        Integer id = categoryIds.get(category);
+        if (id == null) {
+            if (categories.size() == 256) {
+                throw new IllegalArgumentException("Категорий больше 256");
+            }
+            id = categories.size();
+            categories.add(category);
+            categoryIds.put(category, id);
+        }
+        DataOutputStream out = new DataOutputStream(index);
+        out.writeInt(text.size());
+        for (String field : new String[]{question, answer, hint}) {
+            byte[] bytes = utf8(field);
+            out.writeShort(bytes.length);
+            text.write(bytes);
+        }
+        out.writeByte(id);
+        out.writeByte(difficulty);
+        count++;
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Слишком длинный текст загадки: " + bytes.length + " байт");
+        }
+        return bytes;
+    }
+
+    /**
+     * Записывает корпус в двоичном формате.
+     */
+    void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(PuzzleCorpus.MAGIC);
+        out.writeInt(count);
+        out.writeInt(categories.size());
+        for (String category : categories) {
+            byte[] bytes = utf8(category);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+        index.writeTo(out);
+        text.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Читает загадки из CSV.
+     */
+    PuzzleCorpusBuilder addCsv(Reader csv) throws IOException {
+        BufferedReader reader = new BufferedReader(csv);
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            if (line.isBlank() || line.startsWith("#") || line.startsWith(HEADER)) {
+                continue;
+            }
+            String[] fields = line.split(";", -1);
+            if (fields.length != 5) {
+                throw new IOException("Строка " + number + ": ожидалось 5 полей, получено " + fields.length);
+            }
+            try {
+                add(fields[0].trim(), Integer.parseInt(fields[1].trim()), fields[2], fields[3], fields[4]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Строка " + number + ": " + e.getMessage(), e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Собирает корпус из CSV в память.
+     */
+    static ByteBuffer build(Reader csv) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PuzzleCorpusBuilder().addCsv(csv).writeTo(out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Использование: PuzzleCorpusBuilder <загадки.csv> <корпус.bin>");
+            System.exit(1);
+        }
+        PuzzleCorpusBuilder builder = new PuzzleCorpusBuilder();
+        try (Reader csv = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            builder.addCsv(csv);
+        }
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            builder.writeTo(out);
+        }
+        System.out.println("Загадок: " + builder.count + ", категорий: " + builder.categories.size());
+    }
+}
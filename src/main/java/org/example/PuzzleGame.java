@@ -1,6 +1,8 @@
 package org.example;
 
-import java.util.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  *  Интерфейс головоломки, который определяет методы
@@ -51,9 +53,10 @@ interface PuzzleGameInterface {
     /**
      * Возвращает подсказку для текущей головоломки.
      *
+     * @param chatId Идентификатор чата, для которого возвращается подсказка.
      * @return Подсказка для текущей головоломки.
      */
-    String getHint();
+    String getHint(long chatId);
 
     /**
      * Выбирает следующую головоломку для указанного чата.
@@ -92,9 +95,9 @@ interface PuzzleGameInterface {
  * Класс представляет собой объект головоломки.
  */
 class Puzzle implements PuzzleInterface{
-    private String question;
-    private String answer;
-    private String hint;
+    private final String question;
+    private final String answer;
+    private final String hint;
 
     /**
      * Конструктор класса Puzzle. Инициализирует загадку, ответ и подсказку.
@@ -137,72 +140,208 @@ class Puzzle implements PuzzleInterface{
     }
 }
 
+/**
+ * Прогресс одного чата в игре в загадки.
+ * Нерешенные загадки лежат в начале массива remaining: выбор - случайная ячейка из первых count,
+ * удаление - обмен с последней нерешенной, оба за O(1) и без выделения памяти.
+ * Пока чат ничего не решил и не пропустил, нерешенные - весь каталог, и массива нет:
+ * номер загадки совпадает с номером ячейки. Массив из catalogSize чисел создается при первом удалении
+ * и освобождается при сбросе игры.
+ */
+final class PuzzleProgress {
+    private final int catalogSize;
+
+    /** Перестановка каталога, первые count загадок не решены; null - не решена ни одна */
+    private int[] remaining;
+    private int count;
+
+    /** Номер текущей загадки в каталоге, -1 - загадки нет */
+    private int current = -1;
+
+    /** Ячейка текущей загадки в remaining */
+    private int currentSlot;
+
+    /** Число правильных ответов */
+    int correct;
+
+    /** Число неверных попыток на текущей загадке */
+    int attempts;
+
+    /** Число неверных ответов за игру вместе с загадками, от которых отказались (пропуск или показ ответа) */
+    int wrong;
+
+    /** Когда была показана текущая загадка, мс */
+    long shownAt;
+
+    PuzzleProgress(int catalogSize) {
+        this.catalogSize = catalogSize;
+        this.count = catalogSize;
+    }
+
+    /**
+     * Номер текущей загадки в каталоге или -1
+     */
+    int current() {
+        return current;
+    }
+
+    int remainingCount() {
+        return count;
+    }
+
+    /**
+     * Делает текущей случайную нерешенную загадку.
+     *
+     * @return номер загадки в каталоге или -1, если нерешенных не осталось
+     */
+    int pickRandom() {
+        if (count == 0) {
+            current = -1;
+            return -1;
+        }
+        currentSlot = ThreadLocalRandom.current().nextInt(count);
+        current = remaining == null ? currentSlot : remaining[currentSlot];
+        attempts = 0;
+        shownAt = System.currentTimeMillis();
+        return current;
+    }
+
+    /**
+     * Убирает текущую загадку из нерешенных.
+     */
+    void removeCurrent() {
+        if (current < 0) {
+            return;
+        }
+        if (remaining == null) {
+            remaining = new int[catalogSize];
+            for (int i = 0; i < catalogSize; i++) {
+                remaining[i] = i;
+            }
+        }
+        // Решенная загадка уходит за границу count, на ее место встает последняя нерешенная
+        count--;
+        remaining[currentSlot] = remaining[count];
+        remaining[count] = current;
+        current = -1;
+    }
+
+    /**
+     * Возвращает все загадки в нерешенные и сбрасывает счетчики.
+     */
+    void reset() {
+        remaining = null;
+        count = catalogSize;
+        current = -1;
+        correct = 0;
+        attempts = 0;
+        wrong = 0;
+    }
+}
+
+
 /**
  * Класс реализующий игру в загадки.
+ * Каталог загадок общий и неизменяемый, а у каждого чата свой прогресс,
+ * поэтому решенная в одном чате загадка остается доступной в других.
  */
 public class PuzzleGame implements PuzzleGameInterface {
 
+    private static final String ALL_SOLVED = "Поздравляю, вы решили все загадки! Пожалуйста, нажмите /stoppuzzle, чтобы завершить игру и посмотреть статистику, либо /restart, чтобы начать заново";
+
     /**
-     * Текущая загадка, которую должен угадать пользователь
+     * Каталог всех загадок, доступных в игре
      */
-    protected Puzzle currentPuzzle;
+    private final PuzzleCatalog catalog;
 
 
     /**
-     * Список всех загадок, доступных в игре, хранится в формате "вопрос" -> "ответ"
+     * Проверка ответов с допуском опечаток и синонимами
      */
-    private Map<String, Puzzle> puzzles;
+    private final AnswerMatcher matcher;
 
 
     /**
-     * Словарь для отслеживания правильных ответов пользователя (количество правильных ответов по chatId)
+     * Прогресс чатов по chatId. Прогресс удаляется вместе с сессией чата, см. forget.
      */
-    private Map<Long, Integer> correctAnswers;
+    private final Map<Long, PuzzleProgress> progress = new ConcurrentHashMap<>();
 
 
     /**
-     * Словарь для отслеживания попыток пользователя (количество попыток по chatId)
+     * Статистика загадок чатов за все игры
      */
-    private Map<Long, Integer> userAttempts;
+    private final PuzzleStatistics statistics;
 
 
     /**
-     * Словарь для отслеживания нерешенных загадок пользователя (список нерешенных загадок по chatId)
-      */
-    private Map<Long, List<String>> unsolvedPuzzles;
+     * Конструктор класса PuzzleGame с корпусом загадок по умолчанию.
+     */
+    public PuzzleGame() {
+        this(PuzzleCorpus.defaultCorpus());
+    }
 
 
     /**
-     * Конструктор класса PuzzleGame. Инициализирует объекты головоломок, словари и статистики ответов пользователей.
+     * Конструктор класса PuzzleGame с указанным каталогом загадок.
+     *
+     * @param catalog каталог загадок
      */
-    public PuzzleGame() {
-        puzzles = new HashMap<>();
-        puzzles.put("Часто висит головой вниз, к небу стремится всегда, но полететь не может", new Puzzle("Часто висит головой вниз, к небу стремится всегда, но полететь не может", "Капля", "Это падает с неба во время дождя"));
-        puzzles.put("Имеет корни, но не растет. Не видит, но слышит", new Puzzle("Имеет корни, но не растет. Не видит, но слышит", "Дерево", "Это большое растение в парке"));
-        puzzles.put("Без рук, без ног, а всегда идут", new Puzzle("Без рук, без ног, а всегда идут", "Часы", "Показывает время"));
-        puzzles.put("Без окон, дверей и крыши, но внутри есть золото", new Puzzle("Без окон, дверей и крыши, но внутри есть золото", "Арахис", "Это еда и часто используется для приготовления масла"));
-        puzzles.put("Чем больше берешь, тем меньше остается", new Puzzle("Чем больше берешь, тем меньше остается", "Время", "Это уходит, когда вы его не замечаете"));
-        puzzles.put("Что можно увидеть с закрытыми глазами?", new Puzzle("Что можно увидеть с закрытыми глазами?", "Сон", "Это происходит, когда вы спите"));
-        puzzles.put("Белый, пушистый, летает без крыльев", new Puzzle("Белый, пушистый, летает без крыльев", "Снег", "Это падает с неба зимой и покрывает землю"));
-        puzzles.put("Имеет ключ, но не открывает замок", new Puzzle("Имеет ключ, но не открывает замок", "Карта", " Это помогает вам найти путь"));
-        puzzles.put("Может быть легким как перышко, но сам не поднимется в воздух", new Puzzle("Может быть легким как перышко, но сам не поднимется в воздух", "Ветер", "Это движется вокруг нас, но невидимо"));
-        puzzles.put("Имеет ушко, но не слышит", new Puzzle("Имеет ушко, но не слышит", "Игла", "Используется для шитья"));
-        puzzles.put("Бежит и не может уйти вперед", new Puzzle("Бежит и не может уйти вперед", "Река", "Это течет от гор к океанам"));
-        puzzles.put("Висит в воздухе и греет нас своим светом", new Puzzle("Висит в воздухе и греет нас своим светом", "Солнце", "Это небесное тело светит днем"));
-        puzzles.put("Имеет зубы, но не кусает", new Puzzle("Имеет зубы, но не кусает", "Гребешок", "Это находится у морских животных"));
-        puzzles.put("Может быть горячим или холодным, но никогда не теплым", new Puzzle("Может быть горячим или холодным, но никогда не теплым", "Огонь", "Это используется для приготовления пищи и обогрева"));
-        puzzles.put("Стоит на кончике ног, но не упадет", new Puzzle("Стоит на кончике ног, но не упадет", "Тень", "Это образуется, когда что-то загораживает свет"));
-        puzzles.put("Серое, большое, и все внутри", new Puzzle("Серое, большое, и все внутри", "Облако", "Это плавает в небе и приносит дождь"));
-        puzzles.put("Маленький как бутылка, светится внутри, но не является источником света", new Puzzle("Маленький как бутылка, светится внутри, но не является источником света", "Лампочка", "Это используется для освещения комнаты"));
-        puzzles.put("Может стоять в одной точке, но всегда стремится вверх", new Puzzle("Может стоять в одной точке, но всегда стремится вверх", "Дым", "Это образуется, когда что-то горит"));
-        puzzles.put("Что можно сломать, даже если ни разу не касался?", new Puzzle("Что можно сломать, даже если ни разу не касался?", "Обещание", "Это слово, которое вы должны держать"));
-        puzzles.put("Быстрый как стрела, он летит без перьев", new Puzzle("Быстрый как стрела, он летит без перьев", "Свет", "Это движется со скоростью 299 792 458 метров в секунду"));
-
-
-        userAttempts = new HashMap<>();
-        correctAnswers = new HashMap<>();
-        currentPuzzle = null;
-        unsolvedPuzzles = new HashMap<>();
+    PuzzleGame(PuzzleCatalog catalog) {
+        this(catalog, new PuzzleStatistics());
+    }
+
+
+    /**
+     * Конструктор класса PuzzleGame с корпусом загадок по умолчанию и сохраняемой статистикой.
+     *
+     * @param statistics статистика загадок чатов
+     */
+    PuzzleGame(PuzzleStatistics statistics) {
+        this(PuzzleCorpus.defaultCorpus(), statistics);
+    }
+
+
+    /**
+     * Конструктор класса PuzzleGame с указанным каталогом загадок и статистикой.
+     *
+     * @param catalog    каталог загадок
+     * @param statistics статистика загадок чатов
+     */
+    PuzzleGame(PuzzleCatalog catalog, PuzzleStatistics statistics) {
+        this.catalog = catalog;
+        this.matcher = new AnswerMatcher(catalog);
+        this.statistics = statistics;
+    }
+
+
+    /**
+     * Прогресс чата, создается при первом обращении.
+     */
+    PuzzleProgress progress(long chatId) {
+        return progress.computeIfAbsent(chatId, id -> new PuzzleProgress(catalog.size()));
+    }
+
+
+    /**
+     * Забывает прогресс чата, например когда его сессия удалена за давностью.
+     *
+     * @param chatId Идентификатор чата.
+     */
+    void forget(long chatId) {
+        progress.remove(chatId);
+    }
+
+
+    /**
+     * Текущая загадка чата или null, если ее нет.
+     *
+     * @param chatId Идентификатор чата.
+     * @return Текущая загадка.
+     */
+    Puzzle getCurrentPuzzle(long chatId) {
+        PuzzleProgress chat = progress.get(chatId);
+        int current = chat == null ? -1 : chat.current();
+        return current < 0 ? null : catalog.get(current);
     }
 
 
@@ -213,15 +352,13 @@ public class PuzzleGame implements PuzzleGameInterface {
      * @return Сообщение с вопросом текущей головоломки.
      */
     public String startPuzzle(long chatId) {
-        // Проверка, есть ли доступные загадки
-        if (puzzles.isEmpty()) {
+        PuzzleProgress chat = progress(chatId);
+        // Проверка, есть ли доступные загадки, и выбор случайной загадки для начала игры
+        int puzzle = chat.pickRandom();
+        if (puzzle < 0) {
             return "Все загадки решены!";
         }
-        // Инициализация попыток пользователя и выбор случайной загадки для начала игры
-        userAttempts.put(chatId, 0);
-        String randomPuzzleKey = getRandomPuzzle();
-        currentPuzzle = puzzles.get(randomPuzzleKey);
-        return "Добро пожаловать в игру в загадки! Начнем.\nЗагадка: " + currentPuzzle.getQuestion();
+        return "Добро пожаловать в игру в загадки! Начнем.\nЗагадка: " + catalog.question(puzzle);
     }
 
 
@@ -233,62 +370,47 @@ public class PuzzleGame implements PuzzleGameInterface {
      * @return Сообщение с результатом проверки ответа пользователя.
      */
     public String checkAnswer(long chatId, String userAnswer) {
+        PuzzleProgress chat = progress.get(chatId);
         // Проверка наличия текущей загадки
-        if (currentPuzzle == null) {
-            return "Нет текущей загадки.";
+        if (chat == null || chat.current() < 0) {
+            return chat != null && chat.remainingCount() == 0
+                    ? "Поздравляю, вы решили все загадки! " + ALL_SOLVED
+                    : "Нет текущей загадки.";
         }
-       // Проверка правильности ответа пользователя и обновление статистики
-        if (!puzzles.isEmpty()) {
-            if (userAnswer.equalsIgnoreCase(currentPuzzle.getAnswer())) {
-                userAttempts.put(chatId, 0);
-                correctAnswers.put(chatId, correctAnswers.getOrDefault(chatId, 0) + 1);
-                puzzles.remove(currentPuzzle.getQuestion());
-                // Проверка, остались ли еще загадки для решения
-                if (puzzles.isEmpty()) {
-                    return "Поздравляю, вы решили все загадки! Поздравляю, вы решили все загадки! Пожалуйста, нажмите /stoppuzzle, чтобы завершить игру и посмотреть статистику, либо /restart, чтобы начать заново";
-                } else {
-                    // Выбор следующей случайной загадки и сообщение пользователю
-                    currentPuzzle = puzzles.get(getRandomPuzzle());
-                    return "Верно! Следующая загадка: " + currentPuzzle.getQuestion();
-                }
-            } else {
-                // Повторный запрос ответа у пользователя, если он ошибся
-                return "Неверно! Попробуйте еще раз.";
-            }
-        } else {
-            // Сообщение об окончании загадок, если все загадки решены
-            return "Поздравляю, вы решили все загадки! Поздравляю, вы решили все загадки! Пожалуйста, нажмите /stoppuzzle, чтобы завершить игру и посмотреть статистику, либо /restart, чтобы начать заново";
+        // Проверка правильности ответа пользователя с учетом опечаток и синонимов, обновление статистики
+        statistics.recordAttempt(chatId);
+        if (!matcher.matches(chat.current(), userAnswer)) {
+            // Повторный запрос ответа у пользователя, если он ошибся
+            chat.attempts++;
+            chat.wrong++;
+            return "Неверно! Попробуйте еще раз.";
+        }
+        chat.correct++;
+        statistics.recordCorrect(chatId, System.currentTimeMillis() - chat.shownAt);
+        chat.removeCurrent();
+        // Выбор следующей случайной загадки, если они еще остались
+        int next = chat.pickRandom();
+        if (next < 0) {
+            return "Поздравляю, вы решили все загадки! " + ALL_SOLVED;
         }
+        return "Верно! Следующая загадка: " + catalog.question(next);
     }
 
 
     /**
      * Метод возвращает подсказку для текущей головоломки.
      *
+     * @param chatId Идентификатор чата, для которого возвращается подсказка.
      * @return Подсказка для текущей головоломки.
      */
-    public String getHint() {
+    public String getHint(long chatId) {
+        PuzzleProgress chat = progress.get(chatId);
         // Проверка наличия текущей загадки
-        if (currentPuzzle == null) {
+        if (chat == null || chat.current() < 0) {
             return "Нет текущей загадки.";
         }
-        // Возврат подсказки к текущей загадке
-        return "Подсказка: " + currentPuzzle.getHint();
-    }
-
-
-    /**
-     * Метод выбирает случайную головоломку из доступных.
-     *
-     * @return Ключ выбранной случайной головоломки.
-     */
-    private String getRandomPuzzle() {
-        // Создание списка ключей (вопросов) из коллекции доступных загадок
-        List<String> puzzleList = new ArrayList<>(puzzles.keySet());
-        // Создание объекта Random для генерации случайного числа
-        Random random = new Random();
-        // Выбор случайного вопроса загадки из списка и возврат его
-        return puzzleList.get(random.nextInt(puzzleList.size()));
+        statistics.recordHint(chatId);
+        return "Подсказка: " + catalog.hint(chat.current());
     }
 
 
@@ -299,18 +421,17 @@ public class PuzzleGame implements PuzzleGameInterface {
      * @return Сообщение с вопросом следующей головоломки.
      */
     public String getNextPuzzle(long chatId) {
-        // Удаление текущей загадки
-        puzzles.remove(currentPuzzle.getQuestion());
-        // Сброс попыток пользователя
-        userAttempts.put(chatId, 0);
-        // Проверка, есть ли еще доступные загадки для решения
-        if (puzzles.isEmpty()) {
-            return "Все загадки решены! Поздравляю, вы решили все загадки! Пожалуйста, нажмите /stoppuzzle, чтобы завершить игру и посмотреть статистику, либо /restart, чтобы начать заново";
-        } else {
-            // Выбор следующей случайной загадки и сообщение пользователю
-            currentPuzzle = puzzles.get(getRandomPuzzle());
-            return "Следующая загадка: " + currentPuzzle.getQuestion();
+        PuzzleProgress chat = progress(chatId);
+        // Пропущенная загадка больше не предлагается и считается неотвеченной
+        if (chat.current() >= 0) {
+            chat.wrong++;
+        }
+        chat.removeCurrent();
+        int next = chat.pickRandom();
+        if (next < 0) {
+            return "Все загадки решены! " + ALL_SOLVED;
         }
+        return "Следующая загадка: " + catalog.question(next);
     }
 
 
@@ -321,87 +442,68 @@ public class PuzzleGame implements PuzzleGameInterface {
      * @return Статистика ответов пользователя в виде текстового сообщения.
      */
     public String getStatistics(long chatId) {
-        // Получение количества правильных ответов пользователя и вычисление процента правильных ответов
-        int correct = correctAnswers.getOrDefault(chatId, 0);
-        int total = 20; // Общее количество загадок
-        double percentage = (correct * 100.0) / total;
-        // Формирование и возврат строки с статистикой
+        PuzzleProgress chat = progress.get(chatId);
+        int correct = chat == null ? 0 : chat.correct;
+        int wrong = chat == null ? 0 : chat.wrong;
+        // Доля считается от того, на что чат отвечал в этой игре, а не от размера каталога
+        int answered = correct + wrong;
+        double percentage = answered == 0 ? 0 : (correct * 100.0) / answered;
         return "Правильных ответов: " + correct + "\nНеправильных ответов: " +
-                (20-correct) + "\nПроцент правильных ответов: " + percentage + "%";
+                wrong + "\nПроцент правильных ответов: " + percentage + "%";
     }
 
+
+    /**
+     * Метод возвращает статистику загадок чата за все игры.
+     *
+     * @param chatId Идентификатор чата, для которого возвращается статистика.
+     * @return Статистика в виде текстового сообщения.
+     */
+    public String getTotalStatistics(long chatId) {
+        ChatPuzzleStats stats = statistics.get(chatId);
+        long attempts = stats.attempts.get();
+        long correct = stats.correct.get();
+        if (attempts == 0) {
+            return "Вы еще не отвечали на загадки.";
+        }
+        return "Ответов: " + attempts + "\nВерных: " + correct
+                + "\nПодсказок: " + stats.hints.get()
+                + "\nСреднее время решения: " + stats.averageSolveMillis() / 1000 + " с";
+    }
+
+
     /**
      * Метод перезапускает игровую сессию
      *
-     * @param chatId Идентификатор чата, для которого возвращается ответ на загадку.
+     * @param chatId Идентификатор чата, для которого перезапускается игра.
      * @return сообщение о начале новой игры
      */
     public String restart(long chatId) {
-        // Сброс данных пользователя и доступных загадок
-        userAttempts.remove(chatId);
-        correctAnswers.remove(chatId);
-        puzzles.clear();
-        unsolvedPuzzles.remove(chatId);
-
-        // Восстановление исходных загадок
-        puzzles.put("Часто висит головой вниз, к небу стремится всегда, но полететь не может", new Puzzle("Часто висит головой вниз, к небу стремится всегда, но полететь не может", "Капля", "Это падает с неба во время дождя"));
-        puzzles.put("Имеет корни, но не растет. Не видит, но слышит", new Puzzle("Имеет корни, но не растет. Не видит, но слышит", "Дерево", "Это большое растение в парке"));
-        puzzles.put("Без рук, без ног, а всегда идут", new Puzzle("Без рук, без ног, а всегда идут", "Часы", "Показывает время"));
-        puzzles.put("Без окон, дверей и крыши, но внутри есть золото", new Puzzle("Без окон, дверей и крыши, но внутри есть золото", "Арахис", "Это еда и часто используется для приготовления масла"));
-        puzzles.put("Чем больше берешь, тем меньше остается", new Puzzle("Чем больше берешь, тем меньше остается", "Время", "Это уходит, когда вы его не замечаете"));
-        puzzles.put("Что можно увидеть с закрытыми глазами?", new Puzzle("Что можно увидеть с закрытыми глазами?", "Сон", "Это происходит, когда вы спите"));
-        puzzles.put("Белый, пушистый, летает без крыльев", new Puzzle("Белый, пушистый, летает без крыльев", "Снег", "Это падает с неба зимой и покрывает землю"));
-        puzzles.put("Имеет ключ, но не открывает замок", new Puzzle("Имеет ключ, но не открывает замок", "Карта", " Это помогает вам найти путь"));
-        puzzles.put("Может быть легким как перышко, но сам не поднимется в воздух", new Puzzle("Может быть легким как перышко, но сам не поднимется в воздух", "Ветер", "Это движется вокруг нас, но невидимо"));
-        puzzles.put("Имеет ушко, но не слышит", new Puzzle("Имеет ушко, но не слышит", "Игла", "Используется для шитья"));
-        puzzles.put("Бежит и не может уйти вперед", new Puzzle("Бежит и не может уйти вперед", "Река", "Это течет от гор к океанам"));
-        puzzles.put("Висит в воздухе и греет нас своим светом", new Puzzle("Висит в воздухе и греет нас своим светом", "Солнце", "Это небесное тело светит днем"));
-        puzzles.put("Имеет зубы, но не кусает", new Puzzle("Имеет зубы, но не кусает", "Гребешок", "Это находится у морских животных"));
-        puzzles.put("Может быть горячим или холодным, но никогда не теплым", new Puzzle("Может быть горячим или холодным, но никогда не теплым", "Огонь", "Это используется для приготовления пищи и обогрева"));
-        puzzles.put("Стоит на кончике ног, но не упадет", new Puzzle("Стоит на кончике ног, но не упадет", "Тень", "Это образуется, когда что-то загораживает свет"));
-        puzzles.put("Серое, большое, и все внутри", new Puzzle("Серое, большое, и все внутри", "Облако", "Это плавает в небе и приносит дождь"));
-        puzzles.put("Маленький как бутылка, светится внутри, но не является источником света", new Puzzle("Маленький как бутылка, светится внутри, но не является источником света", "Лампочка", "Это используется для освещения комнаты"));
-        puzzles.put("Может стоять в одной точке, но всегда стремится вверх", new Puzzle("Может стоять в одной точке, но всегда стремится вверх", "Дым", "Это образуется, когда что-то горит"));
-        puzzles.put("Что можно сломать, даже если ни разу не касался?", new Puzzle("Что можно сломать, даже если ни разу не касался?", "Обещание", "Это слово, которое вы должны держать"));
-        puzzles.put("Быстрый как стрела, он летит без перьев", new Puzzle("Быстрый как стрела, он летит без перьев", "Свет", "Это движется со скоростью 299 792 458 метров в секунду"));
-
-        currentPuzzle = null;
-        // Начало новой игры и возврат сообщения пользователю
+        // Сброс прогресса чата: все загадки снова доступны
+        progress(chatId).reset();
         return "Игра в загадки начата заново.\n" + startPuzzle(chatId);
     }
 
 
     /**
-     * Метод возвращает ответ на текущую загадку, записывает её как нерешённую и переходит к следующей загадке.
+     * Метод возвращает ответ на текущую загадку и переходит к следующей загадке.
      *
      * @param chatId Идентификатор чата, для которого возвращается ответ на загадку.
      * @return Ответ на текущую загадку и следующая загадка.
      */
     public String getAnswerAndNextPuzzle(long chatId) {
-        // Проверка наличия текущей загадки
-        if (currentPuzzle == null) {
+        Puzzle puzzle = getCurrentPuzzle(chatId);
+        if (puzzle == null) {
             return "Нет текущей загадки.";
         }
-        // Формирование строки с ответом на текущую загадку
-        String answer = "Ответ на загадку '" + currentPuzzle.getQuestion() + "' : " + currentPuzzle.getAnswer();
-
-        // Удаление текущей загадки и сброс попыток пользователя
-        puzzles.remove(currentPuzzle.getQuestion());
-        userAttempts.put(chatId, 0);
-        // Проверка, остались ли еще доступные загадки для решения
-        if (puzzles.isEmpty()) {
-            return answer + "\nПоздравляю, вы решили все загадки! Пожалуйста, нажмите /stoppuzzle, чтобы завершить игру и посмотреть статистику, либо /restart, чтобы начать заново";
-        } else {
-            // Выбор следующей случайной загадки и формирование сообщения пользователю
-            currentPuzzle = puzzles.get(getRandomPuzzle());
-            return answer + "\nСледующая загадка: " + currentPuzzle.getQuestion();
+        String answer = "Ответ на загадку '" + puzzle.getQuestion() + "' : " + puzzle.getAnswer();
+        PuzzleProgress chat = progress(chatId);
+        chat.wrong++;
+        chat.removeCurrent();
+        int next = chat.pickRandom();
+        if (next < 0) {
+            return answer + "\n" + ALL_SOLVED;
         }
+        return answer + "\nСледующая загадка: " + catalog.question(next);
     }
-
 }
-
-
-
-
-
-
@@ -0,0 +1,326 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Накопленная статистика загадок одного чата за все игры.
+ */
+final class ChatPuzzleStats {
+    final AtomicLong attempts = new AtomicLong();
+    final AtomicLong correct = new AtomicLong();
+    final AtomicLong hints = new AtomicLong();
+
+    /** Суммарное время от показа загадки до верного ответа, мс */
+    final AtomicLong solveMillis = new AtomicLong();
+
+    /** Чтение сохраненной строки уже начато: строку читает только один поток */
+    final AtomicBoolean loadStarted = new AtomicBoolean();
+
+    /** Завершается, когда к счетчикам прибавлены значения, сохраненные в базе */
+    final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+    /** Чат выгружен из памяти, изменения нужно вносить в новую запись. Меняется под монитором записи. */
+    boolean evicted;
+
+    /**
+     * Среднее время решения одной загадки, мс
+     */
+    long averageSolveMillis() {
+        long solved = correct.get();
+        return solved == 0 ? 0 : solveMillis.get() / solved;
+    }
+}
+
+
+/**
+ * Статистика загадок по чатам с отложенной записью в базу.
+ * Счетчики живут в памяти, и ответ на загадку меняет их без обращения к диску.
+ * Измененные чаты помечаются и записываются пачкой в одной транзакции через поток писателя:
+ * по таймеру или когда измененных чатов набирается FLUSH_THRESHOLD. Несколько изменений одного чата
+ * между записями сливаются в одну строку, так как в базу пишутся итоговые значения.
+ * Сохраненная строка чата читается в фоне: ответ на загадку не ждет запроса к базе, счетчики начинаются
+ * с нуля, и прочитанные значения прибавляются к ним. Пока строка не прочитана, чат не записывается.
+ */
+class PuzzleStatistics implements AutoCloseable {
+
+    /** Как часто записывать изменения, мс */
+    static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    /** Сколько измененных чатов запускает запись, не дожидаясь таймера */
+    static final int FLUSH_THRESHOLD = 100;
+
+    /** Сколько чатов держать в памяти, прежде чем выгружать уже записанные */
+    static final int MAX_CACHED_CHATS = 10_000;
+
+    private static final String SELECT_STATS = "SELECT attempts, correct, hints, solve_millis FROM puzzle_stats WHERE chat_id = ?";
+    private static final String UPSERT_STATS = "INSERT INTO puzzle_stats (chat_id, attempts, correct, hints, solve_millis) "
+            + "VALUES (?, ?, ?, ?, ?) ON CONFLICT(chat_id) DO UPDATE SET attempts = excluded.attempts, "
+            + "correct = excluded.correct, hints = excluded.hints, solve_millis = excluded.solve_millis";
+
+    private final ConnectionProvider connections;
+    private final SqliteWriter writer;
+    private final Map<Long, ChatPuzzleStats> stats = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Статистика только в памяти, без записи в базу.
+     */
+    PuzzleStatistics() {
+        this(null, null);
+    }
+
+    /**
+     * @param connections соединения для чтения сохраненной статистики
+     * @param writer      поток записи
+     */
+    PuzzleStatistics(ConnectionProvider connections, SqliteWriter writer) {
+        this.connections = connections;
+        this.writer = writer;
+        if (writer == null) {
+            flusher = null;
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "puzzle-stats-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Статистика чата вместе с сохраненными в базе значениями. При первом обращении ждет чтения из базы.
+     */
+    ChatPuzzleStats get(long chatId) {
+        ChatPuzzleStats chat = counters(chatId);
+        awaitLoaded(chatId, chat);
+        return chat;
+    }
+
+    /**
+     * Дожидается чтения сохраненной строки. Если фоновый поток еще не взялся за нее, строка читается сразу.
+     */
+    private void awaitLoaded(long chatId, ChatPuzzleStats chat) {
+        load(chatId, chat);
+        chat.loaded.join();
+    }
+
+    /**
+     * Запись чата в памяти. Новая запись создается с нулевыми счетчиками, а сохраненная строка
+     * читается в потоке записи статистики и прибавляется к ним.
+     */
+    private ChatPuzzleStats counters(long chatId) {
+        ChatPuzzleStats chat = stats.get(chatId);
+        if (chat != null) {
+            return chat;
+        }
+        ChatPuzzleStats created = new ChatPuzzleStats();
+        chat = stats.putIfAbsent(chatId, created);
+        if (chat != null) {
+            return chat;
+        }
+        if (connections == null) {
+            load(chatId, created);
+            return created;
+        }
+        try {
+            flusher.execute(() -> load(chatId, created));
+        } catch (RejectedExecutionException e) {
+            // Статистика уже закрыта, фонового потока нет
+            load(chatId, created);
+        }
+        return created;
+    }
+
+    private void load(long chatId, ChatPuzzleStats chat) {
+        if (!chat.loadStarted.compareAndSet(false, true)) {
+            return;
+        }
+        if (connections == null) {
+            chat.loaded.complete(null);
+            return;
+        }
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(SELECT_STATS);
+            statement.setLong(1, chatId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    chat.attempts.addAndGet(resultSet.getLong(1));
+                    chat.correct.addAndGet(resultSet.getLong(2));
+                    chat.hints.addAndGet(resultSet.getLong(3));
+                    chat.solveMillis.addAndGet(resultSet.getLong(4));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Не удалось загрузить статистику загадок чата " + chatId + ": " + e.getMessage());
+        }
+        chat.loaded.complete(null);
+    }
+
+    /**
+     * Меняет счетчики чата и помечает его для записи. Изменение и пометка идут под монитором записи чата,
+     * поэтому выгрузка чата не может пройти между ними; если чат уже выгружен, берется новая запись.
+     */
+    private void record(long chatId, Consumer<ChatPuzzleStats> change) {
+        while (true) {
+            ChatPuzzleStats chat = counters(chatId);
+            synchronized (chat) {
+                if (!chat.evicted) {
+                    change.accept(chat);
+                    markDirty(chatId);
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Учитывает попытку ответа */
+    void recordAttempt(long chatId) {
+        record(chatId, chat -> chat.attempts.incrementAndGet());
+    }
+
+    /**
+     * Учитывает верный ответ.
+     *
+     * @param solveMillis сколько миллисекунд прошло с показа загадки
+     */
+    void recordCorrect(long chatId, long solveMillis) {
+        record(chatId, chat -> {
+            chat.correct.incrementAndGet();
+            chat.solveMillis.addAndGet(Math.max(0, solveMillis));
+        });
+    }
+
+    /** Учитывает взятую подсказку */
+    void recordHint(long chatId) {
+        record(chatId, chat -> chat.hints.incrementAndGet());
+    }
+
+    private void markDirty(long chatId) {
+        if (writer == null) {
+            return;
+        }
+        dirty.add(chatId);
+        if (dirty.size() >= FLUSH_THRESHOLD && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Число чатов с изменениями, которые еще не записаны
+     */
+    int getPendingChats() {
+        return dirty.size();
+    }
+
+    /**
+     * Число чатов, статистика которых сейчас в памяти
+     */
+    int getCachedChats() {
+        return stats.size();
+    }
+
+    /**
+     * Записывает все накопленные изменения одной транзакцией. Записи идут по одной,
+     * чтобы выгрузка после записи видела пометки, снятые и проверенные этой же записью.
+     */
+    synchronized void flush() throws SQLException {
+        flushScheduled.set(false);
+        if (writer == null || dirty.isEmpty()) {
+            return;
+        }
+        List<Long> chats = new ArrayList<>(dirty);
+        for (Long chatId : chats) {
+            ChatPuzzleStats chat = stats.get(chatId);
+            if (chat != null) {
+                // Без прочитанной строки запись затерла бы сохраненные значения
+                awaitLoaded(chatId, chat);
+            }
+        }
+        // Снимаем пометку до чтения счетчиков: изменение, сделанное во время записи, пометит чат снова
+        dirty.removeAll(chats);
+        try {
+            writer.execute(connection -> {
+                PreparedStatement upsert = connection.prepare(UPSERT_STATS);
+                for (Long chatId : chats) {
+                    ChatPuzzleStats chat = stats.get(chatId);
+                    if (chat == null) {
+                        continue;
+                    }
+                    upsert.setLong(1, chatId);
+                    upsert.setLong(2, chat.attempts.get());
+                    upsert.setLong(3, chat.correct.get());
+                    upsert.setLong(4, chat.hints.get());
+                    upsert.setLong(5, chat.solveMillis.get());
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+                return null;
+            });
+        } catch (SQLException | RuntimeException e) {
+            dirty.addAll(chats);
+            throw e;
+        }
+        if (stats.size() > MAX_CACHED_CHATS) {
+            evictClean();
+        }
+    }
+
+    /**
+     * Выгружает чаты, все изменения которых записаны. Проверка и удаление идут под монитором записи чата,
+     * так что изменение не может попасть в уже выгруженную запись.
+     */
+    private void evictClean() {
+        for (Map.Entry<Long, ChatPuzzleStats> entry : stats.entrySet()) {
+            ChatPuzzleStats chat = entry.getValue();
+            synchronized (chat) {
+                if (chat.loaded.isDone() && !dirty.contains(entry.getKey())) {
+                    chat.evicted = true;
+                    stats.remove(entry.getKey(), chat);
+                }
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("Не удалось записать статистику загадок: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Останавливает таймер и записывает оставшиеся изменения.
+     */
+    @Override
+    public void close() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+}
@@ -0,0 +1,428 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Корпус цитат в текстовом файле формата fortune: цитаты идут подряд в UTF-8
+ * и разделяются строкой из одного символа %.
+ * <p>
+ * Файл отображается в память, а рядом с ним хранится индекс смещений (файл с суффиксом .idx),
+ * который тоже отображается в память. Индекс строится при первом открытии и перестраивается,
+ * если файл цитат изменился. Цитата декодируется только при обращении к ней, поэтому
+ * ни время запуска, ни занятая куча не зависят от числа цитат.
+ * Формат индекса (big-endian):
+ * <pre>
+ * int     MAGIC
+ * int     число цитат
+ * long    размер файла цитат
+ * long    время изменения файла цитат, мс
+ * записи  по RECORD_SIZE байт на цитату: int смещение, int длина в байтах
+ * </pre>
+ */
+final class QuoteCorpus {
+
+    /** "QIX1" */
+    static final int MAGIC = 0x51495831;
+
+    /** Размер заголовка индекса, байт */
+    static final int HEADER_SIZE = 24;
+
+    /** Размер записи индекса, байт */
+    static final int RECORD_SIZE = 8;
+
+    /** Суффикс файла индекса */
+    static final String INDEX_SUFFIX = ".idx";
+
+    /** Встроенный корпус цитат */
+    static final String DEFAULT_RESOURCE = "/quotes.txt";
+
+    private final ByteBuffer text;
+    private final ByteBuffer index;
+    private final int size;
+
+    /**
+     * @param text  текст цитат
+     * @param index индекс смещений в формате выше; буферы не копируются и дальше только читаются
+     */
+    QuoteCorpus(ByteBuffer text, ByteBuffer index) {
+        if (index.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Это не индекс цитат");
+        }
+        this.text = text;
+        this.index = index;
+        this.size = index.getInt(4);
+    }
+
+    /**
+     * Корпус из текста в памяти, без файла индекса.
+     */
+    static QuoteCorpus fromText(byte[] utf8) {
+        ByteBuffer text = ByteBuffer.wrap(utf8);
+        return new QuoteCorpus(text, buildIndex(text, 0));
+    }
+
+    /**
+     * Отображает в память файл цитат и его индекс, при необходимости перестраивая индекс.
+     * Если индекс не удается сохранить рядом с файлом, он остается в памяти.
+     */
+    static QuoteCorpus map(Path file) throws IOException {
+        ByteBuffer text;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Файл цитат больше 2 ГБ: " + file);
+            }
+            text = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        Path indexFile = indexPath(file);
+        ByteBuffer index = mapIndex(indexFile, text.capacity(), modified);
+        if (index == null) {
+            index = buildIndex(text, modified);
+            try {
+                // Старый индекс может быть отображен в память корпусом, который еще читают,
+                // поэтому новый пишется во временный файл и заменяет старый переименованием
+                Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+                Files.write(temporary, index.array());
+                Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Не удалось сохранить индекс цитат " + indexFile + ": " + e.getMessage());
+            }
+        }
+        return new QuoteCorpus(text, index);
+    }
+
+    static Path indexPath(Path file) {
+        return file.resolveSibling(file.getFileName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Отображает сохраненный индекс, если он построен для этой версии файла цитат.
+     *
+     * @return индекс или null, если его нет или он устарел
+     */
+    private static ByteBuffer mapIndex(Path indexFile, long textSize, long modified) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            boolean valid = index.getInt(0) == MAGIC
+                    && index.getLong(8) == textSize
+                    && index.getLong(16) == modified
+                    && channel.size() == HEADER_SIZE + (long) index.getInt(4) * RECORD_SIZE;
+            return valid ? index : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Строит индекс одним проходом по тексту. Пустые цитаты и переводы строк по краям цитаты пропускаются.
+     */
+    static ByteBuffer buildIndex(ByteBuffer text, long modified) {
+        int[] records = new int[64];
+        int count = 0;
+        int limit = text.capacity();
+        int quoteStart = 0;
+        int lineStart = 0;
+        while (lineStart <= limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && text.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd > lineStart && text.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            boolean separator = contentEnd - lineStart == 1 && text.get(lineStart) == '%';
+            if (separator || lineEnd == limit) {
+                int start = quoteStart;
+                int end = separator ? lineStart : limit;
+                while (start < end && isLineBreak(text.get(start))) {
+                    start++;
+                }
+                while (end > start && isLineBreak(text.get(end - 1))) {
+                    end--;
+                }
+                if (end > start) {
+                    if (count * 2 == records.length) {
+                        records = Arrays.copyOf(records, records.length * 2);
+                    }
+                    records[count * 2] = start;
+                    records[count * 2 + 1] = end - start;
+                    count++;
+                }
+                quoteStart = lineEnd + 1;
+            }
+            lineStart = lineEnd + 1;
+        }
+        ByteBuffer index = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE);
+        index.putInt(MAGIC).putInt(count).putLong(limit).putLong(modified);
+        for (int i = 0; i < count * 2; i++) {
+            index.putInt(records[i]);
+        }
+        return index;
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * Загружает встроенный корпус цитат.
+     */
+    static QuoteCorpus defaultCorpus() {
+        try (InputStream in = QuoteCorpus.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Не найден ресурс " + DEFAULT_RESOURCE);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return fromText(out.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось загрузить цитаты", e);
+        }
+    }
+
+    /**
+     * Число цитат
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Цитата по номеру от 0 до size() - 1
+     */
+    String quote(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        int record = HEADER_SIZE + i * RECORD_SIZE;
+        byte[] bytes = new byte[index.getInt(record + 4)];
+        text.get(index.getInt(record), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+
+
+/**
+ * Случайный порядок чисел от 0 до size - 1 без хранения перестановки: i -> (a * i + b) mod size
+ * со случайными a, взаимно простым с size, и b. Порядку нужны только три числа, а не перемешанный массив.
+ */
+final class AffineOrder {
+    private final int size;
+    private final long multiplier;
+    private final long offset;
+    private int step;
+
+    AffineOrder(int size) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long a = 1;
+        if (size > 2) {
+            do {
+                a = 1 + random.nextInt(size - 1);
+            } while (gcd(a, size) != 1);
+        }
+        this.size = size;
+        this.multiplier = a;
+        this.offset = size > 0 ? random.nextInt(size) : 0;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * true, если перестановка еще не пройдена до конца
+     */
+    boolean hasNext() {
+        return step < size;
+    }
+
+    /**
+     * Следующее число перестановки
+     */
+    int next() {
+        return (int) ((multiplier * step++ + offset) % size);
+    }
+}
+
+
+/**
+ * Выдача случайных цитат из корпуса.
+ * Случайная цитата выбирается через ThreadLocalRandom, поэтому потоки не соревнуются за общий Random.
+ * Для чата можно выдавать цитаты без повторов: порядок задается перестановкой AffineOrder,
+ * так что чату нужны только три числа, а не перемешанная копия списка.
+ * Когда цитаты закончились, выбирается новая перестановка.
+ * Корпус из файла можно перечитать без перезапуска: reload() или автоматически при изменении файла.
+ */
+class QuoteService implements QuoteStorage, AutoCloseable {
+
+    /** Системное свойство с путем к файлу цитат */
+    static final String QUOTES_PROPERTY = "quotes.file";
+
+    /** Как часто проверять, не изменился ли файл цитат, мс */
+    static final long RELOAD_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private static final String NO_QUOTES = "Цитат пока нет.";
+
+    /**
+     * Положение чата в его перестановке цитат.
+     */
+    private static final class Cursor {
+        QuoteCorpus corpus;
+        AffineOrder order;
+
+        int next(QuoteCorpus current) {
+            if (corpus != current || !order.hasNext()) {
+                corpus = current;
+                order = new AffineOrder(current.size());
+            }
+            return order.next();
+        }
+    }
+
+    private final Path file;
+    private volatile QuoteCorpus corpus;
+    private volatile long loadedModified;
+    private final Map<Long, Cursor> cursors = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService watcher;
+
+    /**
+     * Цитаты из неизменяемого корпуса.
+     */
+    QuoteService(QuoteCorpus corpus) {
+        this.file = null;
+        this.corpus = corpus;
+        this.watcher = null;
+    }
+
+    /**
+     * Цитаты из файла, который перечитывается при изменении.
+     */
+    QuoteService(Path file) throws IOException {
+        this.file = file;
+        reload();
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "quotes-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(this::reloadIfModified, RELOAD_CHECK_INTERVAL, RELOAD_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Цитаты из файла, заданного системным свойством quotes.file, а если оно не задано - встроенные.
+     */
+    static QuoteService load() {
+        String file = System.getProperty(QUOTES_PROPERTY);
+        if (file == null) {
+            return new QuoteService(QuoteCorpus.defaultCorpus());
+        }
+        try {
+            return new QuoteService(Paths.get(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось загрузить цитаты из " + file, e);
+        }
+    }
+
+    /**
+     * Число цитат в текущем корпусе
+     */
+    int size() {
+        return corpus.size();
+    }
+
+    @Override
+    public String getRandQuote() {
+        QuoteCorpus current = corpus;
+        if (current.size() == 0) {
+            return NO_QUOTES;
+        }
+        return current.quote(ThreadLocalRandom.current().nextInt(current.size()));
+    }
+
+    @Override
+    public String getRandQuote(long chatId) {
+        QuoteCorpus current = corpus;
+        if (current.size() == 0) {
+            return NO_QUOTES;
+        }
+        Cursor cursor = cursors.computeIfAbsent(chatId, id -> new Cursor());
+        int i;
+        // Сообщения одного чата почти не идут параллельно, поэтому блокировка не соревнуется
+        synchronized (cursor) {
+            i = cursor.next(current);
+        }
+        return current.quote(i);
+    }
+
+    /**
+     * Удаляет перестановку чата. Вызывается при удалении сессии чата, иначе перестановки
+     * копились бы для всех чатов, когда-либо просивших цитату.
+     */
+    @Override
+    public void forgetChat(long chatId) {
+        cursors.remove(chatId);
+    }
+
+    /**
+     * Перечитывает файл цитат. Чаты начинают новый круг без повторов по новому корпусу.
+     * Файл отображается в память без копирования, поэтому менять его нужно атомарно: записать новый файл
+     * рядом и переименовать поверх старого. Отображение старой версии остается на прежний файл,
+     * а запись или усечение файла на месте могут испортить цитаты или уронить поток при чтении.
+     *
+     * @return число цитат после перезагрузки
+     */
+    int reload() throws IOException {
+        if (file == null) {
+            return corpus.size();
+        }
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        corpus = QuoteCorpus.map(file);
+        loadedModified = modified;
+        return corpus.size();
+    }
+
+    /**
+     * Перечитывает файл цитат, если он изменился после последней загрузки.
+     */
+    void reloadIfModified() {
+        try {
+            if (file != null && Files.getLastModifiedTime(file).toMillis() != loadedModified) {
+                reload();
+            }
+        } catch (Exception e) {
+            System.err.println("Не удалось перечитать цитаты: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Рейтинг игр всех пользователей по средней оценке.
+ * Хранит для каждого названия сумму и количество оценок и поддерживает отсортированный порядок,
+ * поэтому страница рейтинга строится без пересчета по всей таблице.
+ * Порядок хранится в декартовом дереве, где каждый узел знает размер своего поддерева:
+ * место находится спуском от корня, поэтому изменение оценки стоит O(log N), а страница -
+ * O(log N + limit) без копирования рейтинга.
+ */
+class RatingLeaderboard {
+
+    /**
+     * Накопленные оценки одной игры. Объект неизменяемый: при новой оценке он заменяется.
+     */
+    static final class Entry {
+        final String title;
+        final long sum;
+        final long count;
+
+        Entry(String title, long sum, long count) {
+            this.title = title;
+            this.sum = sum;
+            this.count = count;
+        }
+
+        /**
+         * Средняя оценка, округленная до одного знака после запятой, например "4.5".
+         */
+        String formattedAverage() {
+            long tenths = Math.round(sum * 10.0 / count);
+            return (tenths / 10) + "." + (tenths % 10);
+        }
+    }
+
+    /**
+     * Узел дерева рейтинга: по ключу (ORDER) - дерево поиска, по приоритету - куча.
+     * Случайные приоритеты держат глубину дерева около O(log N).
+     */
+    private static final class Node {
+        final Entry entry;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Порядок рейтинга: средняя оценка по убыванию, затем число оценок, затем название.
+     * Средние сравниваются перекрестным умножением, без деления.
+     */
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int byAverage = Long.compare(b.sum * a.count, a.sum * b.count);
+        if (byAverage != 0) {
+            return byAverage;
+        }
+        int byCount = Long.compare(b.count, a.count);
+        return byCount != 0 ? byCount : a.title.compareTo(b.title);
+    };
+
+    private final Map<String, Entry> byTitle = new HashMap<>();
+    private Node root;
+
+    /**
+     * Изменяет накопленные оценки игры. Игра без оценок убирается из рейтинга.
+     *
+     * @param title      название игры
+     * @param sumDelta   на сколько изменилась сумма оценок
+     * @param countDelta на сколько изменилось число оценок
+     */
+    synchronized void apply(String title, long sumDelta, long countDelta) {
+        if (title == null || (sumDelta == 0 && countDelta == 0)) {
+            return;
+        }
+        Entry old = byTitle.remove(title);
+        long sum = sumDelta;
+        long count = countDelta;
+        if (old != null) {
+            root = remove(root, old);
+            sum += old.sum;
+            count += old.count;
+        }
+        if (count > 0) {
+            Entry entry = new Entry(title, sum, count);
+            byTitle.put(title, entry);
+            root = insert(root, new Node(entry));
+        }
+    }
+
+    /**
+     * Применяет набор изменений, накопленных в одной транзакции.
+     */
+    synchronized void applyAll(List<Entry> deltas) {
+        for (Entry delta : deltas) {
+            apply(delta.title, delta.sum, delta.count);
+        }
+    }
+
+    /**
+     * Возвращает страницу рейтинга в виде строк "место. название: оценка⭐".
+     * Стоимость O(log N + limit): обходятся только поддеревья, в которые попадают места страницы.
+     *
+     * @param offset сколько первых мест пропустить
+     * @param limit  сколько мест вернуть
+     * @return строки рейтинга
+     */
+    synchronized List<String> page(int offset, int limit) {
+        int from = Math.min(Math.max(0, offset), size(root));
+        int to = (int) Math.min(size(root), (long) from + Math.max(0, limit));
+        List<String> games = new ArrayList<>(to - from);
+        collect(root, 0, from, to, games);
+        return games;
+    }
+
+    /**
+     * Добавляет в games места с from по to - 1 из поддерева node по порядку.
+     *
+     * @param before число мест перед поддеревом
+     */
+    private static void collect(Node node, int before, int from, int to, List<String> games) {
+        if (node == null) {
+            return;
+        }
+        int place = before + size(node.left);
+        if (from < place) {
+            collect(node.left, before, from, to, games);
+        }
+        if (place >= from && place < to) {
+            games.add((place + 1) + ". " + node.entry.title + ": " + node.entry.formattedAverage() + "⭐");
+        }
+        if (to > place + 1) {
+            collect(node.right, place + 1, from, to, games);
+        }
+    }
+
+    /**
+     * Число игр в рейтинге
+     */
+    synchronized int size() {
+        return size(root);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void resize(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (ORDER.compare(added.entry, node.entry) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                return rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                return rotateLeft(node);
+            }
+        }
+        resize(node);
+        return node;
+    }
+
+    private static Node remove(Node node, Entry entry) {
+        if (node == null) {
+            return null;
+        }
+        int compared = ORDER.compare(entry, node.entry);
+        if (compared == 0) {
+            return merge(node.left, node.right);
+        }
+        if (compared < 0) {
+            node.left = remove(node.left, entry);
+        } else {
+            node.right = remove(node.right, entry);
+        }
+        resize(node);
+        return node;
+    }
+
+    /**
+     * Объединяет два дерева, все ключи left меньше ключей right
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            resize(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        resize(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        resize(node);
+        resize(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        resize(node);
+        resize(right);
+        return right;
+    }
+}
@@ -0,0 +1,252 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Версионные миграции схемы базы данных.
+ * Номер последней примененной миграции хранится в PRAGMA user_version,
+ * поэтому при запуске выполняются только новые миграции.
+ */
+class SchemaMigrations {
+
+    /**
+     * Одна миграция схемы.
+     */
+    interface Migration {
+        void apply(Statement statement) throws SQLException;
+    }
+
+    private final List<Migration> migrations = new ArrayList<>();
+
+    /**
+     * Создает список миграций. Порядок добавления задает номер версии, начиная с 1.
+     * Уже выпущенные миграции менять нельзя - только добавлять новые в конец.
+     */
+    SchemaMigrations() {
+        // 1: таблица пройденных игр со стабильным id
+        migrations.add(SchemaMigrations::createCompletedGames);
+        // 2: индексы под запросы, которые всегда фильтруют по chat_id
+        migrations.add(statement -> {
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_completed_games_chat_title "
+                    + "ON completed_games (chat_id, title, author, year)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_completed_games_chat_year "
+                    + "ON completed_games (chat_id, year, title)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_completed_games_chat_author "
+                    + "ON completed_games (chat_id, author, title)");
+        });
+        // 3: накопленные оценки по названиям для рейтинга /getbyrating
+        migrations.add(statement -> {
+            statement.execute("CREATE TABLE IF NOT EXISTS game_ratings ("
+                    + "title TEXT PRIMARY KEY, "
+                    + "rating_sum INTEGER NOT NULL, "
+                    + "rating_count INTEGER NOT NULL)");
+            statement.execute("INSERT INTO game_ratings (title, rating_sum, rating_count) "
+                    + "SELECT title, SUM(rating), COUNT(rating) FROM completed_games "
+                    + "WHERE rating IS NOT NULL AND title IS NOT NULL GROUP BY title");
+        });
+        // 4: статистика загадок по чатам
+        migrations.add(statement -> statement.execute("CREATE TABLE IF NOT EXISTS puzzle_stats ("
+                + "chat_id INTEGER PRIMARY KEY, "
+                + "attempts INTEGER NOT NULL, "
+                + "correct INTEGER NOT NULL, "
+                + "hints INTEGER NOT NULL, "
+                + "solve_millis INTEGER NOT NULL)"));
+        // 5: игры чата в порядке добавления, по которому они нумеруются в /getplayed
+        migrations.add(statement -> statement.execute("CREATE INDEX IF NOT EXISTS idx_completed_games_chat_id "
+                + "ON completed_games (chat_id, id)"));
+        // 6: одна строка на игру в чате. Дубликаты, которые успели появиться, удаляются (остается первая строка),
+        // оценки пересчитываются, а обычный индекс по ключу игры заменяется уникальным
+        migrations.add(statement -> {
+            statement.execute("DELETE FROM completed_games WHERE id NOT IN "
+                    + "(SELECT MIN(id) FROM completed_games GROUP BY chat_id, title, author, year)");
+            statement.execute("DELETE FROM game_ratings");
+            statement.execute("INSERT INTO game_ratings (title, rating_sum, rating_count) "
+                    + "SELECT title, SUM(rating), COUNT(rating) FROM completed_games "
+                    + "WHERE rating IS NOT NULL AND title IS NOT NULL GROUP BY title");
+            statement.execute("DROP INDEX IF EXISTS idx_completed_games_chat_title");
+            statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS ux_completed_games_chat_game "
+                    + "ON completed_games (chat_id, title, author, year)");
+        });
+        // 7: названия и издатели выносятся в словари, строки игр хранят их целочисленные id
+        migrations.add(SchemaMigrations::normalizeNames);
+        // 8: полнотекстовый индекс названий, издателей и годов для /search, его синхронизируют триггеры
+        migrations.add(SchemaMigrations::createGameSearch);
+    }
+
+    /**
+     * Номер версии схемы, которую дают все известные миграции.
+     */
+    int latestVersion() {
+        return migrations.size();
+    }
+
+    /**
+     * Применяет к базе данных все миграции новее ее текущей версии.
+     * Каждая миграция выполняется в своей транзакции вместе с обновлением номера версии.
+     *
+     * @param connection соединение с базой данных
+     * @return версия схемы после миграций
+     */
+    int migrate(Connection connection) throws SQLException {
+        int version = currentVersion(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            while (version < migrations.size()) {
+                try {
+                    migrations.get(version).apply(statement);
+                    version++;
+                    statement.execute("PRAGMA user_version = " + version);
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Ошибка миграции схемы до версии " + (version + 1), e);
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return version;
+    }
+
+    /**
+     * Возвращает текущую версию схемы базы данных.
+     */
+    static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Перестраивает completed_games и game_ratings под словари titles и authors.
+     * id игр и счетчик AUTOINCREMENT сохраняются, чтобы не сломать номера в уже отправленных кнопках листания.
+     * Пустые названия и издатели из старых версий становятся пустыми строками.
+     */
+    private static void normalizeNames(Statement statement) throws SQLException {
+        statement.execute("CREATE TABLE titles (id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+        statement.execute("CREATE TABLE authors (id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+        statement.execute("INSERT INTO titles (name) SELECT DISTINCT COALESCE(title, '') FROM completed_games");
+        statement.execute("INSERT INTO authors (name) SELECT DISTINCT COALESCE(author, '') FROM completed_games");
+
+        statement.execute("CREATE TABLE completed_games_new ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "chat_id INTEGER NOT NULL, "
+                + "title_id INTEGER NOT NULL REFERENCES titles (id), "
+                + "author_id INTEGER NOT NULL REFERENCES authors (id), "
+                + "year INTEGER, "
+                + "rating INTEGER)");
+        statement.execute("INSERT OR IGNORE INTO completed_games_new (id, chat_id, title_id, author_id, year, rating) "
+                + "SELECT g.id, g.chat_id, t.id, a.id, g.year, g.rating FROM completed_games g "
+                + "JOIN titles t ON t.name = COALESCE(g.title, '') "
+                + "JOIN authors a ON a.name = COALESCE(g.author, '') ORDER BY g.id");
+        statement.execute("INSERT INTO sqlite_sequence (name, seq) SELECT 'completed_games_new', seq FROM sqlite_sequence "
+                + "WHERE name = 'completed_games' AND NOT EXISTS "
+                + "(SELECT 1 FROM sqlite_sequence WHERE name = 'completed_games_new')");
+        statement.execute("UPDATE sqlite_sequence SET seq = MAX(seq, "
+                + "(SELECT seq FROM sqlite_sequence WHERE name = 'completed_games')) WHERE name = 'completed_games_new'");
+        statement.execute("DROP TABLE completed_games");
+        statement.execute("ALTER TABLE completed_games_new RENAME TO completed_games");
+        statement.execute("CREATE UNIQUE INDEX ux_completed_games_chat_game ON completed_games (chat_id, title_id, author_id, year)");
+        statement.execute("CREATE INDEX idx_completed_games_chat_id ON completed_games (chat_id, id, title_id)");
+        statement.execute("CREATE INDEX idx_completed_games_chat_author ON completed_games (chat_id, author_id, title_id)");
+        statement.execute("CREATE INDEX idx_completed_games_chat_year ON completed_games (chat_id, year, title_id)");
+
+        statement.execute("CREATE TABLE game_ratings_new ("
+                + "title_id INTEGER PRIMARY KEY REFERENCES titles (id), "
+                + "rating_sum INTEGER NOT NULL, "
+                + "rating_count INTEGER NOT NULL)");
+        statement.execute("INSERT INTO game_ratings_new (title_id, rating_sum, rating_count) "
+                + "SELECT t.id, r.rating_sum, r.rating_count FROM game_ratings r JOIN titles t ON t.name = r.title");
+        statement.execute("DROP TABLE game_ratings");
+        statement.execute("ALTER TABLE game_ratings_new RENAME TO game_ratings");
+    }
+
+    /**
+     * Токен чата в games_fts. Минус в id групп не входит в слова FTS5, поэтому заменяется буквой.
+     */
+    static String chatToken(long chatId) {
+        return "c" + Long.toString(chatId).replace('-', 'n');
+    }
+
+    /**
+     * Приводит текст к виду, в котором он лежит в games_fts. Регистр складывает сам токенизатор unicode61,
+     * а удаление диакритики в нем работает только для латиницы, поэтому ё заменяется на е здесь.
+     */
+    static String foldSearchText(String text) {
+        return text.replace('ё', 'е').replace('Ё', 'Е');
+    }
+
+    /**
+     * Создает games_fts и триггеры, которые повторяют в нем вставки, изменения и удаления completed_games.
+     * rowid строки индекса равен id игры. Столбец chat содержит токен чата, так что поиск
+     * пересекает списки совпадений с играми одного чата внутри индекса, а не фильтрует их после.
+     * Вес совпадения в названии выше, чем в издателе, а в издателе выше, чем в годе.
+     */
+    private static void createGameSearch(Statement statement) throws SQLException {
+        statement.execute("CREATE VIRTUAL TABLE games_fts USING fts5(chat, title, author, year, "
+                + "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')");
+        statement.execute("INSERT INTO games_fts (games_fts, rank) VALUES ('rank', 'bm25(0.0, 10.0, 5.0, 1.0)')");
+        String insert = "INSERT INTO games_fts (rowid, chat, title, author, year) ";
+        statement.execute(insert + searchRow("g") + " FROM completed_games g JOIN titles t ON t.id = g.title_id "
+                + "JOIN authors a ON a.id = g.author_id");
+        String insertNew = insert + searchRow("new") + " FROM titles t, authors a "
+                + "WHERE t.id = new.title_id AND a.id = new.author_id; ";
+        statement.execute("CREATE TRIGGER games_fts_insert AFTER INSERT ON completed_games BEGIN " + insertNew + "END");
+        statement.execute("CREATE TRIGGER games_fts_delete AFTER DELETE ON completed_games BEGIN "
+                + "DELETE FROM games_fts WHERE rowid = old.id; END");
+        statement.execute("CREATE TRIGGER games_fts_update AFTER UPDATE OF title_id, author_id, year ON completed_games BEGIN "
+                + "DELETE FROM games_fts WHERE rowid = old.id; " + insertNew + "END");
+    }
+
+    /**
+     * Столбцы строки games_fts для игры game: то же, что chatToken и foldSearchText, но на SQL.
+     * Названия и издатели берутся из словарей t и a.
+     */
+    private static String searchRow(String game) {
+        return "SELECT " + game + ".id, 'c' || replace(" + game + ".chat_id, '-', 'n'), "
+                + "replace(replace(t.name, 'ё', 'е'), 'Ё', 'Е'), replace(replace(a.name, 'ё', 'е'), 'Ё', 'Е'), "
+                + game + ".year";
+    }
+
+    /**
+     * Создает таблицу completed_games. Таблицу из старых версий бота, где не было столбца id,
+     * пересоздает с сохранением данных: id берется из rowid.
+     */
+    private static void createCompletedGames(Statement statement) throws SQLException {
+        String create = "CREATE TABLE IF NOT EXISTS completed_games ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "title TEXT, "
+                + "author TEXT, "
+                + "year INTEGER, "
+                + "chat_id INTEGER NOT NULL, "
+                + "rating INTEGER)";
+
+        boolean exists = false;
+        boolean hasId = false;
+        try (ResultSet columns = statement.executeQuery("PRAGMA table_info(completed_games)")) {
+            while (columns.next()) {
+                exists = true;
+                if ("id".equalsIgnoreCase(columns.getString("name"))) {
+                    hasId = true;
+                }
+            }
+        }
+
+        if (!exists) {
+            statement.execute(create);
+        } else if (!hasId) {
+            statement.execute("ALTER TABLE completed_games RENAME TO completed_games_old");
+            statement.execute(create);
+            statement.execute("INSERT INTO completed_games (id, title, author, year, chat_id, rating) "
+                    + "SELECT rowid, title, author, year, chat_id, rating FROM completed_games_old");
+            statement.execute("DROP TABLE completed_games_old");
+        }
+    }
+}
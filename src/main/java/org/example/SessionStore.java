@@ -0,0 +1,192 @@
+package org.example;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Шаг диалога: какие данные бот ожидает от пользователя следующими.
+ */
+enum DialogState {
+    /** Ожидается команда */
+    IDLE,
+    /** Режим головоломки */
+    PUZZLE,
+    /** /addgame: название, издатель, год и оценка новой игры */
+    AWAITING_TITLE,
+    AWAITING_AUTHOR,
+    AWAITING_YEAR,
+    AWAITING_RATING,
+    /** /getbyauthor: имя издателя */
+    AWAITING_AUTHOR_FOR_SEARCH,
+    /** /getbyyear: год */
+    AWAITING_YEAR_FOR_SEARCH,
+    /** /search: текст запроса */
+    AWAITING_SEARCH_QUERY,
+    /** /removegame: номер игры */
+    AWAITING_REMOVAL_NUMBER,
+    /** /editgame: номер игры, затем новые название, издатель и год */
+    AWAITING_EDIT_NUMBER,
+    AWAITING_EDIT_TITLE,
+    AWAITING_EDIT_AUTHOR,
+    AWAITING_EDIT_YEAR
+}
+
+
+/**
+ * Состояние диалога с одним чатом: текущий шаг диалога
+ * и что пользователь уже ввел в многошаговых командах.
+ * Поля читаются и меняются только под блокировкой самой сессии.
+ */
+class ChatSession {
+    DialogState state = DialogState.IDLE;
+    String lastAddedGameTitle;
+    String lastAddedGameAuthor;
+    int lastAddedGameYear;
+    /** id изменяемой игры в /editgame */
+    long editedGameId;
+    long lastAddedGameChatId;
+    boolean awaitngStart;
+    boolean awaitingcancel;
+
+    /** Кнопки листания для последнего ответа или null */
+    PageNavigation navigation;
+
+    /** Кнопки подсказок имен для последнего ответа или null */
+    NameSuggestions suggestions;
+
+    /**
+     * Время последнего обращения к сессии, мс
+     */
+    volatile long lastAccess = System.currentTimeMillis();
+}
+
+
+/**
+ * Кнопки листания страниц под ответом бота.
+ *
+ * @param previous данные кнопки предыдущей страницы или null, если это первая страница
+ * @param next     данные кнопки следующей страницы или null, если это последняя страница
+ */
+record PageNavigation(String previous, String next) {
+}
+
+
+/**
+ * Кнопки с подсказками известных имен под ответом бота.
+ * Нажатие кнопки передает имя обработчику select, если чат все еще на шаге state.
+ *
+ * @param names  имена на кнопках
+ * @param state  шаг диалога, на котором подсказки действуют
+ * @param select обработчик выбранного имени
+ */
+record NameSuggestions(List<String> names, DialogState state, CommandHandler select) {
+}
+
+
+/**
+ * Хранилище сессий чатов.
+ * Сессии лежат в конкурентной карте, поэтому сообщения разных чатов обрабатываются без общей блокировки.
+ * Сессии, к которым долго не обращались, удаляются, а число сессий ограничено сверху.
+ * Другие части бота, которые хранят что-то по чату, подписываются на удаление сессий через onRemove
+ * и удаляют свое состояние вместе с сессией.
+ */
+class SessionStore {
+
+    /** Максимальное число сессий по умолчанию */
+    static final int DEFAULT_MAX_SESSIONS = 10_000;
+
+    /** Время жизни неактивной сессии по умолчанию, мс */
+    static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(1);
+
+    private final Map<Long, ChatSession> sessions = new ConcurrentHashMap<>();
+    private final List<LongConsumer> removeListeners = new CopyOnWriteArrayList<>();
+    private final int maxSessions;
+    private final long ttl;
+
+    SessionStore() {
+        this(DEFAULT_MAX_SESSIONS, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSessions максимальное число хранимых сессий
+     * @param ttl         через сколько миллисекунд без сообщений сессия удаляется
+     */
+    SessionStore(int maxSessions, long ttl) {
+        this.maxSessions = maxSessions;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Подписывает на удаление сессий: listener получает идентификатор чата, сессия которого удалена.
+     *
+     * @param listener обработчик удаления
+     * @return это хранилище, чтобы подписки можно было записать цепочкой
+     */
+    SessionStore onRemove(LongConsumer listener) {
+        removeListeners.add(listener);
+        return this;
+    }
+
+    private void remove(long chatId, ChatSession session) {
+        if (sessions.remove(chatId, session)) {
+            for (LongConsumer listener : removeListeners) {
+                listener.accept(chatId);
+            }
+        }
+    }
+
+    /**
+     * Возвращает сессию чата, создавая новую при первом обращении или после удаления старой.
+     *
+     * @param chatId идентификатор чата
+     * @return сессия чата
+     */
+    ChatSession get(long chatId) {
+        long now = System.currentTimeMillis();
+        ChatSession session = sessions.get(chatId);
+        if (session != null && now - session.lastAccess > ttl) {
+            remove(chatId, session);
+            session = null;
+        }
+        if (session == null) {
+            session = sessions.computeIfAbsent(chatId, id -> new ChatSession());
+            if (sessions.size() > maxSessions) {
+                evict(now);
+            }
+        }
+        session.lastAccess = now;
+        return session;
+    }
+
+    /**
+     * Число хранимых сессий
+     */
+    int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Удаляет устаревшие сессии, а если их все равно больше лимита -
+     * сессии с самым давним обращением, пока не останется 90% лимита.
+     */
+    synchronized void evict(long now) {
+        for (Map.Entry<Long, ChatSession> entry : sessions.entrySet()) {
+            if (now - entry.getValue().lastAccess > ttl) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+        int excess = sessions.size() - maxSessions * 9 / 10;
+        if (excess <= 0) {
+            return;
+        }
+        sessions.entrySet().stream()
+                .sorted((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess))
+                .limit(excess)
+                .toList()
+                .forEach(entry -> remove(entry.getKey(), entry.getValue()));
+    }
+}
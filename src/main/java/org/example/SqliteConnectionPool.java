@@ -0,0 +1,339 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Интерфейс поставщика соединений с базой данных.
+ * Позволяет подменять способ получения соединений в Storage.
+ */
+interface ConnectionProvider extends AutoCloseable {
+    /**
+     * Выдает соединение для выполнения запросов.
+     * После использования соединение нужно вернуть вызовом {@link PooledConnection#close()}.
+     *
+     * @return соединение с базой данных
+     * @throws SQLException если соединение не удалось открыть или дождаться
+     */
+    PooledConnection acquire() throws SQLException;
+
+    /**
+     * Возвращает соединение поставщику.
+     *
+     * @param connection соединение, полученное через acquire()
+     */
+    void release(PooledConnection connection);
+
+    /**
+     * Закрывает все соединения поставщика.
+     */
+    @Override
+    void close();
+}
+
+
+/**
+ * Соединение, выданное поставщиком.
+ * Хранит кэш подготовленных запросов, чтобы не компилировать один и тот же SQL при каждом вызове.
+ */
+class PooledConnection implements AutoCloseable {
+    private final Connection connection;
+    private final ConnectionProvider owner;
+    private final Map<String, PreparedStatement> statements;
+    private long lastUsed;
+    private boolean released;
+
+    /**
+     * @param connection         физическое соединение с базой данных
+     * @param owner              поставщик, которому соединение возвращается при закрытии
+     * @param statementCacheSize сколько подготовленных запросов хранить для этого соединения
+     */
+    PooledConnection(Connection connection, ConnectionProvider owner, int statementCacheSize) {
+        this.connection = connection;
+        this.owner = owner;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Возвращает подготовленный запрос из кэша соединения или создает новый.
+     * Запрос нельзя закрывать: он остается в кэше до закрытия соединения.
+     *
+     * @param sql текст запроса
+     * @return подготовленный запрос
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Физическое соединение, например для управления транзакцией.
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Отмечает, что соединение снова выдано, и его можно вернуть поставщику еще раз.
+     */
+    void markAcquired() {
+        released = false;
+    }
+
+    boolean isBroken() {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Закрывает кэшированные запросы и само соединение.
+     */
+    void closePhysically() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Возвращает соединение поставщику. Повторный вызов ничего не делает, иначе соединение попало бы
+     * в пул дважды и пул выдал бы лишнее разрешение.
+     */
+    @Override
+    public void close() {
+        if (released) {
+            return;
+        }
+        released = true;
+        owner.release(this);
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+}
+
+
+/**
+ * Ограниченный пул долгоживущих соединений с SQLite.
+ * Соединения переиспользуются между вызовами, простаивающие дольше заданного времени закрываются.
+ */
+class SqliteConnectionPool implements ConnectionProvider {
+
+    /** Размер пула по умолчанию */
+    static final int DEFAULT_POOL_SIZE = 4;
+
+    /** Время простоя соединения до закрытия по умолчанию, мс */
+    static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    /** Сколько подготовленных запросов хранится на одно соединение */
+    static final int STATEMENT_CACHE_SIZE = 32;
+
+    /** Сколько ждать свободного соединения, мс */
+    private static final long ACQUIRE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final String url;
+    private final long idleTimeout;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Создает пул с размером и временем простоя по умолчанию.
+     *
+     * @param url адрес базы данных, например jdbc:sqlite:completed_games.db
+     */
+    SqliteConnectionPool(String url) {
+        this(url, DEFAULT_POOL_SIZE, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param url         адрес базы данных
+     * @param maxSize     максимальное число одновременно выданных соединений
+     * @param idleTimeout время простоя, после которого соединение закрывается, мс
+     */
+    SqliteConnectionPool(String url, int maxSize, long idleTimeout) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Размер пула должен быть положительным: " + maxSize);
+        }
+        this.url = url;
+        this.idleTimeout = idleTimeout;
+        this.permits = new Semaphore(maxSize, true);
+        this.idle = new LinkedBlockingDeque<>();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sqlite-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeout / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public PooledConnection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Пул соединений закрыт");
+        }
+        try {
+            if (!permits.tryAcquire()) {
+                waits.incrementAndGet();
+                if (!permits.tryAcquire(ACQUIRE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    throw new SQLException("Не удалось дождаться свободного соединения");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения прервано", e);
+        }
+
+        try {
+            PooledConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (!connection.isBroken()) {
+                    hits.incrementAndGet();
+                    connection.touch();
+                    connection.markAcquired();
+                    return connection;
+                }
+                connection.closePhysically();
+            }
+            misses.incrementAndGet();
+            return new PooledConnection(openConnection(), this, STATEMENT_CACHE_SIZE);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void release(PooledConnection connection) {
+        try {
+            if (closed || connection.isBroken()) {
+                connection.closePhysically();
+            } else {
+                connection.touch();
+                idle.offerFirst(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Открывает новое физическое соединение.
+     * Наследники могут переопределить метод, чтобы настроить соединение сразу после открытия.
+     */
+    protected Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    /**
+     * Закрывает соединения, которые простаивают дольше idleTimeout.
+     * Самые старые соединения находятся в конце очереди.
+     */
+    void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleTimeout;
+        Iterator<PooledConnection> iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+            PooledConnection connection = iterator.next();
+            if (connection.getLastUsed() > deadline) {
+                break;
+            }
+            if (idle.removeLastOccurrence(connection)) {
+                connection.closePhysically();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.closePhysically();
+        }
+    }
+
+    /** Сколько раз соединение было взято из пула без открытия нового */
+    long getHits() {
+        return hits.get();
+    }
+
+    /** Сколько раз пришлось открыть новое соединение */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /** Сколько раз вызывающему пришлось ждать освобождения соединения */
+    long getWaits() {
+        return waits.get();
+    }
+
+    /** Сколько простаивающих соединений было закрыто */
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Возвращает сводку по работе пула для логов.
+     */
+    String getStatistics() {
+        return "Пул соединений: попаданий " + hits.get() + ", промахов " + misses.get()
+                + ", ожиданий " + waits.get() + ", вытеснено " + evictions.get()
+                + ", простаивает " + idle.size();
+    }
+}
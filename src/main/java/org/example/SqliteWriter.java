@@ -0,0 +1,391 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул соединений SQLite в режиме WAL.
+ * Каждое новое соединение настраивается прагмами, чтобы читатели не блокировались писателем.
+ */
+class WalConnectionPool extends SqliteConnectionPool {
+
+    /** Сколько ждать снятия блокировки базы данных, мс */
+    static final int BUSY_TIMEOUT = 5000;
+
+    /**
+     * @param url     адрес базы данных
+     * @param maxSize максимальное число одновременно выданных соединений
+     */
+    WalConnectionPool(String url, int maxSize) {
+        super(url, maxSize, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    @Override
+    protected Connection openConnection() throws SQLException {
+        Connection connection = super.openConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            // В режиме WAL NORMAL не теряет согласованность базы и не делает fsync на каждую транзакцию
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+}
+
+
+/**
+ * Единственный поток записи в базу данных с групповой фиксацией.
+ * Все изменяющие запросы выполняются по очереди в отдельном потоке, поэтому писатели не соревнуются
+ * за блокировку базы данных. Запросы, пришедшие почти одновременно, собираются в одну транзакцию
+ * до maxBatch штук, а при одновременной записи писатель еще до maxDelay ждет попутных запросов.
+ * Диск синхронизируется один раз на всю пачку, а не на каждый запрос.
+ * Каждый запрос выполняется в своей точке сохранения: ошибка откатывает только его,
+ * остальные запросы пачки фиксируются. Вызывающий получает результат только после фиксации всей пачки.
+ */
+class SqliteWriter implements AutoCloseable {
+
+    /**
+     * Действие, выполняемое на соединении писателя.
+     *
+     * @param <T> тип результата
+     */
+    interface WriteTask<T> {
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    /**
+     * Надежность фиксации, значение PRAGMA synchronous соединения писателя.
+     * OFF не ждет диска и может потерять последние транзакции при сбое питания,
+     * NORMAL в режиме WAL синхронизирует диск только при контрольной точке,
+     * FULL синхронизирует диск при каждой фиксации.
+     */
+    enum Durability {
+        OFF, NORMAL, FULL
+    }
+
+    /** Системное свойство с надежностью фиксации, например -Dsqlite.synchronous=FULL */
+    static final String DURABILITY_PROPERTY = "sqlite.synchronous";
+
+    /** Сколько запросов собирать в одну транзакцию */
+    static final int DEFAULT_MAX_BATCH = 64;
+
+    /**
+     * Сколько ждать попутных запросов после первого запроса пачки, мкс. По умолчанию не ждем:
+     * запросы, пришедшие во время фиксации предыдущей пачки, и так попадают в следующую,
+     * а ожидание имеет смысл, только когда синхронизация диска заметно дольше самих запросов.
+     */
+    static final long DEFAULT_MAX_DELAY = 0;
+
+    /**
+     * Запрос в очереди писателя вместе с ожидающим его результата
+     */
+    private static final class Operation<T> {
+        final WriteTask<T> task;
+        /** Запрос сам управляет транзакцией и выполняется вне пачки */
+        final boolean exclusive;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        T value;
+
+        Operation(WriteTask<T> task, boolean exclusive) {
+            this.task = task;
+            this.exclusive = exclusive;
+        }
+
+        void run(PooledConnection connection) throws SQLException {
+            value = task.run(connection);
+        }
+
+        void complete() {
+            result.complete(value);
+        }
+    }
+
+    /** Метка конца очереди, после нее поток записи завершается */
+    private static final Operation<Void> STOP = new Operation<>(connection -> null, true);
+
+    private final ConnectionProvider connections;
+    private final Durability durability;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Operation<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /** Запрос, не вошедший в предыдущую пачку */
+    private Operation<?> carried;
+
+    /** Размер предыдущей пачки, признак одновременной записи */
+    private int lastBatchSize;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Писатель с размером пачки и ожиданием по умолчанию и надежностью из свойства sqlite.synchronous.
+     * Если свойство не задано, остается настройка соединений.
+     *
+     * @param connections поставщик соединений для записи
+     */
+    SqliteWriter(ConnectionProvider connections) {
+        this(connections, durabilityFromProperty(), DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param connections поставщик соединений для записи
+     * @param durability  надежность фиксации или null, чтобы оставить настройку соединений
+     * @param maxBatch    сколько запросов собирать в одну транзакцию
+     * @param maxDelay    сколько ждать попутных запросов, мкс; 0 - брать только уже ждущие в очереди
+     */
+    SqliteWriter(ConnectionProvider connections, Durability durability, int maxBatch, long maxDelay) {
+        this.connections = connections;
+        this.durability = durability;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelay);
+        this.thread = new Thread(this::runLoop, "sqlite-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static Durability durabilityFromProperty() {
+        String value = System.getProperty(DURABILITY_PROPERTY);
+        return value == null ? null : Durability.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Выполняет действие в потоке записи и дожидается фиксации его пачки.
+     * При ошибке откатываются только изменения этого действия.
+     * Внутри действия нельзя снова вызывать execute - поток записи будет ждать сам себя.
+     *
+     * @param task действие с базой данных
+     * @return результат действия
+     * @throws SQLException если действие или фиксация завершились ошибкой
+     */
+    <T> T execute(WriteTask<T> task) throws SQLException {
+        return await(enqueue(task, false));
+    }
+
+    /**
+     * Выполняет действие, которое само управляет транзакциями, например миграции схемы.
+     * Действие получает соединение в режиме автофиксации и выполняется отдельно от пачек.
+     *
+     * @param task действие с базой данных
+     * @return результат действия
+     * @throws SQLException если действие завершилось ошибкой
+     */
+    <T> T executeExclusive(WriteTask<T> task) throws SQLException {
+        return await(enqueue(task, true));
+    }
+
+    /**
+     * Ставит действие в очередь записи, не дожидаясь его выполнения.
+     *
+     * @param task действие с базой данных
+     * @return результат, который завершится после фиксации пачки с этим действием
+     */
+    <T> CompletableFuture<T> submit(WriteTask<T> task) {
+        return enqueue(task, false);
+    }
+
+    private <T> CompletableFuture<T> enqueue(WriteTask<T> task, boolean exclusive) {
+        Operation<T> operation = new Operation<>(task, exclusive);
+        if (!closed) {
+            queue.add(operation);
+            // close() мог пройти между проверкой и постановкой: если поток записи уже забрал метку остановки
+            // и остаток очереди, запрос никто не выполнит. Запрос, который еще лежит в очереди, снимается
+            // и завершается ошибкой; если его уже нет в очереди, его выполнил или отклонил поток записи.
+            if (!closed || !queue.remove(operation)) {
+                return operation.result;
+            }
+        }
+        operation.result.completeExceptionally(new SQLException("Поток записи остановлен"));
+        return operation.result;
+    }
+
+    private <T> T await(CompletableFuture<T> result) throws SQLException {
+        if (Thread.currentThread() == thread) {
+            throw new SQLException("Запись нельзя ждать из потока записи");
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание записи прервано", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    private void runLoop() {
+        List<Operation<?>> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+            Operation<?> first = batch.get(0);
+            if (first == STOP) {
+                break;
+            }
+            if (first.exclusive) {
+                runExclusive(first);
+            } else {
+                runBatch(batch);
+                lastBatchSize = batch.size();
+            }
+            batch.clear();
+        }
+        // Запросы, успевшие попасть в очередь во время остановки
+        List<Operation<?>> rest = new ArrayList<>(batch);
+        queue.drainTo(rest);
+        for (Operation<?> operation : rest) {
+            operation.result.completeExceptionally(new SQLException("Поток записи остановлен"));
+        }
+    }
+
+    /**
+     * Собирает следующую пачку: обычные запросы до maxBatch штук или до истечения maxDelay
+     * с первого из них, если пишут несколько потоков.
+     * Монопольный запрос или метка остановки образуют пачку из одного элемента.
+     */
+    private void collect(List<Operation<?>> batch) throws InterruptedException {
+        Operation<?> next = carried != null ? carried : queue.take();
+        carried = null;
+        batch.add(next);
+        if (next.exclusive) {
+            return;
+        }
+        // Ждем попутных запросов, только если пишут несколько потоков: одиночная запись не должна ждать зря
+        long deadline = System.nanoTime() + (lastBatchSize > 1 || !queue.isEmpty() ? maxDelayNanos : 0);
+        while (batch.size() < maxBatch) {
+            next = queue.poll();
+            if (next == null) {
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0 || (next = queue.poll(wait, TimeUnit.NANOSECONDS)) == null) {
+                    return;
+                }
+            }
+            if (next.exclusive) {
+                carried = next;
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void runExclusive(Operation<?> operation) {
+        try (PooledConnection connection = connections.acquire()) {
+            operation.run(connection);
+            operation.complete();
+        } catch (SQLException | RuntimeException e) {
+            operation.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Выполняет пачку в одной транзакции, каждый запрос в своей точке сохранения,
+     * и завершает ожидающих после фиксации.
+     */
+    private void runBatch(List<Operation<?>> batch) {
+        List<Operation<?>> done = new ArrayList<>(batch.size());
+        try (PooledConnection connection = connections.acquire()) {
+            Connection raw = connection.getConnection();
+            if (durability != null) {
+                // Надежность нельзя менять внутри транзакции
+                try (Statement statement = raw.createStatement()) {
+                    statement.execute("PRAGMA synchronous=" + durability.name());
+                }
+            }
+            raw.setAutoCommit(false);
+            try {
+                for (Operation<?> operation : batch) {
+                    Savepoint savepoint = raw.setSavepoint();
+                    try {
+                        operation.run(connection);
+                        raw.releaseSavepoint(savepoint);
+                        done.add(operation);
+                    } catch (SQLException | RuntimeException e) {
+                        raw.rollback(savepoint);
+                        raw.releaseSavepoint(savepoint);
+                        failures.incrementAndGet();
+                        operation.result.completeExceptionally(e);
+                    }
+                }
+                raw.commit();
+            } catch (SQLException | RuntimeException e) {
+                raw.rollback();
+                throw e;
+            } finally {
+                raw.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Фиксация не удалась: ошибка достается всем, кто еще ждет
+            for (Operation<?> operation : batch) {
+                operation.result.completeExceptionally(e);
+            }
+            return;
+        }
+        batches.incrementAndGet();
+        operations.addAndGet(done.size());
+        for (Operation<?> operation : done) {
+            operation.complete();
+        }
+    }
+
+    /** Сколько транзакций зафиксировано */
+    long getBatches() {
+        return batches.get();
+    }
+
+    /** Сколько запросов выполнено в зафиксированных транзакциях */
+    long getOperations() {
+        return operations.get();
+    }
+
+    /**
+     * Возвращает сводку по работе писателя для логов.
+     */
+    String getStatistics() {
+        long committed = batches.get();
+        return "Писатель: транзакций " + committed + ", запросов " + operations.get()
+                + ", в среднем " + (committed == 0 ? 0 : operations.get() / committed) + " на транзакцию"
+                + ", откатов " + failures.get() + ", в очереди " + queue.size();
+    }
+
+    /**
+     * Выполняет уже поставленные запросы, останавливает поток записи и закрывает его соединения.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            queue.add(STOP);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        connections.close();
+    }
+}
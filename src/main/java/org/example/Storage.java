@@ -1,7 +1,17 @@
 package org.example;
-import java.sql.*;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Интерфейс для работы с книгами.
@@ -17,7 +27,7 @@ interface GameStorage {
     List<String> getPlayedGames(long chatId);
 
     /**
-     * Добавляет книгу в список пройденных игр.
+     * Добавляет книгу в список пройденных игр. Игра, которая уже есть в списке, не добавляется повторно.
      *
      * @param title  название игры
      * @param author автор игры
@@ -26,6 +36,19 @@ interface GameStorage {
      */
     void addPlayedGame(String title, String author, int year, int rating, long chatId);
 
+    /**
+     * Добавляет игру одной записью, если в списке чата еще нет игры с таким названием, издателем и годом.
+     * Проверку выполняет уникальный индекс базы, поэтому одновременные добавления не создают дубликатов.
+     *
+     * @param title  название игры
+     * @param author издатель игры
+     * @param year   год выхода
+     * @param rating оценка пользователя
+     * @param chatId уникальный идентификатор чата пользователя
+     * @return true, если игра добавлена, false, если она уже была в списке
+     */
+    boolean insertIfAbsent(String title, String author, int year, int rating, long chatId);
+
     /**
      * Удаляет все пройденные игры для указанного чата.
      *
@@ -51,6 +74,36 @@ interface GameStorage {
      */
     List<String> getGamesByYear(int year, long chatId);
 
+    /**
+     * Ищет игры чата по началу слов названия, издателя или года без учета регистра.
+     *
+     * @param chatId уникальный идентификатор чата пользователя
+     * @param query  слова запроса; каждое должно встретиться в игре хотя бы началом
+     * @param limit  сколько игр вернуть
+     * @return самые подходящие игры, совпадения в названии важнее совпадений в издателе и годе
+     */
+    List<PlayedGame> searchGames(long chatId, String query, int limit);
+
+    /**
+     * Ищет игры чата по началу слов издателя без учета регистра, например когда издатель введен неточно.
+     *
+     * @param author слова из имени издателя
+     * @param chatId уникальный идентификатор чата пользователя
+     * @param limit  сколько игр вернуть
+     * @return самые подходящие игры
+     */
+    List<PlayedGame> searchGamesByAuthor(String author, long chatId, int limit);
+
+    /**
+     * Получает издателей из списка чата, имя которых начинается с prefix без учета регистра и различия е/ё.
+     *
+     * @param prefix начало имени издателя
+     * @param chatId уникальный идентификатор чата пользователя
+     * @param limit  сколько имен вернуть
+     * @return имена по алфавиту, как в подсказках
+     */
+    List<String> getAuthorsByPrefix(String prefix, long chatId, int limit);
+
     /**
      * Получает пронумерованный список всех игр с средним рейтингом.
      *
@@ -59,6 +112,15 @@ interface GameStorage {
      */
     List<String> getGamesByAverageRating(long chatId);
 
+    /**
+     * Получает страницу рейтинга игр всех пользователей по средней оценке.
+     *
+     * @param offset сколько первых мест пропустить
+     * @param limit  сколько мест вернуть
+     * @return пронумерованный список игр со средним рейтингом
+     */
+    List<String> getTopRatedGames(int offset, int limit);
+
 
     /**
      * Изменяет существующую книгу новой книгой в списке пройденных игр.
@@ -84,6 +146,93 @@ interface GameStorage {
      * @return true, если книга существует в списке пройденных игр, в противном случае - false
      */
     boolean gameExists(String title, String author, int year, long chatId);
+
+    /**
+     * Находит id игры по ее номеру в списке пройденных игр.
+     *
+     * @param chatId уникальный идентификатор чата пользователя
+     * @param number номер игры в списке, начиная с 1
+     * @return id игры или 0, если игры с таким номером нет
+     */
+    long findGameId(long chatId, int number);
+
+    /**
+     * Удаляет игру по id.
+     *
+     * @param chatId уникальный идентификатор чата пользователя
+     * @param id     id игры
+     * @return название удаленной игры или null, если в чате нет игры с таким id
+     */
+    String removeById(long chatId, long id);
+
+    /**
+     * Изменяет игру по id.
+     *
+     * @param chatId уникальный идентификатор чата пользователя
+     * @param id     id игры
+     * @param title  новое название игры
+     * @param author новый автор игры
+     * @param year   новый год
+     * @return итог изменения: прежнее название игры или отказ, если игры нет или новая игра уже есть в списке
+     */
+    GameUpdate updateById(long chatId, long id, String title, String author, int year);
+
+    /**
+     * Получает пройденные игры чата со всеми полями в порядке добавления.
+     *
+     * @param chatId уникальный идентификатор чата пользователя
+     * @return список игр
+     */
+    List<PlayedGame> getGames(long chatId);
+
+    /**
+     * Читает пройденные игры чата в порядке добавления, не собирая их в список.
+     * Поток держит соединение с базой данных, поэтому его нужно закрыть, например в try-with-resources.
+     *
+     * @param chatId    уникальный идентификатор чата пользователя
+     * @param fetchSize сколько строк читать из базы за одно обращение
+     * @return поток игр
+     */
+    Stream<PlayedGame> streamGames(long chatId, int fetchSize);
+
+    /**
+     * Получает страницу пройденных игр, следующих за указанной игрой в порядке добавления.
+     *
+     * @param chatId  уникальный идентификатор чата пользователя
+     * @param afterId id последней игры предыдущей страницы, 0 - с начала списка
+     * @param limit   сколько игр вернуть
+     * @return игры по возрастанию id
+     */
+    List<PlayedGame> getGamesPage(long chatId, long afterId, int limit);
+
+    /**
+     * Получает страницу пройденных игр, предшествующих указанной игре в порядке добавления.
+     *
+     * @param chatId   уникальный идентификатор чата пользователя
+     * @param beforeId id первой игры следующей страницы
+     * @param limit    сколько игр вернуть
+     * @return игры по возрастанию id
+     */
+    List<PlayedGame> getGamesPageBefore(long chatId, long beforeId, int limit);
+}
+
+/**
+ * Итог изменения игры по id.
+ *
+ * @param previousTitle прежнее название игры или null, если в чате нет игры с таким id
+ * @param duplicate     true, если в чате уже есть игра с новыми названием, издателем и годом и игра не изменена
+ */
+record GameUpdate(String previousTitle, boolean duplicate) {
+
+    /** В чате нет игры с таким id */
+    static final GameUpdate NOT_FOUND = new GameUpdate(null, false);
+
+    /**
+     * Игра изменена
+     */
+    boolean applied() {
+        return previousTitle != null && !duplicate;
+    }
 }
 
 /**
@@ -97,32 +246,343 @@ interface QuoteStorage {
      * @return случайная цитата в формате строки
      */
     String getRandQuote();
+
+    /**
+     * Получает случайную цитату, которую чат еще не видел, пока не пройдены все цитаты.
+     *
+     * @param chatId уникальный идентификатор чата пользователя
+     * @return случайная цитата в формате строки
+     */
+    String getRandQuote(long chatId);
+
+    /**
+     * Забывает, какие цитаты чат уже видел, например когда его сессия удалена.
+     *
+     * @param chatId уникальный идентификатор чата пользователя
+     */
+    void forgetChat(long chatId);
 }
 
 // Реализация интерфейсов в классе Storage
 class Storage implements GameStorage, QuoteStorage {
-    final private List<String> quoteList;
 
     /**
-     * Хранилище для цитат
+     * Адрес базы данных с пройденными играми
+     */
+    static final String DATABASE_URL = "jdbc:sqlite:completed_games.db";
+
+    // Строки completed_games ссылаются на словари titles и authors, названия и издатели подставляются соединением
+    private static final String GAME_NAMES = "FROM completed_games g JOIN titles t ON t.id = g.title_id "
+            + "JOIN authors a ON a.id = g.author_id ";
+    private static final String GAME_COLUMNS = "SELECT g.id, t.name AS title, a.name AS author, g.year, g.rating ";
+
+    // Запросы, которые выполняются на каждое сообщение. Все они должны идти по индексам (см. StorageTest)
+    static final String SELECT_TITLES_BY_CHAT = "SELECT t.name AS title FROM completed_games g JOIN titles t ON t.id = g.title_id "
+            + "WHERE g.chat_id = ? ORDER BY g.id";
+    static final String SELECT_TITLES_BY_AUTHOR = "SELECT t.name AS title " + GAME_NAMES + "WHERE a.name = ? AND g.chat_id = ?";
+    static final String SELECT_AUTHORS_BY_CHAT = "SELECT name FROM authors WHERE id IN "
+            + "(SELECT author_id FROM completed_games WHERE chat_id = ?)";
+    static final String SELECT_TITLES_BY_YEAR = "SELECT t.name AS title FROM completed_games g JOIN titles t ON t.id = g.title_id "
+            + "WHERE g.year = ? AND g.chat_id = ?";
+    static final String SELECT_GAME_EXISTS = "SELECT 1 " + GAME_NAMES
+            + "WHERE t.name = ? AND a.name = ? AND g.year = ? AND g.chat_id = ? LIMIT 1";
+    static final String SELECT_GAMES_BY_CHAT = GAME_COLUMNS + GAME_NAMES + "WHERE g.chat_id = ? ORDER BY g.id";
+    static final String SELECT_GAME_ID_BY_NUMBER = "SELECT id FROM completed_games WHERE chat_id = ? ORDER BY id LIMIT 1 OFFSET ?";
+    static final String SELECT_GAMES_PAGE = GAME_COLUMNS + GAME_NAMES
+            + "WHERE g.chat_id = ? AND g.id > ? ORDER BY g.id LIMIT ?";
+    static final String SELECT_GAMES_PAGE_BEFORE = GAME_COLUMNS + GAME_NAMES
+            + "WHERE g.chat_id = ? AND g.id < ? ORDER BY g.id DESC LIMIT ?";
+    static final String SELECT_GAME_BY_ID = "SELECT g.id, g.title_id, t.name AS title, g.rating "
+            + "FROM completed_games g JOIN titles t ON t.id = g.title_id WHERE g.id = ? AND g.chat_id = ?";
+    static final String SELECT_GAME_BY_KEY = "SELECT g.id, g.title_id, t.name AS title, g.rating " + GAME_NAMES
+            + "WHERE g.chat_id = ? AND t.name = ? AND a.name = ? AND g.year = ?";
+
+    // Записи игр. Дубликаты отсекает уникальный индекс (chat_id, title_id, author_id, year), а не отдельная проверка
+    static final String INSERT_GAME_IF_ABSENT = "INSERT INTO completed_games (chat_id, title_id, author_id, year, rating) "
+            + "VALUES (?, ?, ?, ?, ?) ON CONFLICT (chat_id, title_id, author_id, year) DO NOTHING";
+    static final String UPDATE_GAME_BY_ID = "UPDATE OR IGNORE completed_games SET title_id = ?, author_id = ?, year = ? WHERE id = ?";
+
+    // Запросы для поддержки накопленных оценок в таблице game_ratings
+    private static final String UPSERT_RATING = "INSERT INTO game_ratings (title_id, rating_sum, rating_count) VALUES (?, ?, ?) "
+            + "ON CONFLICT(title_id) DO UPDATE SET rating_sum = rating_sum + excluded.rating_sum, rating_count = rating_count + excluded.rating_count";
+    private static final String DELETE_EMPTY_RATING = "DELETE FROM game_ratings WHERE title_id = ? AND rating_count <= 0";
+    private static final String SELECT_RATINGS_BY_CHAT = "SELECT g.title_id, t.name, SUM(g.rating), COUNT(g.rating) "
+            + "FROM completed_games g JOIN titles t ON t.id = g.title_id "
+            + "WHERE g.chat_id = ? AND g.rating IS NOT NULL GROUP BY g.title_id";
+
+    // Полнотекстовый поиск: games_fts выбирает и ранжирует не больше limit строк, остальное берется по первичным ключам
+    static final String SEARCH_GAMES = "SELECT g.id, t.name AS title, a.name AS author, g.year, g.rating "
+            + "FROM (SELECT rowid, rank FROM games_fts WHERE games_fts MATCH ? ORDER BY rank LIMIT ?) f "
+            + "JOIN completed_games g ON g.id = f.rowid JOIN titles t ON t.id = g.title_id "
+            + "JOIN authors a ON a.id = g.author_id ORDER BY f.rank";
+
+    /**
+     * Сколько слов запроса учитывать при поиске
+     */
+    static final int MAX_SEARCH_TERMS = 8;
+
+    // Все ключи игр для заполнения фильтра gameExists при запуске
+    private static final String SELECT_GAME_KEYS = "SELECT g.chat_id, t.name, a.name, g.year " + GAME_NAMES;
+
+    /**
+     * Сколько строк по умолчанию читать из базы за одно обращение при потоковом чтении
+     */
+    static final int DEFAULT_FETCH_SIZE = 256;
+
+    /**
+     * Цитаты для команды /get
+     */
+    private final QuoteService quotes = QuoteService.load();
+
+    /**
+     * Поставщик соединений для чтения
+     */
+    private final ConnectionProvider connections;
+
+    /**
+     * Поток, через который выполняются все изменения базы данных
+     */
+    private final SqliteWriter writer;
+
+    /**
+     * Рейтинг игр по средней оценке, зеркало таблицы game_ratings в памяти
+     */
+    private final RatingLeaderboard leaderboard = new RatingLeaderboard();
+
+    /**
+     * Словари названий и издателей с кэшем id на пути записи
+     */
+    private final NameDictionary titles = new NameDictionary("titles");
+    private final NameDictionary authors = new NameDictionary("authors");
+
+    /**
+     * Фильтр Блума по ключам игр: gameExists не обращается к базе, если игры точно нет
+     */
+    private final GameFilter gameFilter = GameFilter.fromProperties();
+
+    /**
+     * Все известные названия и издатели для подсказок при вводе
+     */
+    private final NameTrie titleNames = new NameTrie();
+    private final NameTrie authorNames = new NameTrie();
+
+    /**
+     * Имена, впервые записанные в словари в одной транзакции.
+     * Как и изменения рейтинга, попадают в память только после фиксации.
+     */
+    private final class LearnedNames {
+        final Map<String, Long> titleIds = new HashMap<>();
+        final Map<String, Long> authorIds = new HashMap<>();
+
+        long title(PooledConnection connection, String title) throws SQLException {
+            return titles.intern(connection, title, titleIds);
+        }
+
+        long author(PooledConnection connection, String author) throws SQLException {
+            return authors.intern(connection, author, authorIds);
+        }
+
+        void apply() {
+            titles.learn(titleIds);
+            authors.learn(authorIds);
+            titleIds.keySet().forEach(titleNames::add);
+            authorIds.keySet().forEach(authorNames::add);
+        }
+    }
+
+    /**
+     * Статистика загадок, создается при первом обращении
+     */
+    private PuzzleStatistics puzzleStatistics;
+
+    /**
+     * Кэш списков игр, создается при первом обращении
+     */
+    private CachingGameStorage gameCache;
+
+    /**
+     * Хранилище для цитат и пройденных игр с пулом соединений по умолчанию
      */
     public Storage()
     {
-        quoteList = new ArrayList<>();
-        quoteList.add("Цитата: Начинать всегда стоит с того, что сеет сомнения. \n\nБорис Стругацкий.");
-        quoteList.add("Цитата: 80% успеха - это появиться в нужном месте в нужное время.\n\nВуди Аллен");
-        quoteList.add("Цитата: Мы должны признать очевидное: понимают лишь те,кто хочет понять.\n\nБернар Вербер");
+        this(new SqliteConnectionPool(DATABASE_URL));
+    }
+
+    /**
+     * Хранилище, которое и читает, и пишет через указанного поставщика соединений
+     *
+     * @param connections поставщик соединений с базой данных
+     */
+    public Storage(ConnectionProvider connections)
+    {
+        this(connections, new SqliteWriter(connections));
+    }
+
+    /**
+     * Хранилище с отдельными соединениями для чтения и потоком записи
+     *
+     * @param connections поставщик соединений для чтения
+     * @param writer      поток записи
+     */
+    public Storage(ConnectionProvider connections, SqliteWriter writer)
+    {
+        this.connections = connections;
+        this.writer = writer;
+        migrateSchema();
+        loadLeaderboard();
+        warmGameFilter();
+        loadNames(titleNames, "titles");
+        loadNames(authorNames, "authors");
+    }
+
+    /**
+     * Создает хранилище в режиме WAL: записи идут через одно соединение писателя,
+     * а чтения выполняются параллельно на отдельных соединениях и не ждут запись.
+     *
+     * @param url     адрес базы данных
+     * @param readers число соединений для чтения
+     * @return хранилище в режиме WAL
+     */
+    public static Storage withWal(String url, int readers)
+    {
+        return new Storage(new WalConnectionPool(url, readers), new SqliteWriter(new WalConnectionPool(url, 1)));
+    }
+
+    /**
+     * Создает таблицы и индексы или доводит существующую базу до последней версии схемы
+     */
+    private void migrateSchema()
+    {
+        try {
+            writer.executeExclusive(connection -> new SchemaMigrations().migrate(connection.getConnection()));
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось подготовить схему базы данных", e);
+        }
+    }
+
+    /**
+     * Загружает накопленные оценки игр в рейтинг в памяти
+     */
+    private void loadLeaderboard()
+    {
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT t.name AS title, r.rating_sum, r.rating_count "
+                    + "FROM game_ratings r JOIN titles t ON t.id = r.title_id");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    leaderboard.apply(resultSet.getString("title"), resultSet.getLong("rating_sum"), resultSet.getLong("rating_count"));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось загрузить рейтинг игр", e);
+        }
+    }
+
+    /**
+     * Заполняет фильтр gameExists ключами всех игр из базы. Таблица читается потоком,
+     * поэтому в памяти не держится ничего, кроме битов фильтра.
+     * Игры, добавленные во время заполнения, попадают в фильтр на пути записи.
+     */
+    private void warmGameFilter()
+    {
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(SELECT_GAME_KEYS);
+            statement.setFetchSize(DEFAULT_FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    gameFilter.add(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3), resultSet.getInt(4));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось заполнить фильтр игр", e);
+        }
+        gameFilter.markReady();
     }
 
     /**
-     * Метод для получения произвольной цитаты из quoteList
+     * Заполняет дерево подсказок именами из словаря
+     *
+     * @param table таблица словаря, titles или authors
+     */
+    private void loadNames(NameTrie names, String table)
+    {
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT name FROM " + table + " ORDER BY id");
+            statement.setFetchSize(DEFAULT_FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    names.add(resultSet.getString(1));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось загрузить словарь " + table, e);
+        }
+    }
+
+    /**
+     * Изменяет накопленные оценки игры в таблице game_ratings в текущей транзакции
+     * и запоминает изменение, чтобы после фиксации применить его к рейтингу в памяти.
+     */
+    private static void changeRating(PooledConnection connection, List<RatingLeaderboard.Entry> deltas,
+                                     long titleId, String title, long sumDelta, long countDelta) throws SQLException {
+        if (title == null || countDelta == 0) {
+            return;
+        }
+        PreparedStatement upsert = connection.prepare(UPSERT_RATING);
+        upsert.setLong(1, titleId);
+        upsert.setLong(2, sumDelta);
+        upsert.setLong(3, countDelta);
+        upsert.executeUpdate();
+        if (countDelta < 0) {
+            PreparedStatement delete = connection.prepare(DELETE_EMPTY_RATING);
+            delete.setLong(1, titleId);
+            delete.executeUpdate();
+        }
+        deltas.add(new RatingLeaderboard.Entry(title, sumDelta, countDelta));
+    }
+
+    /**
+     * Вычитает из накопленных оценок все оценки, которые вернул запрос вида
+     * SELECT title_id, name, SUM(rating), COUNT(rating) ... GROUP BY title_id. Вызывается перед удалением строк.
+     */
+    private static void subtractRatings(PooledConnection connection, List<RatingLeaderboard.Entry> deltas,
+                                        PreparedStatement ratings) throws SQLException {
+        List<Long> titleIds = new ArrayList<>();
+        List<RatingLeaderboard.Entry> removed = new ArrayList<>();
+        try (ResultSet resultSet = ratings.executeQuery()) {
+            while (resultSet.next()) {
+                titleIds.add(resultSet.getLong(1));
+                removed.add(new RatingLeaderboard.Entry(resultSet.getString(2), resultSet.getLong(3), resultSet.getLong(4)));
+            }
+        }
+        for (int i = 0; i < removed.size(); i++) {
+            RatingLeaderboard.Entry entry = removed.get(i);
+            changeRating(connection, deltas, titleIds.get(i), entry.title, -entry.sum, -entry.count);
+        }
+    }
+
+    /**
+     * Метод для получения произвольной цитаты
      */
     public String getRandQuote()
     {
-        //получаем случайное значение в интервале от 0 до самого большого индекса
-        int randValue = (int)(Math.random() * quoteList.size());
-        //Из коллекции получаем цитату со случайным индексом и возвращаем ее
-        return quoteList.get(randValue);
+        return quotes.getRandQuote();
+    }
+
+    /**
+     * Метод для получения произвольной цитаты без повторов в пределах чата
+     */
+    public String getRandQuote(long chatId)
+    {
+        return quotes.getRandQuote(chatId);
+    }
+
+    /**
+     * Метод для удаления положения чата в цитатах
+     */
+    public void forgetChat(long chatId)
+    {
+        quotes.forgetChat(chatId);
     }
 
     /**
@@ -130,32 +590,18 @@ class Storage implements GameStorage, QuoteStorage {
      */
     public List<String> getPlayedGames(long chatId) {
         List<String> games = new ArrayList<>();
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
-            String sql = "SELECT title FROM completed_games WHERE chat_id = ?";
-            statement = connection.prepareStatement(sql);
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(SELECT_TITLES_BY_CHAT);
             statement.setLong(1, chatId);
-            resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                games.add(resultSet.getString("title"));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    games.add(resultSet.getString("title"));
+                }
             }
         } catch (Exception e) {
             // Логирование ошибки
             e.printStackTrace();
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.exit(0);
-        } finally {
-            try {
-                if (resultSet != null) resultSet.close();
-                if (statement != null) statement.close();
-                if (connection != null) connection.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
         }
         return games;
     }
@@ -164,34 +610,40 @@ class Storage implements GameStorage, QuoteStorage {
      * Метод для добавления игры в список пройденных игр по формату: название /n автор /n год
      */
     public void addPlayedGame(String title, String author, int year, int rating, long chatId) {
-        Connection connection = null;
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
+        insertIfAbsent(title, author, year, rating, chatId);
+    }
 
-            // Создаем запрос на добавление игры в базу данных с указанием названия, автора, года прочтения и рейтинга
-            String sql = "INSERT INTO completed_games (title, author, year, chat_id, rating) VALUES (?, ?, ?, ?, ?)";
-            PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setString(1, title);
-            statement.setString(2, author);
-            statement.setInt(3, year);
-            statement.setLong(4, chatId);
-            statement.setInt(5, rating);
-            statement.executeUpdate();
-            statement.close();
+    /**
+     * Метод для добавления игры, если ее еще нет в списке: одна запись без предварительной проверки
+     */
+    public boolean insertIfAbsent(String title, String author, int year, int rating, long chatId) {
+        // Ключ попадает в фильтр до записи, чтобы фильтр ни в какой момент не отставал от базы
+        gameFilter.add(chatId, title, author, year);
+        try {
+            List<RatingLeaderboard.Entry> deltas = new ArrayList<>();
+            LearnedNames names = new LearnedNames();
+            boolean inserted = writer.execute(connection -> {
+                long titleId = names.title(connection, title);
+                PreparedStatement statement = connection.prepare(INSERT_GAME_IF_ABSENT);
+                statement.setLong(1, chatId);
+                statement.setLong(2, titleId);
+                statement.setLong(3, names.author(connection, author));
+                statement.setInt(4, year);
+                statement.setInt(5, rating);
+                if (statement.executeUpdate() == 0) {
+                    // Игра уже есть в списке, оценки не меняются
+                    return false;
+                }
+                changeRating(connection, deltas, titleId, title, rating, 1);
+                return true;
+            });
+            names.apply();
+            leaderboard.applyAll(deltas);
+            return inserted;
         } catch (Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.exit(0);
-        } finally {
-            try {
-                if (connection != null) {
-                    connection.close();
-                }
-            } catch (SQLException e) {
-                System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.exit(0);
-            }
         }
+        return false;
     }
 
 
@@ -199,36 +651,61 @@ class Storage implements GameStorage, QuoteStorage {
      * Метод для замены игры в списке пройденных игр по формату:  старое_название /n старый_автор /n старый_год новое_название /n новый_автор /n новый_год
      */
     public void editPlayedGame(String oldTitle, String oldAuthor, int oldYear, String newTitle, String newAuthor, int newYear, long chatId) {
-        Connection connection = null;
+        gameFilter.add(chatId, newTitle, newAuthor, newYear);
         try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
-
-            // Создаем запрос на обновление игры в базе данных с новыми данными
-            String sql = "UPDATE completed_games SET title = ?, author = ?, year = ? WHERE title = ? AND author = ? AND year = ? AND chat_id = ?";
-            try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                statement.setString(1, newTitle);
-                statement.setString(2, newAuthor);
-                statement.setInt(3, newYear);
-                statement.setString(4, oldTitle);
-                statement.setString(5, oldAuthor);
-                statement.setInt(6, oldYear);
-                statement.setLong(7, chatId);
-                statement.executeUpdate();
-            }
+            List<RatingLeaderboard.Entry> deltas = new ArrayList<>();
+            LearnedNames names = new LearnedNames();
+            writer.execute(connection -> {
+                PreparedStatement select = connection.prepare(SELECT_GAME_BY_KEY);
+                select.setLong(1, chatId);
+                select.setString(2, oldTitle);
+                select.setString(3, oldAuthor);
+                select.setInt(4, oldYear);
+                return updateGame(connection, deltas, names, select, newTitle, newAuthor, newYear);
+            });
+            names.apply();
+            leaderboard.applyAll(deltas);
         } catch (Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.exit(0);
-        } finally {
-            try {
-                if (connection != null) {
-                    connection.close();
-                }
-            } catch (SQLException e) {
-                System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.exit(0);
+        }
+    }
+
+    /**
+     * Изменяет игру, найденную запросом select (id, title_id, title, rating). Если новая игра уже есть в списке чата,
+     * уникальный индекс не дает ее изменить, и оценки остаются на месте.
+     */
+    private static GameUpdate updateGame(PooledConnection connection, List<RatingLeaderboard.Entry> deltas, LearnedNames names,
+                                         PreparedStatement select, String title, String author, int year) throws SQLException {
+        long id;
+        long previousId;
+        String previous;
+        int rating;
+        boolean rated;
+        try (ResultSet resultSet = select.executeQuery()) {
+            if (!resultSet.next()) {
+                return GameUpdate.NOT_FOUND;
             }
+            id = resultSet.getLong("id");
+            previousId = resultSet.getLong("title_id");
+            previous = resultSet.getString("title");
+            rating = resultSet.getInt("rating");
+            rated = !resultSet.wasNull();
+        }
+        long titleId = names.title(connection, title);
+        PreparedStatement update = connection.prepare(UPDATE_GAME_BY_ID);
+        update.setLong(1, titleId);
+        update.setLong(2, names.author(connection, author));
+        update.setInt(3, year);
+        update.setLong(4, id);
+        if (update.executeUpdate() == 0) {
+            return new GameUpdate(previous, true);
         }
+        // Оценка игры переходит от старого названия к новому
+        if (rated && titleId != previousId) {
+            changeRating(connection, deltas, previousId, previous, -rating, -1);
+            changeRating(connection, deltas, titleId, title, rating, 1);
+        }
+        return new GameUpdate(previous, false);
     }
 
 
@@ -236,32 +713,23 @@ class Storage implements GameStorage, QuoteStorage {
      * Метод для полной очистки списка пройденных игр
      */
     public void clearPlayedGames(long chatId) {
-        Connection connection = null;
         try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
-
-            // Создаем запрос на удаление записей из таблицы completed_games по chat_id
-            String deleteSql = "DELETE FROM completed_games WHERE chat_id = ?";
-            PreparedStatement deleteStatement = connection.prepareStatement(deleteSql);
-            deleteStatement.setLong(1, chatId);
-            deleteStatement.executeUpdate();
+            List<RatingLeaderboard.Entry> deltas = new ArrayList<>();
+            writer.execute(connection -> {
+                // Убираем оценки этого чата из рейтинга
+                PreparedStatement ratings = connection.prepare(SELECT_RATINGS_BY_CHAT);
+                ratings.setLong(1, chatId);
+                subtractRatings(connection, deltas, ratings);
 
-            // Закрываем подготовленный запрос
-            deleteStatement.close();
+                // Создаем запрос на удаление записей из таблицы completed_games по chat_id
+                String deleteSql = "DELETE FROM completed_games WHERE chat_id = ?";
+                PreparedStatement deleteStatement = connection.prepare(deleteSql);
+                deleteStatement.setLong(1, chatId);
+                return deleteStatement.executeUpdate();
+            });
+            leaderboard.applyAll(deltas);
         } catch (Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.exit(0);
-        } finally {
-            // Закрываем соединение с базой данных
-            try {
-                if (connection != null) {
-                    connection.close();
-                }
-            } catch (SQLException e) {
-                System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.exit(0);
-            }
         }
     }
 
@@ -270,32 +738,17 @@ class Storage implements GameStorage, QuoteStorage {
      */
     public List<String> getGamesByAuthor(String author, long chatId) {
         List<String> games = new ArrayList<>();
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
-
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
-            String sql = "SELECT title FROM completed_games WHERE author = ? AND chat_id = ?";
-            statement = connection.prepareStatement(sql);
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(SELECT_TITLES_BY_AUTHOR);
             statement.setString(1, author);
             statement.setLong(2, chatId);
-            resultSet = statement.executeQuery();
-
-            while (resultSet.next()) {
-                games.add(resultSet.getString("title"));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    games.add(resultSet.getString("title"));
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (resultSet != null) resultSet.close();
-                if (statement != null) statement.close();
-                if (connection != null) connection.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
         }
 
         return games;
@@ -306,32 +759,17 @@ class Storage implements GameStorage, QuoteStorage {
      */
     public List<String> getGamesByYear(int year, long chatId) {
         List<String> games = new ArrayList<>();
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
-
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
-            String sql = "SELECT title FROM completed_games WHERE year = ? AND chat_id = ?";
-            statement = connection.prepareStatement(sql);
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(SELECT_TITLES_BY_YEAR);
             statement.setInt(1, year);
             statement.setLong(2, chatId);
-            resultSet = statement.executeQuery();
-
-            while (resultSet.next()) {
-                games.add(resultSet.getString("title"));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    games.add(resultSet.getString("title"));
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (resultSet != null) resultSet.close();
-                if (statement != null) statement.close();
-                if (connection != null) connection.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
         }
         return games;
     }
@@ -345,41 +783,122 @@ class Storage implements GameStorage, QuoteStorage {
      * @return список строк со всеми играми, отсортированными по среднему рейтингу
      */
     public List<String> getGamesByAverageRating(long chatId) {
-        List<String> games = new ArrayList<>();
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
+        return leaderboard.page(0, leaderboard.size());
+    }
 
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
-            String sql = "SELECT title, AVG(rating) AS avg_rating FROM completed_games GROUP BY title ORDER BY avg_rating DESC";
-            statement = connection.prepareStatement(sql);
-            resultSet = statement.executeQuery();
 
-            int rank = 1;
-            while (resultSet.next()) {
-                String title = resultSet.getString("title");
-                double avgRating = resultSet.getDouble("avg_rating");
+    /**
+     * Возвращает страницу рейтинга игр по средней оценке. Рейтинг хранится в памяти
+     * и обновляется при каждой записи, поэтому запрос не обращается к базе данных.
+     *
+     * @param offset сколько первых мест пропустить
+     * @param limit  сколько мест вернуть
+     * @return список строк с играми, отсортированными по среднему рейтингу
+     */
+    public List<String> getTopRatedGames(int offset, int limit) {
+        return leaderboard.page(offset, limit);
+    }
+
+
+    /**
+     * Метод для подсказки издателей всех чатов по началу имени без учета регистра
+     */
+    public List<String> suggestAuthors(String prefix, int limit) {
+        return authorNames.suggest(prefix, limit);
+    }
 
-                // Форматирование строки для отображения среднего рейтинга с одним знаком после запятой
-                String formattedAvgRating = String.format("%.1f", avgRating);
+    /**
+     * Метод для подсказки названий игр всех чатов по началу названия без учета регистра
+     */
+    public List<String> suggestTitles(String prefix, int limit) {
+        return titleNames.suggest(prefix, limit);
+    }
 
-                games.add(rank + ". " + title + ": " + formattedAvgRating + "⭐");
-                rank++;
+    /**
+     * Метод для поиска игр по словам из названия, издателя или года
+     */
+    public List<PlayedGame> searchGames(long chatId, String query, int limit) {
+        return search(searchExpression(chatId, "{title author year}", query), limit);
+    }
+
+    /**
+     * Метод для поиска игр по словам из имени издателя
+     */
+    public List<PlayedGame> searchGamesByAuthor(String author, long chatId, int limit) {
+        return search(searchExpression(chatId, "{author}", author), limit);
+    }
+
+    /**
+     * Метод для подсказки издателей из списка чата: имена издателей чата читаются одним запросом
+     * по индексу (chat_id, author_id) и отбираются по началу имени
+     */
+    public List<String> getAuthorsByPrefix(String prefix, long chatId, int limit) {
+        List<String> authors = new ArrayList<>();
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(SELECT_AUTHORS_BY_CHAT);
+            statement.setLong(1, chatId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    authors.add(resultSet.getString(1));
+                }
             }
         } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (resultSet != null) resultSet.close();
-                if (statement != null) statement.close();
-                if (connection != null) connection.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+        return NameTrie.withPrefix(authors, prefix, limit);
+    }
+
+    /**
+     * Собирает запрос FTS5: токен чата и каждое слово запроса как префикс в указанных столбцах.
+     * Слова берутся только из букв и цифр, поэтому кавычки и операторы FTS5 из текста пользователя не попадают в запрос.
+     *
+     * @param columns столбцы games_fts в синтаксисе FTS5, например {author}
+     * @return выражение для MATCH или null, если в запросе нет ни одного слова
+     */
+    static String searchExpression(long chatId, String columns, String query) {
+        StringBuilder terms = new StringBuilder();
+        int count = 0;
+        int start = -1;
+        String folded = SchemaMigrations.foldSearchText(query) + " ";
+        for (int i = 0; i < folded.length() && count < MAX_SEARCH_TERMS; i++) {
+            boolean wordChar = Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.append(count++ == 0 ? "" : " ").append('"').append(folded, start, i).append("\"*");
+                start = -1;
             }
         }
-        return games;
+        if (count == 0) {
+            return null;
+        }
+        return "chat : \"" + SchemaMigrations.chatToken(chatId) + "\" AND " + columns + " : (" + terms + ")";
+    }
+
+    /**
+     * Выполняет поиск по games_fts одним запросом
+     */
+    private List<PlayedGame> search(String expression, int limit) {
+        List<PlayedGame> found = new ArrayList<>();
+        if (expression == null || limit <= 0) {
+            return found;
+        }
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(SEARCH_GAMES);
+            statement.setString(1, expression);
+            statement.setInt(2, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    int rating = resultSet.getInt("rating");
+                    Integer rated = resultSet.wasNull() ? null : rating;
+                    found.add(new PlayedGame(resultSet.getLong("id"), resultSet.getString("title"),
+                            resultSet.getString("author"), resultSet.getInt("year"), rated));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+        return found;
     }
 
 
@@ -387,145 +906,288 @@ class Storage implements GameStorage, QuoteStorage {
      * Метод для проверки существования игры в списке пройденных игр
      */
     public boolean gameExists(String title, String author, int year, long chatId) {
-        Connection connection = null;
+        if (!gameFilter.mightContain(chatId, title, author, year)) {
+            return false;
+        }
         boolean exists = false;
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
-
+        try (PooledConnection connection = connections.acquire()) {
             // Создаем запрос на поиск игры в базе данных с указанным названием, автором и годом прочтения
-            String sql = "SELECT * FROM completed_games WHERE title = ? AND author = ? AND year = ? AND chat_id = ?";
-            PreparedStatement statement = connection.prepareStatement(sql);
+            PreparedStatement statement = connection.prepare(SELECT_GAME_EXISTS);
             statement.setString(1, title);
             statement.setString(2, author);
             statement.setInt(3, year);
             statement.setLong(4, chatId);
 
-            ResultSet resultSet = statement.executeQuery();
-            // Если запись найдена, устанавливаем флаг exists в true
-            if (resultSet.next()) {
-                exists = true;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                // Если запись найдена, устанавливаем флаг exists в true
+                exists = resultSet.next();
+            }
+            if (!exists && gameFilter.isReady()) {
+                gameFilter.recordFalsePositive();
             }
-
-            resultSet.close();
-            statement.close();
         } catch (Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.exit(0);
-        } finally {
-            try {
-                if (connection != null) {
-                    connection.close();
-                }
-            } catch (SQLException e) {
-                System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.exit(0);
-            }
         }
         return exists;
     }
 
     /**
-     * Метод для обновления списка пройденных игр
+     * Метод для поиска id игры по ее номеру в списке пройденных игр
      */
-    public void updatePlayedGames(long chatId, List<String> playedGames) {
-        Connection connection = null;
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
-
-            // Получаем текущий список игр из базы данных
-            List<String> currentGames = getPlayedGames(chatId);
-
-            // Удаляем игры, которые были удалены из списка
-            for (String game : currentGames) {
-                if (!playedGames.contains(game)) {
-                    // Удаляем книгу из базы данных
-                    String deleteSql = "DELETE FROM completed_games WHERE chat_id = ? AND title = ?";
-                    PreparedStatement deleteStatement = connection.prepareStatement(deleteSql);
-                    deleteStatement.setLong(1, chatId);
-                    deleteStatement.setString(2, game);
-                    deleteStatement.executeUpdate();
-                    deleteStatement.close();
-                }
+    public long findGameId(long chatId, int number) {
+        if (number < 1) {
+            return 0;
+        }
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(SELECT_GAME_ID_BY_NUMBER);
+            statement.setLong(1, chatId);
+            statement.setInt(2, number - 1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
             }
+        } catch (Exception e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+        return 0;
+    }
 
-            // Обновляем игры в базе данных
-            PreparedStatement selectStatement = null;
-            for (String game : playedGames) {
-                // Проверяем, существует ли книга в базе данных
-                String selectSql = "SELECT * FROM completed_games WHERE chat_id = ? AND title = ?";
-                selectStatement = connection.prepareStatement(selectSql);
-                selectStatement.setLong(1, chatId);
-                selectStatement.setString(2, game);
-                ResultSet resultSet = selectStatement.executeQuery();
-
-                // Если игры нет в базе данных, добавляем ее
-                if (!resultSet.next()) {
-                    String insertSql = "INSERT INTO completed_games (title, chat_id) VALUES (?, ?)";
-                    PreparedStatement insertStatement = connection.prepareStatement(insertSql);
-                    insertStatement.setString(1, game);
-                    insertStatement.setLong(2, chatId);
-                    insertStatement.executeUpdate();
-                    insertStatement.close();
+    /**
+     * Метод для удаления одной игры по id
+     */
+    public String removeById(long chatId, long id) {
+        try {
+            List<RatingLeaderboard.Entry> deltas = new ArrayList<>();
+            String title = writer.execute(connection -> {
+                PreparedStatement select = connection.prepare(SELECT_GAME_BY_ID);
+                select.setLong(1, id);
+                select.setLong(2, chatId);
+                long titleId;
+                String removed;
+                int rating;
+                boolean rated;
+                try (ResultSet resultSet = select.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return null;
+                    }
+                    titleId = resultSet.getLong("title_id");
+                    removed = resultSet.getString("title");
+                    rating = resultSet.getInt("rating");
+                    rated = !resultSet.wasNull();
                 }
-            }
+                PreparedStatement delete = connection.prepare("DELETE FROM completed_games WHERE id = ?");
+                delete.setLong(1, id);
+                delete.executeUpdate();
+                if (rated) {
+                    changeRating(connection, deltas, titleId, removed, -rating, -1);
+                }
+                return removed;
+            });
+            leaderboard.applyAll(deltas);
+            return title;
+        } catch (Exception e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+        return null;
+    }
 
-            selectStatement.close();
+    /**
+     * Метод для изменения одной игры по id
+     */
+    public GameUpdate updateById(long chatId, long id, String title, String author, int year) {
+        gameFilter.add(chatId, title, author, year);
+        try {
+            List<RatingLeaderboard.Entry> deltas = new ArrayList<>();
+            LearnedNames names = new LearnedNames();
+            GameUpdate result = writer.execute(connection -> {
+                PreparedStatement select = connection.prepare(SELECT_GAME_BY_ID);
+                select.setLong(1, id);
+                select.setLong(2, chatId);
+                return updateGame(connection, deltas, names, select, title, author, year);
+            });
+            names.apply();
+            leaderboard.applyAll(deltas);
+            return result;
         } catch (Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.exit(0);
-        } finally {
-            try {
-                if (connection != null) {
-                    connection.close();
-                }
-            } catch (SQLException e) {
-                System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.exit(0);
-            }
         }
+        return GameUpdate.NOT_FOUND;
     }
 
 
     /**
-     * Метод для получения списка пройденных игр в полном формате (название, автор, год)
+     * Метод для получения списка пройденных игр со всеми полями
      */
-    public List<String> getAllValues(long chatId) {
-        Connection connection = null;
-        List<String> allValues = new ArrayList<>();
-        try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:completed_games.db");
+    public List<PlayedGame> getGames(long chatId) {
+        try (Stream<PlayedGame> games = streamGames(chatId)) {
+            return games.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Метод для потокового чтения пройденных игр с размером выборки по умолчанию
+     */
+    public Stream<PlayedGame> streamGames(long chatId) {
+        return streamGames(chatId, DEFAULT_FETCH_SIZE);
+    }
 
-            String sql = "SELECT title, author, year FROM completed_games WHERE chat_id = ?";
-            PreparedStatement statement = connection.prepareStatement(sql);
+    /**
+     * Метод для потокового чтения пройденных игр: строки читаются из ResultSet по мере обхода.
+     * Соединение занято, пока поток не закрыт.
+     */
+    public Stream<PlayedGame> streamGames(long chatId, int fetchSize) {
+        PooledConnection connection = null;
+        try {
+            connection = connections.acquire();
+            PreparedStatement statement = connection.prepare(SELECT_GAMES_BY_CHAT);
+            statement.setFetchSize(fetchSize);
             statement.setLong(1, chatId);
             ResultSet resultSet = statement.executeQuery();
-
-            while (resultSet.next()) {
-                String title = resultSet.getString("title");
-                String author = resultSet.getString("author");
-                int year = resultSet.getInt("year");
-                allValues.add(title + "\n" + author + "\n" + year);
+            PooledConnection owner = connection;
+            return StreamSupport.stream(new PlayedGameSpliterator(resultSet), false)
+                    .onClose(() -> {
+                        try {
+                            resultSet.close();
+                        } catch (SQLException e) {
+                            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+                        } finally {
+                            owner.close();
+                        }
+                    });
+        } catch (Exception e) {
+            if (connection != null) {
+                connection.close();
             }
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+        return Stream.empty();
+    }
 
-            resultSet.close();
-            statement.close();
+    /**
+     * Метод для получения страницы игр после указанной игры
+     */
+    public List<PlayedGame> getGamesPage(long chatId, long afterId, int limit) {
+        return readPage(SELECT_GAMES_PAGE, chatId, afterId, limit);
+    }
+
+    /**
+     * Метод для получения страницы игр перед указанной игрой
+     */
+    public List<PlayedGame> getGamesPageBefore(long chatId, long beforeId, int limit) {
+        List<PlayedGame> page = readPage(SELECT_GAMES_PAGE_BEFORE, chatId, beforeId, limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     * Читает страницу игр запросом с параметрами chat_id, граничный id и размер страницы
+     */
+    private List<PlayedGame> readPage(String sql, long chatId, long boundaryId, int limit) {
+        List<PlayedGame> page = new ArrayList<>(limit);
+        try (PooledConnection connection = connections.acquire()) {
+            PreparedStatement statement = connection.prepare(sql);
+            statement.setLong(1, chatId);
+            statement.setLong(2, boundaryId);
+            statement.setInt(3, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                PlayedGameSpliterator rows = new PlayedGameSpliterator(resultSet);
+                while (rows.tryAdvance(page::add)) {
+                    // строки добавляются в page
+                }
+            }
         } catch (Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
-            System.exit(0);
-        } finally {
+        }
+        return page;
+    }
+
+    /**
+     * Обход строк запроса вида SELECT id, title, author, year, rating без промежуточного списка
+     */
+    private static final class PlayedGameSpliterator extends Spliterators.AbstractSpliterator<PlayedGame> {
+        private final ResultSet resultSet;
+
+        PlayedGameSpliterator(ResultSet resultSet) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PlayedGame> action) {
             try {
-                if (connection != null) {
-                    connection.close();
+                if (!resultSet.next()) {
+                    return false;
                 }
+                int rating = resultSet.getInt(5);
+                action.accept(new PlayedGame(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3),
+                        resultSet.getInt(4), resultSet.wasNull() ? null : rating));
+                return true;
             } catch (SQLException e) {
-                System.err.println(e.getClass().getName() + ": " + e.getMessage());
-                System.exit(0);
+                throw new IllegalStateException("Не удалось прочитать список игр", e);
+            }
+        }
+    }
+
+    /**
+     * Статистика загадок по чатам, которая хранится в этой базе данных
+     */
+    synchronized PuzzleStatistics getPuzzleStatistics() {
+        if (puzzleStatistics == null) {
+            puzzleStatistics = new PuzzleStatistics(connections, writer);
+        }
+        return puzzleStatistics;
+    }
+
+    /**
+     * Фильтр Блума, через который проходит gameExists
+     */
+    GameFilter getGameFilter() {
+        return gameFilter;
+    }
+
+    /**
+     * Кэш списков игр перед этим хранилищем, общий для всех ботов.
+     * Записи, сделанные мимо кэша, он не увидит до истечения времени жизни списка.
+     */
+    synchronized GameStorage getGameCache() {
+        if (gameCache == null) {
+            gameCache = new CachingGameStorage(this);
+        }
+        return gameCache;
+    }
+
+    /**
+     * Возвращает сводку по пулу соединений, писателю, кэшу списков игр, фильтру игр
+     * и деревьям подсказок для логов, по строке на каждый.
+     */
+    String getStatistics() {
+        StringBuilder builder = new StringBuilder();
+        if (connections instanceof SqliteConnectionPool pool) {
+            builder.append(pool.getStatistics()).append(System.lineSeparator());
+        }
+        builder.append(writer.getStatistics()).append(System.lineSeparator());
+        synchronized (this) {
+            if (gameCache != null) {
+                builder.append(gameCache.getStatistics()).append(System.lineSeparator());
+            }
+        }
+        return builder.append(gameFilter.getStatistics()).append(System.lineSeparator())
+                .append("Подсказки названий: ").append(titleNames.getStatistics()).append(System.lineSeparator())
+                .append("Подсказки издателей: ").append(authorNames.getStatistics())
+                .toString();
+    }
+
+    /**
+     * Закрывает соединения с базой данных
+     */
+    public void close() {
+        synchronized (this) {
+            if (puzzleStatistics != null) {
+                puzzleStatistics.close();
             }
         }
-        return allValues;
+        quotes.close();
+        writer.close();
+        connections.close();
     }
 
 }
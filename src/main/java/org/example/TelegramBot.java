@@ -1,12 +1,17 @@
 package org.example;
 
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
@@ -29,6 +34,22 @@ interface TelegramBotInterface {
      */
     ReplyKeyboardMarkup createKeyboard();
     ReplyKeyboardMarkup createCancelBoard();
+
+    /**
+     * Создание кнопок листания под сообщением.
+     *
+     * @param navigation данные кнопок предыдущей и следующей страниц
+     * @return Объект InlineKeyboardMarkup с кнопками листания.
+     */
+    InlineKeyboardMarkup createNavigationBoard(PageNavigation navigation);
+
+    /**
+     * Создание кнопок с подсказками имен под сообщением.
+     *
+     * @param suggestions подсказанные имена
+     * @return Объект InlineKeyboardMarkup с кнопкой на каждое имя.
+     */
+    InlineKeyboardMarkup createSuggestionBoard(NameSuggestions suggestions);
 }
 
 
@@ -54,6 +75,37 @@ public class TelegramBot extends TelegramLongPollingBot implements TelegramBotIn
      * Эта переменная используется для хранения экземпляра обработки сообщения.
      */
     private MessageHandling messageHandling;
+
+    /**
+     * Диспетчер, который обрабатывает обновления в пуле потоков с сохранением порядка внутри чата.
+     */
+    private final UpdateDispatcher dispatcher = new UpdateDispatcher();
+
+    /**
+     * Через сколько обработанных обновлений выводить статистику диспетчера в консоль.
+     */
+    private static final long STATISTICS_INTERVAL = 1000;
+
+    /**
+     * Число потоков отправки ответов.
+     */
+    private static final int SENDER_WORKERS = 4;
+
+    /**
+     * Лимиты Telegram: около 30 сообщений в секунду всего и около одного в секунду в один чат.
+     */
+    private static final double GLOBAL_RATE = 30;
+    private static final double CHAT_BURST = 3;
+    private static final double CHAT_RATE = 1;
+
+    /**
+     * Очередь исходящих сообщений. Ответы отправляются в отдельных потоках,
+     * поэтому обработка следующего сообщения не ждет ответа Telegram.
+     * Кроме новых сообщений через очередь идут правки сообщений и ответы на нажатия кнопок.
+     */
+    private final OutboundSender<BotApiMethod<?>> sender =
+            new OutboundSender<>("TG", this::sendNow, SENDER_WORKERS, GLOBAL_RATE, CHAT_BURST, CHAT_RATE);
+
     /**
      * Конструктор класса TelegramBot, который инициализирует объекты Storage и MessageHandling.
      * Storage используется для управления базой данных с прочитанными книгами,
@@ -63,6 +115,15 @@ public class TelegramBot extends TelegramLongPollingBot implements TelegramBotIn
         messageHandling = new MessageHandling();
     }
 
+    /**
+     * Конструктор класса TelegramBot с общим хранилищем.
+     *
+     * @param storage хранилище, общее с другими ботами
+     */
+    public TelegramBot(Storage storage) {
+        messageHandling = new MessageHandling(storage);
+    }
+
 
     @Override
     public String getBotUsername() {
@@ -75,46 +136,139 @@ public class TelegramBot extends TelegramLongPollingBot implements TelegramBotIn
     }
 
     /**
-     * Получение и Отправка сообщения в чат пользователю
+     * Получение обновления. Обработка выполняется не в потоке long polling,
+     * а в полосе диспетчера, соответствующей чату пользователя.
      */
     @Override
     public void onUpdateReceived(Update update) {
+        if (update.hasMessage() && update.getMessage().hasText()) {
+            long chatId = update.getMessage().getChatId();
+            dispatcher.dispatch(chatId, () -> handleUpdate(update));
+        } else if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            long chatId = update.getCallbackQuery().getMessage().getChatId();
+            dispatcher.dispatch(chatId, () -> handleCallback(update.getCallbackQuery()));
+        }
+    }
+
+
+    /**
+     * Остановка бота: диспетчер дообрабатывает принятые обновления, затем отправитель
+     * отправляет накопившиеся ответы, и только после этого останавливается сама библиотека.
+     */
+    @Override
+    public void onClosing() {
+        dispatcher.close();
+        sender.close();
+        super.onClosing();
+    }
+
+
+    /**
+     * Обработка нажатия кнопки под сообщением: сообщение со страницей списка
+     * заменяется новой страницей, а не отправляется заново.
+     */
+    private void handleCallback(CallbackQuery callback) {
+        Message message = callback.getMessage();
+        long chatId = message.getChatId();
+        String response = messageHandling.handleCallback(callback.getData(), chatId);
+        PageNavigation navigation = messageHandling.takeNavigation(chatId);
+
+        // Telegram показывает часы на кнопке, пока на нажатие не ответили
+        sender.submit(chatId, new AnswerCallbackQuery(callback.getId()));
+        if (response == null) {
+            return;
+        }
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(String.valueOf(chatId));
+        edit.setMessageId(message.getMessageId());
+        edit.setText(response);
+        if (navigation != null) {
+            edit.setReplyMarkup(createNavigationBoard(navigation));
+        }
+        sender.submit(chatId, edit);
+    }
+
+
+    /**
+     * Получение и Отправка сообщения в чат пользователю
+     */
+    private void handleUpdate(Update update) {
+        // Извлекаем из объекта сообщение пользователя
+        Message message = update.getMessage();
+        String userMessage = message.getText();
+        // Достаем из inMess id чата пользователя
+        long chatId = message.getChatId();
+
+        // Выводим сообщение пользователя в консоль
+        System.out.println("TG User Message: " + userMessage);
+
+        // Получаем текст сообщения пользователя, отправляем в написанный нами обработчик
+        long started = System.nanoTime();
+        String response = messageHandling.parseMessage(userMessage, chatId);
+        dispatcher.record("handle", System.nanoTime() - started);
+
+        // Выводим ответ бота в консоль
+        System.out.println("TG Bot Response: " + response);
+
+        // Создаем объект класса SendMessage - наш будущий ответ пользователю
+        SendMessage outMess = new SendMessage();
+        // Добавляем в наше сообщение id чата, а также наш ответ
+        outMess.setChatId(String.valueOf(chatId));
+        outMess.setText(response);
+        // Проверяем флаг awaitingRating
+        if (messageHandling.isAwaitingStart(chatId)) {
+            // Если оценка ожидается, вызываем createKeyboard
+            outMess.setReplyMarkup(createKeyboard());
+        }
+        if (messageHandling.isAwaitingCancel(chatId)){
+            // Если цикл с запросом то вызывать клавиатуру
+            outMess.setReplyMarkup(createCancelBoard());
+        }
+        PageNavigation navigation = messageHandling.takeNavigation(chatId);
+        if (navigation != null) {
+            // Постраничный ответ листается кнопками под сообщением
+            outMess.setReplyMarkup(createNavigationBoard(navigation));
+        }
+        NameSuggestions suggestions = messageHandling.getSuggestions(chatId);
+        if (suggestions != null) {
+            // Известные имена, похожие на введенное, выбираются кнопками под сообщением
+            outMess.setReplyMarkup(createSuggestionBoard(suggestions));
+        }
+        // Отправка в чат через очередь исходящих сообщений
+        started = System.nanoTime();
+        sender.submit(chatId, outMess);
+        dispatcher.record("enqueue", System.nanoTime() - started);
+        if (dispatcher.getProcessed() % STATISTICS_INTERVAL == STATISTICS_INTERVAL - 1) {
+            System.out.println("TG Dispatcher: " + dispatcher.getStatistics());
+            System.out.println(sender.getStatistics());
+            System.out.println(messageHandling.getStorageStatistics());
+        }
+    }
+
+
+    /**
+     * Отправляет сообщение в Telegram. Ответ 429 превращается в RateLimitedException,
+     * чтобы очередь отправки повторила сообщение после указанной паузы, а ответы 5xx и ошибки сети -
+     * в IOException, чтобы повторить с нарастающей задержкой. Остальные ответы 4xx (бот заблокирован,
+     * неверный запрос) выбрасываются как есть, и сообщение отбрасывается без повторов.
+     */
+    private void sendNow(long chatId, BotApiMethod<?> message)
+            throws TelegramApiException, RateLimitedException, IOException {
         try {
-            if (update.hasMessage() && update.getMessage().hasText()) {
-                // Извлекаем из объекта сообщение пользователя
-                Message message = update.getMessage();
-                String userMessage = message.getText();
-                // Достаем из inMess id чата пользователя
-                long chatId = message.getChatId();
-
-                // Выводим сообщение пользователя в консоль
-                System.out.println("TG User Message: " + userMessage);
-
-                // Получаем текст сообщения пользователя, отправляем в написанный нами обработчик
-                String response = messageHandling.parseMessage(userMessage, chatId);
-
-                // Выводим ответ бота в консоль
-                System.out.println("TG Bot Response: " + response);
-
-                // Создаем объект класса SendMessage - наш будущий ответ пользователю
-                SendMessage outMess = new SendMessage();
-                // Добавляем в наше сообщение id чата, а также наш ответ
-                outMess.setChatId(String.valueOf(chatId));
-                outMess.setText(response);
-                // Проверяем флаг awaitingRating
-                if (messageHandling.isAwaitingStart()) {
-                    // Если оценка ожидается, вызываем createKeyboard
-                    outMess.setReplyMarkup(createKeyboard());
-                }
-                if (messageHandling.isAwaitingCancel()){
-                    // Если цикл с запросом то вызывать клавиатуру
-                    outMess.setReplyMarkup(createCancelBoard());
-                }
-                // Отправка в чат
-                execute(outMess);
+            execute(message);
+        } catch (TelegramApiRequestException e) {
+            Integer code = e.getErrorCode();
+            if (code != null && code == 429) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                throw new RateLimitedException(retryAfter != null ? retryAfter * 1000L : 0);
             }
+            if (code == null || code >= 500) {
+                throw new IOException(e.getMessage(), e);
+            }
+            throw e;
         } catch (TelegramApiException e) {
-            e.printStackTrace();
+            // Без кода ответа библиотека сообщает о сбое соединения
+            throw new IOException(e.getMessage(), e);
         }
     }
 
@@ -154,5 +308,40 @@ public class TelegramBot extends TelegramLongPollingBot implements TelegramBotIn
         return keyboardMarkup;
     }
 
+    /**
+     * Метод для создания кнопок листания страниц под сообщением
+     */
+    public InlineKeyboardMarkup createNavigationBoard(PageNavigation navigation) {
+        List<InlineKeyboardButton> row = new ArrayList<>();
+        if (navigation.previous() != null) {
+            InlineKeyboardButton previous = new InlineKeyboardButton("◀ Назад");
+            previous.setCallbackData(navigation.previous());
+            row.add(previous);
+        }
+        if (navigation.next() != null) {
+            InlineKeyboardButton next = new InlineKeyboardButton("Вперед ▶");
+            next.setCallbackData(navigation.next());
+            row.add(next);
+        }
+        InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
+        keyboardMarkup.setKeyboard(List.of(row));
+        return keyboardMarkup;
+    }
+
+    /**
+     * Метод для создания кнопок подсказок имен, по кнопке в строке
+     */
+    public InlineKeyboardMarkup createSuggestionBoard(NameSuggestions suggestions) {
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        for (int i = 0; i < suggestions.names().size(); i++) {
+            InlineKeyboardButton button = new InlineKeyboardButton(suggestions.names().get(i));
+            button.setCallbackData(MessageHandling.SUGGEST_CALLBACK + i);
+            rows.add(List.of(button));
+        }
+        InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
+        keyboardMarkup.setKeyboard(rows);
+        return keyboardMarkup;
+    }
+
 
 }
\ No newline at end of file
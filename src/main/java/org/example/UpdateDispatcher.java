@@ -0,0 +1,214 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Статистика длительности одного этапа обработки.
+ */
+class LatencyStats {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Учитывает одно выполнение этапа.
+     *
+     * @param nanos длительность в наносекундах
+     */
+    void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    /** Средняя длительность, мс */
+    double getAverageMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+    }
+
+    /** Максимальная длительность, мс */
+    double getMaxMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+}
+
+
+/**
+ * Диспетчер входящих обновлений.
+ * Обновления раскладываются по полосам по идентификатору чата: у каждой полосы свой поток и своя
+ * ограниченная очередь. Поэтому сообщения одного чата обрабатываются строго по порядку,
+ * а разные чаты - параллельно. Когда очередь полосы заполнена, dispatch ждет освобождения места,
+ * и прием новых обновлений замедляется.
+ */
+class UpdateDispatcher implements AutoCloseable {
+
+    /** Число полос по умолчанию */
+    static final int DEFAULT_LANES = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+    /** Емкость очереди одной полосы по умолчанию */
+    static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /** Этап ожидания в очереди */
+    static final String STAGE_QUEUE = "queue";
+
+    /**
+     * Задача в очереди полосы вместе с временем постановки.
+     */
+    private static final class Task {
+        final Runnable action;
+        final long enqueuedAt;
+
+        Task(Runnable action) {
+            this.action = action;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private final List<BlockingQueue<Task>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Map<String, LatencyStats> stages = new ConcurrentHashMap<>();
+    private final LongAdder processed = new LongAdder();
+    private volatile boolean running = true;
+
+    UpdateDispatcher() {
+        this(DEFAULT_LANES, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param lanes         число полос (потоков обработки)
+     * @param queueCapacity сколько обновлений может ждать в одной полосе
+     */
+    UpdateDispatcher(int lanes, int queueCapacity) {
+        for (int i = 0; i < lanes; i++) {
+            BlockingQueue<Task> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Thread worker = new Thread(() -> runLane(queue), "update-lane-" + i);
+            worker.setDaemon(true);
+            queues.add(queue);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Ставит обработку обновления в полосу его чата.
+     * Если очередь полосы заполнена, ждет освобождения места.
+     *
+     * @param chatId идентификатор чата, определяет полосу
+     * @param action обработка обновления
+     * @return false, если ожидание было прервано и обновление не принято
+     */
+    boolean dispatch(long chatId, Runnable action) {
+        if (!running) {
+            return false;
+        }
+        try {
+            queues.get(laneOf(chatId)).put(new Task(action));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int laneOf(long chatId) {
+        return Math.floorMod(Long.hashCode(chatId), queues.size());
+    }
+
+    private void runLane(BlockingQueue<Task> queue) {
+        while (running || !queue.isEmpty()) {
+            Task task;
+            try {
+                task = queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == null) {
+                continue;
+            }
+            record(STAGE_QUEUE, System.nanoTime() - task.enqueuedAt);
+            try {
+                task.action.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            processed.increment();
+        }
+    }
+
+    /**
+     * Учитывает длительность этапа обработки, например разбора сообщения или отправки ответа.
+     *
+     * @param stage название этапа
+     * @param nanos длительность в наносекундах
+     */
+    void record(String stage, long nanos) {
+        stages.computeIfAbsent(stage, name -> new LatencyStats()).record(nanos);
+    }
+
+    /**
+     * Статистика этапа или null, если этап еще не выполнялся
+     */
+    LatencyStats getStage(String stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Суммарное число обновлений, ждущих в очередях
+     */
+    int getQueueDepth() {
+        int depth = 0;
+        for (BlockingQueue<Task> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Число обработанных обновлений
+     */
+    long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Возвращает сводку по очередям и этапам для логов.
+     */
+    String getStatistics() {
+        StringBuilder builder = new StringBuilder("Обработано: ").append(processed.sum())
+                .append(", в очередях: ").append(getQueueDepth());
+        stages.forEach((name, stats) -> builder.append("\n").append(name)
+                .append(": среднее ").append(Math.round(stats.getAverageMillis() * 100) / 100.0)
+                .append(" мс, максимум ").append(Math.round(stats.getMaxMillis() * 100) / 100.0)
+                .append(" мс, раз ").append(stats.getCount()));
+        return builder.toString();
+    }
+
+    /**
+     * Перестает принимать обновления и дает полосам дообработать очереди.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -5,15 +5,15 @@ import com.vk.api.sdk.client.actors.GroupActor;
 import com.vk.api.sdk.exceptions.ApiException;
 import com.vk.api.sdk.exceptions.ClientException;
 import com.vk.api.sdk.httpclient.HttpTransportClient;
-import com.vk.api.sdk.objects.messages.Message;
-import com.vk.api.sdk.queries.messages.MessagesGetLongPollHistoryQuery;
 
-import java.util.List;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Класс для реализации VK-бота
  */
-public class VkBot {
+public class VkBot implements AutoCloseable {
 
     private MessageHandling messageHandling;
     private static final long GROUP_ID = 223017873;
@@ -21,92 +21,205 @@ public class VkBot {
     private VkApiClient vk;
     private GroupActor actor;
 
+    /**
+     * Лимит VK для сообщений сообщества - около 20 запросов в секунду.
+     */
+    private static final double GLOBAL_RATE = 20;
+    private static final double CHAT_BURST = 3;
+    private static final double CHAT_RATE = 1;
+    private static final int SENDER_WORKERS = 2;
+
+    /**
+     * Коды ошибок VK API о слишком частых запросах: 6 - слишком много запросов в секунду, 9 - flood control.
+     */
+    private static final int TOO_MANY_REQUESTS = 6;
+    private static final int FLOOD_CONTROL = 9;
+
+    /** Код внутренней ошибки сервера VK API, после которой запрос можно повторить */
+    private static final int INTERNAL_ERROR = 10;
+
+    /**
+     * Исходящее сообщение с random_id, выбранным при постановке в очередь.
+     * Повторные попытки отправляют тот же random_id, и VK не покажет сообщение дважды,
+     * если первая попытка дошла, но ответ на нее потерялся.
+     */
+    private record VkMessage(String text, int randomId) {
+    }
+
+    /**
+     * Очередь исходящих сообщений, отправляемых в отдельных потоках.
+     */
+    private final OutboundSender<VkMessage> sender =
+            new OutboundSender<>("VK", this::sendNow, SENDER_WORKERS, GLOBAL_RATE, CHAT_BURST, CHAT_RATE);
+
+    /**
+     * Поток входящих событий Bots Long Poll.
+     */
+    private final VkEventStream events;
+
+    /**
+     * Диспетчер, который обрабатывает сообщения с сохранением порядка внутри чата.
+     */
+    private final UpdateDispatcher dispatcher = new UpdateDispatcher();
+
+    /**
+     * Поток, который передает сообщения из потока событий в диспетчер.
+     */
+    private final Thread consumer = new Thread(this::consumeEvents, "vk-consumer");
+
 
     /**
      * Конструктор класса VkBot, инициализирующий объекты VkApiClient, GroupActor и MessageHandling.
      */
     public VkBot() {
+        this(new Storage());
+    }
+
+
+    /**
+     * Конструктор класса VkBot с общим хранилищем.
+     *
+     * @param storage хранилище, общее с другими ботами
+     */
+    public VkBot(Storage storage) {
+        this(storage, new HttpVkLongPollTransport(HttpVkLongPollTransport.VK_API, GROUP_ID, ACCESS_TOKEN));
+    }
+
+
+    /**
+     * Конструктор класса VkBot с общим хранилищем и указанным транспортом Long Poll,
+     * например поддельным сервером VK для нагрузочных тестов.
+     *
+     * @param storage   хранилище, общее с другими ботами
+     * @param transport транспорт Bots Long Poll
+     */
+    VkBot(Storage storage, VkLongPollTransport transport) {
         vk = new VkApiClient(new HttpTransportClient());
         actor = new GroupActor((int) GROUP_ID, ACCESS_TOKEN);
-        messageHandling = new MessageHandling();
+        messageHandling = new MessageHandling(storage);
+        events = new VkEventStream(transport);
     }
 
 
     /**
-     * Метод startBot запускает VK бота.
-     * Получает данные для Long Poll сервера, затем в бесконечном цикле получает и обрабатывает сообщения.
-     * Обработанный ответ отправляется обратно в чат.
-     * В случае возникновения исключений, выводит их в консоль.
+     * Метод startBot запускает VK бота и сразу возвращает управление.
+     * Опрос Bots Long Poll идет в своем потоке, сообщения из его очереди раздаются
+     * по полосам диспетчера, а ответы уходят через очередь отправки.
      */
     public void startBot() {
-        try {
-            int ts = vk.messages().getLongPollServer(actor).execute().getTs();
+        events.start();
+        consumer.start();
+    }
 
-            while (true) {
-                MessagesGetLongPollHistoryQuery historyQuery = vk.messages()
-                        .getLongPollHistory(actor)
-                        .ts(ts);
 
-                List<Message> messages = historyQuery.execute().getMessages().getItems();
+    /**
+     * Останавливает опрос VK, дообрабатывает уже принятые сообщения и дожидается отправки ответов.
+     */
+    @Override
+    public void close() {
+        events.close();
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dispatcher.close();
+        sender.close();
+    }
+
 
-                for (Message message : messages) {
-                    // Извлекаем из объекта сообщение пользователя
-                    String userMessage = message.getText();
-                    // Достаем из inMess id чата пользователя
-                    long chatId = message.getPeerId();
+    /**
+     * Забирает сообщения из потока событий и передает их в полосы диспетчера по чатам.
+     * После остановки опроса передает то, что осталось в очереди, и завершается.
+     */
+    private void consumeEvents() {
+        while (true) {
+            try {
+                VkIncoming message = events.take(1, TimeUnit.SECONDS);
+                if (message != null) {
+                    dispatcher.dispatch(message.peerId, () -> handleMessage(message));
+                } else if (!events.isRunning()) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
 
-                    // Выводим сообщение пользователя в консоль
-                    System.out.println("VK User Message: " + userMessage);
 
-                    // Получаем текст сообщения пользователя, отправляем в написанный нами обработчик
-                    String response = messageHandling.parseMessage(userMessage, chatId);
+    /**
+     * Обрабатывает одно сообщение пользователя и ставит ответ в очередь отправки.
+     */
+    private void handleMessage(VkIncoming message) {
+        // Извлекаем из объекта сообщение пользователя
+        String userMessage = message.text;
+        // Достаем из inMess id чата пользователя
+        long chatId = message.peerId;
 
-                    // Выводим ответ бота в консоль
-                    System.out.println("VK Bot Response: " + response);
+        // Выводим сообщение пользователя в консоль
+        System.out.println("VK User Message: " + userMessage);
 
-                    // Отправка в чат
-                    sendVkMessage(chatId, response);
-                }
+        // Получаем текст сообщения пользователя, отправляем в написанный нами обработчик
+        String response = messageHandling.parseMessage(userMessage, chatId);
 
-                ts = vk.messages().getLongPollServer(actor).execute().getTs();
+        // Выводим ответ бота в консоль
+        System.out.println("VK Bot Response: " + response);
 
-                Thread.sleep(10);
-            }
-        } catch (ApiException | ClientException | InterruptedException e) {
-            e.printStackTrace();
-        }
+        // Отправка в чат
+        sendVkMessage(chatId, response);
     }
 
 
     /**
-     * Метод sendVkMessage отправляет сообщение в VK.
-     * Использует метод messages().send() VK API, указывая получателя, текст сообщения и уникальный random_id.
-     * Обрабатывает возможные исключения и выводит их в консоль.
+     * Метод sendVkMessage ставит сообщение в очередь отправки в VK.
+     * Само сообщение отправляется в потоке отправителя с соблюдением лимитов VK.
      *
      * @param chatId Идентификатор чата или пользователя в VK.
      * @param text   Текст сообщения для отправки.
      */
     private void sendVkMessage(long chatId, String text) {
+        sender.submit(chatId, new VkMessage(text, ThreadLocalRandom.current().nextInt()));
+    }
+
+
+    /**
+     * Отправляет сообщение через метод messages().send() VK API, указывая получателя,
+     * текст сообщения и random_id, выбранный при постановке в очередь. Ошибки о частоте запросов превращаются
+     * в RateLimitedException, а сбои сети и внутренние ошибки VK - в IOException, чтобы очередь отправки
+     * повторила сообщение позже. Остальные ошибки API (нет доступа к чату и т.п.) не повторяются.
+     */
+    private void sendNow(long chatId, VkMessage message) throws ApiException, RateLimitedException, IOException {
         try {
             vk.messages().send(actor)
                     .peerId((int) chatId)
-                    .message(text)
-                    .randomId((int) System.currentTimeMillis())  // Используйте уникальное значение для random_id
+                    .message(message.text())
+                    .randomId(message.randomId())
                     .execute();
-        } catch (ApiException | ClientException e) {
-            e.printStackTrace();
+        } catch (ApiException e) {
+            Integer code = e.getCode();
+            if (code != null && (code == TOO_MANY_REQUESTS || code == FLOOD_CONTROL)) {
+                throw new RateLimitedException(0);
+            }
+            if (code != null && code == INTERNAL_ERROR) {
+                throw new IOException("Внутренняя ошибка VK API", e);
+            }
+            throw e;
+        } catch (ClientException e) {
+            throw new IOException("Сбой соединения с VK API", e);
         }
     }
 
 
     /**
      * Главный метод main запускает VK бота.
-     * Создает экземпляр VkBot и вызывает его метод startBot().
+     * Создает экземпляр VkBot, вызывает его метод startBot() и останавливает бота при завершении процесса.
      *
      * @param args Аргументы командной строки (не используются).
      */
     public static void main(String[] args) {
         VkBot vkBot = new VkBot();
         vkBot.startBot();
+        Runtime.getRuntime().addShutdownHook(new Thread(vkBot::close, "vk-shutdown"));
     }
 }
@@ -0,0 +1,325 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Входящее сообщение VK.
+ */
+class VkIncoming {
+    final long peerId;
+    final String text;
+
+    VkIncoming(long peerId, String text) {
+        this.peerId = peerId;
+        this.text = text;
+    }
+}
+
+
+/**
+ * Параметры сессии Bots Long Poll: адрес сервера, ключ и номер последнего события.
+ */
+class VkLongPollSession {
+    final String server;
+    final String key;
+    final String ts;
+
+    VkLongPollSession(String server, String key, String ts) {
+        this.server = server;
+        this.key = key;
+        this.ts = ts;
+    }
+
+    /**
+     * Та же сессия, продолженная с другого номера события.
+     */
+    VkLongPollSession withTs(String newTs) {
+        return new VkLongPollSession(server, key, newTs);
+    }
+}
+
+
+/**
+ * Ответ сервера Long Poll на один запрос.
+ */
+class VkLongPollBatch {
+    /** Номер события, с которого продолжать */
+    final String ts;
+    /** Код ошибки из поля failed, 0 - ошибки нет */
+    final int failed;
+    /** Новые сообщения */
+    final List<VkIncoming> messages;
+
+    VkLongPollBatch(String ts, int failed, List<VkIncoming> messages) {
+        this.ts = ts;
+        this.failed = failed;
+        this.messages = messages;
+    }
+}
+
+
+/**
+ * Транспорт Bots Long Poll. Реализацию можно подменить, например, на локальный поддельный сервер VK.
+ */
+interface VkLongPollTransport {
+    /**
+     * Получает адрес сервера, ключ и начальный номер события (groups.getLongPollServer).
+     */
+    VkLongPollSession open() throws IOException, InterruptedException;
+
+    /**
+     * Ждет новые события, начиная с номера события сессии.
+     *
+     * @param session     сессия Long Poll
+     * @param waitSeconds сколько секунд сервер может держать запрос
+     * @return ответ сервера
+     */
+    VkLongPollBatch poll(VkLongPollSession session, int waitSeconds) throws IOException, InterruptedException;
+}
+
+
+/**
+ * Транспорт Bots Long Poll поверх HTTP.
+ */
+class HttpVkLongPollTransport implements VkLongPollTransport {
+
+    /** Адрес VK API */
+    static final String VK_API = "https://api.vk.com";
+
+    /** Версия VK API */
+    static final String API_VERSION = "5.131";
+
+    private final String apiBase;
+    private final long groupId;
+    private final String accessToken;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    /**
+     * @param apiBase     адрес VK API, для нагрузочных тестов - адрес поддельного сервера
+     * @param groupId     идентификатор сообщества
+     * @param accessToken ключ доступа сообщества
+     */
+    HttpVkLongPollTransport(String apiBase, long groupId, String accessToken) {
+        this.apiBase = apiBase;
+        this.groupId = groupId;
+        this.accessToken = accessToken;
+    }
+
+    @Override
+    public VkLongPollSession open() throws IOException, InterruptedException {
+        JSONObject json = get(apiBase + "/method/groups.getLongPollServer?group_id=" + groupId
+                + "&access_token=" + encode(accessToken) + "&v=" + API_VERSION, 10);
+        if (json.has("error")) {
+            throw new IOException("VK API: " + json.getJSONObject("error").optString("error_msg"));
+        }
+        JSONObject response = json.getJSONObject("response");
+        return new VkLongPollSession(response.getString("server"), response.getString("key"), response.get("ts").toString());
+    }
+
+    @Override
+    public VkLongPollBatch poll(VkLongPollSession session, int waitSeconds) throws IOException, InterruptedException {
+        JSONObject json = get(session.server + "?act=a_check&key=" + encode(session.key)
+                + "&ts=" + encode(session.ts) + "&wait=" + waitSeconds, waitSeconds + 10);
+        String ts = json.has("ts") ? json.get("ts").toString() : session.ts;
+        int failed = json.optInt("failed", 0);
+        List<VkIncoming> messages = new ArrayList<>();
+        JSONArray updates = json.optJSONArray("updates");
+        if (updates != null) {
+            for (int i = 0; i < updates.length(); i++) {
+                // Некорректное событие пропускается: иначе ts не сдвинется, и тот же ответ будет приходить снова
+                try {
+                    JSONObject update = updates.getJSONObject(i);
+                    if (!"message_new".equals(update.optString("type"))) {
+                        continue;
+                    }
+                    JSONObject message = update.getJSONObject("object").getJSONObject("message");
+                    messages.add(new VkIncoming(message.getLong("peer_id"), message.optString("text")));
+                } catch (JSONException e) {
+                    System.err.println("VK Long Poll: пропущено некорректное событие: " + e.getMessage());
+                }
+            }
+        }
+        return new VkLongPollBatch(ts, failed, messages);
+    }
+
+    private JSONObject get(String url, int timeoutSeconds) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(timeoutSeconds))
+                .GET()
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + " от " + URI.create(url).getHost());
+        }
+        return new JSONObject(response.body());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value == null ? "" : value, StandardCharsets.UTF_8);
+    }
+}
+
+
+/**
+ * Поток событий VK через Bots Long Poll.
+ * Держит одну сессию Long Poll и продолжает ее с последнего ts, заново запрашивая сервер
+ * только когда VK об этом просит. Сообщения складываются в ограниченную очередь,
+ * из которой их забирает обработчик. Опрос идет в собственном потоке.
+ */
+class VkEventStream implements AutoCloseable {
+
+    /** Сколько секунд сервер Long Poll может держать запрос */
+    static final int WAIT_SECONDS = 25;
+
+    /** Емкость очереди входящих сообщений по умолчанию */
+    static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /** Максимальная пауза после ошибки сети, мс */
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    private final VkLongPollTransport transport;
+    private final BlockingQueue<VkIncoming> queue;
+    private final Thread poller;
+    private volatile boolean running;
+
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+
+    VkEventStream(VkLongPollTransport transport) {
+        this(transport, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param transport     транспорт Long Poll
+     * @param queueCapacity сколько сообщений может ждать обработки
+     */
+    VkEventStream(VkLongPollTransport transport, int queueCapacity) {
+        this.transport = transport;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.poller = new Thread(this::run, "vk-long-poll");
+    }
+
+    /**
+     * Запускает опрос сервера в отдельном потоке.
+     */
+    void start() {
+        running = true;
+        poller.start();
+    }
+
+    /**
+     * Забирает следующее сообщение, ожидая его не дольше timeout.
+     *
+     * @return сообщение или null, если за это время сообщений не было
+     */
+    VkIncoming take(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        VkLongPollSession session = null;
+        String resumeTs = null;
+        long backoff = 1000;
+        while (running) {
+            try {
+                if (session == null) {
+                    session = transport.open();
+                    reconnects.increment();
+                    if (resumeTs != null) {
+                        // Новый ключ, но события продолжаем с места остановки
+                        session = session.withTs(resumeTs);
+                        resumeTs = null;
+                    }
+                }
+                VkLongPollBatch batch = transport.poll(session, WAIT_SECONDS);
+                polls.increment();
+                switch (batch.failed) {
+                    case 0:
+                        for (VkIncoming message : batch.messages) {
+                            // Если обработчик не успевает, опрос ждет - очередь ограничена
+                            queue.put(message);
+                            received.increment();
+                        }
+                        session = session.withTs(batch.ts);
+                        break;
+                    case 1:
+                        // История событий устарела или частично потеряна - продолжаем с нового ts
+                        session = session.withTs(batch.ts);
+                        break;
+                    case 2:
+                        // Истек ключ - запрашиваем новый, но сохраняем ts
+                        resumeTs = session.ts;
+                        session = null;
+                        break;
+                    default:
+                        // 3 - информация о пользователе потеряна: нужна полностью новая сессия
+                        session = null;
+                        break;
+                }
+                backoff = 1000;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("VK Long Poll: " + e.getClass().getName() + ": " + e.getMessage());
+                if (session != null) {
+                    resumeTs = session.ts;
+                }
+                session = null;
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(MAX_BACKOFF, backoff * 2);
+            }
+        }
+    }
+
+    /**
+     * Возвращает сводку по опросу для логов.
+     */
+    String getStatistics() {
+        return "VK Long Poll: запросов " + polls.sum() + ", сообщений " + received.sum()
+                + ", сессий " + reconnects.sum() + ", в очереди " + queue.size();
+    }
+
+    long getReceived() {
+        return received.sum();
+    }
+
+    long getReconnects() {
+        return reconnects.sum();
+    }
+
+    /**
+     * Останавливает опрос.
+     */
+    @Override
+    public void close() {
+        running = false;
+        poller.interrupt();
+    }
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class AnswerMatcherTest {
+
+    private static final String CSV = """
+            category;difficulty;question;answer;hint
+            природа;1;Белый, пушистый, летает без крыльев;Снег|снежинка;
+            предметы;1;Без рук, без ног, а всегда идут;Часы;
+            понятия;3;Что можно сломать, даже если ни разу не касался?;Обещание;
+            природа;1;Пушистая, зеленая, колется;Ёлка;
+            понятия;1;Что можно увидеть с закрытыми глазами?;Сон;
+            """;
+
+    private final AnswerMatcher matcher = matcher();
+
+    private static AnswerMatcher matcher() {
+        try {
+            return new AnswerMatcher(new PuzzleCorpus(PuzzleCorpusBuilder.build(new StringReader(CSV))));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Проверяет нормализацию: регистр, ё, знаки препинания и лишние пробелы
+     */
+    @Test
+    public void normalizeTest() {
+        Assert.assertEquals("капля дождя", AnswerMatcher.normalize("  Капля,  дождя!"));
+        Assert.assertEquals("елка", AnswerMatcher.normalize("Ёлка"));
+        Assert.assertEquals("", AnswerMatcher.normalize("?!"));
+    }
+
+
+    /**
+     * Проверяет, что принимаются синонимы, ё/е, знаки препинания и опечатки в пределах допуска
+     */
+    @Test
+    public void acceptsVariantsAndTyposTest() {
+        Assert.assertTrue(matcher.matches(0, "снег"));
+        Assert.assertTrue(matcher.matches(0, "Снежинка!"));
+        Assert.assertTrue(matcher.matches(0, "снежинко"));
+        Assert.assertTrue(matcher.matches(1, " ЧАСЫ. "));
+        Assert.assertTrue(matcher.matches(2, "обещанее"));
+        Assert.assertTrue(matcher.matches(2, "обешание"));
+        Assert.assertTrue(matcher.matches(2, "обещние"));
+        Assert.assertTrue(matcher.matches(3, "елка"));
+        Assert.assertTrue(matcher.matches(3, "ёлки"));
+    }
+
+
+    /**
+     * Проверяет, что короткие ответы требуют точного совпадения, а далекие ответы не принимаются
+     */
+    @Test
+    public void rejectsDistantAnswersTest() {
+        Assert.assertFalse(matcher.matches(0, "снов"));
+        Assert.assertFalse(matcher.matches(1, "чай"));
+        Assert.assertFalse(matcher.matches(2, "объяснение"));
+        Assert.assertFalse(matcher.matches(2, ""));
+        Assert.assertFalse(matcher.matches(3, "палка"));
+        Assert.assertTrue(matcher.matches(4, "СОН"));
+        Assert.assertFalse(matcher.matches(4, "сок"));
+    }
+}
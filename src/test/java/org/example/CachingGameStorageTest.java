@@ -0,0 +1,145 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+public class CachingGameStorageTest {
+
+    private GameStorage storage;
+
+    private CachingGameStorage cache;
+
+    private final List<PlayedGame> games = List.of(
+            new PlayedGame(10, "Warcraft", "Blizzard", 2002, 5),
+            new PlayedGame(11, "Minecraft", "Mojang", 2011, 3),
+            new PlayedGame(12, "Diablo", "Blizzard", 1997, null));
+
+    @Before
+    public void setUp() {
+        storage = mock(GameStorage.class);
+        when(storage.getGamesPage(1, 0, 6)).thenReturn(games);
+        cache = new CachingGameStorage(storage, 5, 60_000);
+    }
+
+
+    /**
+     * Проверяет, что повторные чтения и поиск по издателю и году обращаются к базе один раз
+     */
+    @Test
+    public void repeatedReadsHitCacheTest() {
+        Assert.assertEquals(List.of("Warcraft", "Minecraft", "Diablo"), cache.getPlayedGames(1));
+        Assert.assertEquals(List.of("Warcraft", "Diablo"), cache.getGamesByAuthor("Blizzard", 1));
+        Assert.assertEquals(List.of("Minecraft"), cache.getGamesByYear(2011, 1));
+        Assert.assertTrue(cache.gameExists("Diablo", "Blizzard", 1997, 1));
+        Assert.assertFalse(cache.gameExists("Diablo", "Blizzard", 1998, 1));
+        Assert.assertEquals(11, cache.findGameId(1, 2));
+        Assert.assertEquals(0, cache.findGameId(1, 4));
+        Assert.assertEquals(List.of("Minecraft", "Diablo"), titles(cache.getGamesPage(1, 10, 5)));
+        Assert.assertEquals(List.of("Warcraft"), titles(cache.getGamesPageBefore(1, 11, 5)));
+        Assert.assertEquals(List.of("Blizzard"), cache.getAuthorsByPrefix("BLI", 1, 5));
+
+        verify(storage, times(1)).getGamesPage(1, 0, 6);
+        verify(storage, never()).getAuthorsByPrefix(anyString(), anyLong(), anyInt());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(9, cache.getHits());
+    }
+
+
+    /**
+     * Проверяет, что удаление, изменение и добавление правят закэшированный список,
+     * а отказ из-за дубликата его не трогает
+     */
+    @Test
+    public void writesUpdateOrInvalidateTest() {
+        when(storage.removeById(1, 11)).thenReturn("Minecraft");
+        when(storage.updateById(1, 12, "Diablo II", "Blizzard", 2000)).thenReturn(new GameUpdate("Diablo", false));
+        cache.getPlayedGames(1);
+
+        Assert.assertEquals("Minecraft", cache.removeById(1, 11));
+        Assert.assertEquals("Diablo", cache.updateById(1, 12, "Diablo II", "Blizzard", 2000).previousTitle());
+        Assert.assertEquals(List.of("Warcraft", "Diablo II"), cache.getGamesByAuthor("Blizzard", 1));
+        Assert.assertEquals(Integer.valueOf(5), cache.getGames(1).get(0).rating());
+        verify(storage, times(1)).getGamesPage(1, 0, 6);
+
+        when(storage.updateById(1, 10, "Diablo II", "Blizzard", 2000)).thenReturn(new GameUpdate("Warcraft", true));
+        Assert.assertTrue(cache.updateById(1, 10, "Diablo II", "Blizzard", 2000).duplicate());
+        Assert.assertFalse(cache.insertIfAbsent("Warcraft", "Blizzard", 2002, 1, 1));
+        cache.getPlayedGames(1);
+        verify(storage, times(1)).getGamesPage(1, 0, 6);
+
+        when(storage.insertIfAbsent("Terraria", "Re-Logic", 2011, 4, 1)).thenReturn(true);
+        when(storage.getGamesPage(1, 12, 4)).thenReturn(List.of(new PlayedGame(13, "Terraria", "Re-Logic", 2011, 4)));
+        Assert.assertTrue(cache.insertIfAbsent("Terraria", "Re-Logic", 2011, 4, 1));
+        Assert.assertEquals(List.of("Warcraft", "Diablo II", "Terraria"), cache.getPlayedGames(1));
+        Assert.assertTrue(cache.gameExists("Terraria", "Re-Logic", 2011, 1));
+        verify(storage, times(1)).getGamesPage(1, 0, 6);
+
+        cache.clearPlayedGames(1);
+        Assert.assertTrue(cache.getPlayedGames(1).isEmpty());
+        verify(storage, times(1)).getGamesPage(1, 0, 6);
+    }
+
+
+    /**
+     * Проверяет вытеснение давно не читавшихся чатов при превышении числа игр и по времени жизни
+     */
+    @Test
+    public void evictionTest() {
+        when(storage.getGamesPage(2, 0, 6)).thenReturn(List.of(
+                new PlayedGame(20, "Doom", "id Software", 1993, 5),
+                new PlayedGame(21, "Quake", "id Software", 1996, 5),
+                new PlayedGame(22, "Heretic", "Raven", 1994, 4)));
+        cache.getPlayedGames(1);
+        cache.getPlayedGames(2);
+        Assert.assertEquals(1, cache.getEvictions());
+        cache.getPlayedGames(2);
+        cache.getPlayedGames(1);
+        verify(storage, times(1)).getGamesPage(2, 0, 6);
+        verify(storage, times(2)).getGamesPage(1, 0, 6);
+
+        CachingGameStorage expiring = new CachingGameStorage(storage, 100, 0);
+        when(storage.getGamesPage(1, 0, 101)).thenReturn(games);
+        expiring.getPlayedGames(1);
+        expiring.getPlayedGames(1);
+        verify(storage, times(2)).getGamesPage(1, 0, 101);
+        Assert.assertEquals(1, expiring.getEvictions());
+    }
+
+
+    /**
+     * Проверяет, что список больше кэша читается не целиком и один раз, а дальше чтения идут в хранилище
+     */
+    @Test
+    public void oversizedLibraryIsForwardedTest() {
+        CachingGameStorage small = new CachingGameStorage(storage, 2, 60_000);
+        when(storage.getGamesPage(1, 0, 3)).thenReturn(games);
+        when(storage.getPlayedGames(1)).thenReturn(List.of("Warcraft", "Minecraft", "Diablo"));
+        when(storage.getGamesPage(1, 10, 1)).thenReturn(List.of(new PlayedGame(11, "Minecraft", "Mojang", 2011, 3)));
+        when(storage.findGameId(1, 3)).thenReturn(12L);
+
+        Assert.assertEquals(List.of("Warcraft", "Minecraft", "Diablo"), small.getPlayedGames(1));
+        Assert.assertEquals(List.of("Minecraft"), titles(small.getGamesPage(1, 10, 1)));
+        Assert.assertEquals(12, small.findGameId(1, 3));
+        small.getGamesByAuthor("Blizzard", 1);
+
+        verify(storage, times(1)).getGamesPage(1, 0, 3);
+        verify(storage, never()).getGames(1);
+        verify(storage).getGamesByAuthor("Blizzard", 1);
+        Assert.assertTrue(small.getStatistics().endsWith("больших чатов 1"));
+    }
+
+
+    private static List<String> titles(List<PlayedGame> games) {
+        List<String> titles = new ArrayList<>();
+        for (PlayedGame game : games) {
+            titles.add(game.title());
+        }
+        return titles;
+    }
+}
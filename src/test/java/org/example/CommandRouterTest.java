@@ -0,0 +1,36 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CommandRouterTest {
+
+    private final CommandRouter router = new CommandRouter()
+            .register((textMsg, chatId) -> "list", "/getplayed", "Список_игр")
+            .registerIgnoreCase((textMsg, chatId) -> "hint", "дай подсказку")
+            .registerPrefix("/get", (textMsg, chatId) -> "get")
+            .registerPrefix("/getbyrating", (textMsg, chatId) -> "rating " + textMsg.substring("/getbyrating".length()).trim());
+
+
+    /**
+     * Проверяет, что команды и псевдонимы находятся по точному совпадению раньше, чем по началу
+     */
+    @Test
+    public void exactMatchWinsOverPrefixTest() {
+        Assert.assertEquals("list", router.route("/getplayed").handle("/getplayed", 1));
+        Assert.assertEquals("list", router.route("Список_игр").handle("Список_игр", 1));
+        Assert.assertEquals("hint", router.route("Дай подсказку").handle("Дай подсказку", 1));
+    }
+
+
+    /**
+     * Проверяет, что из нескольких подходящих команд по началу выбирается самая длинная
+     */
+    @Test
+    public void longestPrefixWinsTest() {
+        Assert.assertEquals("rating 2", router.route("/getbyrating 2").handle("/getbyrating 2", 1));
+        Assert.assertEquals("get", router.route("/getbyyear").handle("/getbyyear", 1));
+        Assert.assertNull(router.route("/ge"));
+        Assert.assertNull(router.route("Привет"));
+    }
+}
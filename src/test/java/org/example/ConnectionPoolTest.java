@@ -0,0 +1,92 @@
+package org.example;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+
+public class ConnectionPoolTest {
+
+    private File database;
+
+    private SqliteConnectionPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        database = File.createTempFile("pool", ".db");
+        pool = new SqliteConnectionPool("jdbc:sqlite:" + database.getAbsolutePath(), 2, 60_000);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+        database.delete();
+    }
+
+
+    /**
+     * Проверяет, что возвращенное соединение переиспользуется, а не открывается заново
+     */
+    @Test
+    public void connectionIsReusedTest() throws Exception {
+        try (PooledConnection connection = pool.acquire()) {
+            connection.getConnection().createStatement().execute("CREATE TABLE t (x INTEGER)");
+        }
+        try (PooledConnection connection = pool.acquire()) {
+            Assert.assertNotNull(connection.getConnection());
+        }
+        Assert.assertEquals(1, pool.getMisses());
+        Assert.assertEquals(1, pool.getHits());
+    }
+
+
+    /**
+     * Проверяет, что повторное закрытие не кладет соединение в пул дважды
+     */
+    @Test
+    public void doubleCloseReleasesOnceTest() throws Exception {
+        PooledConnection connection = pool.acquire();
+        connection.close();
+        connection.close();
+        try (PooledConnection first = pool.acquire(); PooledConnection second = pool.acquire()) {
+            Assert.assertNotSame(first, second);
+        }
+        Assert.assertEquals(2, pool.getMisses());
+    }
+
+
+    /**
+     * Проверяет, что подготовленный запрос берется из кэша соединения
+     */
+    @Test
+    public void statementIsCachedTest() throws Exception {
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement first = connection.prepare("SELECT 1");
+            PreparedStatement second = connection.prepare("SELECT 1");
+            Assert.assertSame(first, second);
+        }
+    }
+
+
+    /**
+     * Проверяет, что простаивающие соединения закрываются
+     */
+    @Test
+    public void idleConnectionIsEvictedTest() throws Exception {
+        SqliteConnectionPool shortPool = new SqliteConnectionPool("jdbc:sqlite:" + database.getAbsolutePath(), 1, 0);
+        try {
+            shortPool.acquire().close();
+            Thread.sleep(5);
+            shortPool.evictIdle();
+            Assert.assertEquals(1, shortPool.getEvictions());
+            shortPool.acquire().close();
+            Assert.assertEquals(2, shortPool.getMisses());
+        } finally {
+            shortPool.close();
+        }
+    }
+}
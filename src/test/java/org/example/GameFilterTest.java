@@ -0,0 +1,56 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GameFilterTest {
+
+
+    /**
+     * Проверяет, что добавленные игры всегда находятся, а доля ложных срабатываний близка к заданной
+     */
+    @Test
+    public void noFalseNegativesTest() {
+        GameFilter filter = new GameFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(i % 100, "Game " + i, "Author " + (i % 7), 1990 + i % 30);
+        }
+        filter.markReady();
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertTrue(filter.mightContain(i % 100, "Game " + i, "Author " + (i % 7), 1990 + i % 30));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            // Та же игра в другом чате - другой ключ
+            if (filter.mightContain(i % 100 + 100, "Game " + i, "Author " + (i % 7), 1990 + i % 30)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 200);
+        Assert.assertEquals(0.01, filter.currentFalsePositiveRate(), 0.002);
+    }
+
+
+    /**
+     * Проверяет, что незаполненный фильтр не отсекает игры
+     */
+    @Test
+    public void notReadyFilterPassesEverythingTest() {
+        GameFilter filter = new GameFilter(1_000, 0.01);
+        Assert.assertTrue(filter.mightContain(1, "Warcraft", "Blizzard", 2002));
+        filter.markReady();
+        Assert.assertFalse(filter.mightContain(1, "Warcraft", "Blizzard", 2002));
+        Assert.assertEquals(1, filter.getNegatives());
+    }
+
+
+    /**
+     * Проверяет размер фильтра: около 1.2 МБ на миллион игр при доле ложных срабатываний 1%
+     */
+    @Test
+    public void sizingTest() {
+        Assert.assertEquals(9_585_059, GameFilter.bitsFor(1_000_000, 0.01));
+        Assert.assertEquals(1_198_133, GameFilter.bytesPerMillion(0.01));
+        Assert.assertTrue(new GameFilter(1_000_000, 0.01).getStatistics().contains("хэшей 7"));
+    }
+}
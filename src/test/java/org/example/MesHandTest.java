@@ -4,7 +4,6 @@ import org.junit.Test;
 import org.junit.Assert;
 import org.junit.Before;
 import org.mockito.Mock;
-import org.mockito.InjectMocks;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -19,12 +18,15 @@ public class MesHandTest{
     @Mock
     private Storage storage;
 
-    @InjectMocks
     private MessageHandling messageHandling;
 
     @Before
     public void setUp() {
         ChatId = 12345L;
+        // Кэш списков игр подменяется самой заглушкой, чтобы вызовы доходили до нее
+        when(storage.getGameCache()).thenReturn(storage);
+        when(storage.getPuzzleStatistics()).thenReturn(new PuzzleStatistics());
+        messageHandling = new MessageHandling(storage);
     }
 
 
@@ -65,9 +67,9 @@ public class MesHandTest{
         Assert.assertEquals("Введите год выхода игры:", textMsg);
         textMsg = messageHandling.handleAddYear("2000", 123L);
         Assert.assertEquals("Игра 'Title' издателя Author (2000) успешно добавлена!\nОцените игру от 1 до 5:", textMsg);
-        messageHandling.parseMessage(textMsg, ChatId);
-        String response = messageHandling.parseMessage(textMsg, ChatId);
-        verify(storage, never()).addPlayedGame(anyString(), anyString(), anyInt(), anyInt(), anyLong());
+        messageHandling.parseMessage(textMsg, 123L);
+        String response = messageHandling.parseMessage(textMsg, 123L);
+        verify(storage, never()).insertIfAbsent(anyString(), anyString(), anyInt(), anyInt(), anyLong());
         Assert.assertEquals("Некорректный формат оценки. Пожалуйста, введите числовое значение от 1 до 5.", response);
     }
 
@@ -79,7 +81,7 @@ public class MesHandTest{
     public void testAddGameCommandWithInvalidYear() {
         String textMsg = "/addgame папвпав";
         String response = messageHandling.parseMessage(textMsg, ChatId);
-        verify(storage, never()).addPlayedGame(anyString(), anyString(), anyInt(), anyInt(), anyLong());
+        verify(storage, never()).insertIfAbsent(anyString(), anyString(), anyInt(), anyInt(), anyLong());
         Assert.assertEquals("Введите название игры:", response);
     }
 
@@ -90,10 +92,8 @@ public class MesHandTest{
      */
     @Test
     public void testGetPlayedGamesCommandWithEmptyList() {
-        List<String> emptyList = new ArrayList<>();
-        when(storage.getPlayedGames(ChatId)).thenReturn(emptyList);
         String response = messageHandling.parseMessage("/getplayed", ChatId);
-        verify(storage, times(1)).getPlayedGames(ChatId);
+        verify(storage, times(1)).getGamesPage(ChatId, 0, MessageHandling.PLAYED_PAGE_SIZE + 1);
         Assert.assertEquals("Список пройденных игр пуст.", response);
     }
 
@@ -103,17 +103,47 @@ public class MesHandTest{
      */
     @Test
     public void testGetPlayedGamesCommandWithNonEmptyList() {
-        List<String> nonEmptyList = new ArrayList<>();
-        nonEmptyList.add("Game 1");
-        nonEmptyList.add("Game 2");
-        when(storage.getPlayedGames(ChatId)).thenReturn(nonEmptyList);
+        when(storage.getGamesPage(ChatId, 0, MessageHandling.PLAYED_PAGE_SIZE + 1)).thenReturn(List.of(
+                new PlayedGame(1, "Game 1", "Author", 2020, 5),
+                new PlayedGame(2, "Game 2", "Author", 2021, null)));
         String response = messageHandling.parseMessage("/getplayed", ChatId);
 
-        verify(storage, times(1)).getPlayedGames(ChatId);
+        verify(storage, times(1)).getGamesPage(ChatId, 0, MessageHandling.PLAYED_PAGE_SIZE + 1);
+        Assert.assertNull(messageHandling.takeNavigation(ChatId));
         Assert.assertEquals("Пройденные игры:\n1. Game 1\n2. Game 2\n", response);
     }
 
 
+    /**
+     * Проверка листания /getplayed: первая страница дает кнопку вперед, кнопка открывает следующую страницу
+     */
+    @Test
+    public void testGetPlayedGamesPages() {
+        int size = MessageHandling.PLAYED_PAGE_SIZE;
+        List<PlayedGame> first = new ArrayList<>();
+        for (int i = 1; i <= size + 1; i++) {
+            first.add(new PlayedGame(100 + i, "Game " + i, "Author", 2020, null));
+        }
+        when(storage.getGamesPage(ChatId, 0, size + 1)).thenReturn(first);
+        String response = messageHandling.parseMessage("/getplayed", ChatId);
+        Assert.assertTrue(response.contains(size + ". Game " + size + "\n"));
+        Assert.assertFalse(response.contains("Game " + (size + 1) + "\n"));
+        Assert.assertTrue(response.endsWith("Следующая страница: /getplayed " + (size + 1) + "\n"));
+        PageNavigation navigation = messageHandling.takeNavigation(ChatId);
+        Assert.assertNull(navigation.previous());
+        Assert.assertEquals("played:next:" + (100 + size) + ":" + size, navigation.next());
+
+        when(storage.getGamesPage(ChatId, 100 + size, size + 1))
+                .thenReturn(List.of(new PlayedGame(100 + size + 1, "Game " + (size + 1), "Author", 2020, null)));
+        response = messageHandling.handleCallback(navigation.next(), ChatId);
+        Assert.assertEquals("Пройденные игры:\n" + (size + 1) + ". Game " + (size + 1) + "\n", response);
+        navigation = messageHandling.takeNavigation(ChatId);
+        Assert.assertEquals("played:prev:" + (100 + size + 1) + ":" + (size + 1), navigation.previous());
+        Assert.assertNull(navigation.next());
+        Assert.assertNull(messageHandling.handleCallback("unknown", ChatId));
+    }
+
+
     /**
      * Проверка команды /getbyauthor для получения списка пройденных игр указанного автора для случая, когда автор указан верно
      */
@@ -147,6 +177,83 @@ public class MesHandTest{
     }
 
 
+    /**
+     * Проверка, что при неточном издателе /getbyauthor предлагает игры похожих издателей
+     */
+    @Test
+    public void testGetGamesByAuthorCommandWithSimilarAuthor() {
+        when(storage.getGamesByAuthor("blizz", ChatId)).thenReturn(new ArrayList<>());
+        when(storage.searchGamesByAuthor("blizz", ChatId, MessageHandling.SEARCH_LIMIT))
+                .thenReturn(List.of(new PlayedGame(1, "Warcraft", "Blizzard", 2002, 5)));
+        messageHandling.parseMessage("/getbyauthor", ChatId);
+        String response = messageHandling.parseMessage("blizz", ChatId);
+        Assert.assertEquals("Издателя 'blizz' нет, но есть похожие:\nWarcraft - Blizzard, 2002\n", response);
+    }
+
+
+    /**
+     * Проверка, что при добавлении игры бот подсказывает известного издателя, и нажатие кнопки заменяет введенного
+     */
+    @Test
+    public void testAddGameAuthorSuggestion() {
+        when(storage.suggestAuthors("bliz", MessageHandling.SUGGEST_LIMIT + 1))
+                .thenReturn(List.of("Blizzard", "Blizzard North"));
+        messageHandling.parseMessage("/addgame", ChatId);
+        messageHandling.parseMessage("Warcraft", ChatId);
+        String response = messageHandling.parseMessage("bliz", ChatId);
+        Assert.assertEquals("Введите год выхода игры:\nПохожие известные издатели (можно выбрать кнопкой): "
+                + "Blizzard, Blizzard North", response);
+        Assert.assertEquals(List.of("Blizzard", "Blizzard North"), messageHandling.getSuggestions(ChatId).names());
+
+        Assert.assertNull(messageHandling.handleCallback(MessageHandling.SUGGEST_CALLBACK + "5", ChatId));
+        Assert.assertEquals("Издатель: Blizzard\nВведите год выхода игры:",
+                messageHandling.handleCallback(MessageHandling.SUGGEST_CALLBACK + "0", ChatId));
+        Assert.assertNull(messageHandling.handleCallback(MessageHandling.SUGGEST_CALLBACK + "1", ChatId));
+
+        messageHandling.parseMessage("2002", ChatId);
+        messageHandling.parseMessage("5", ChatId);
+        verify(storage).insertIfAbsent("Warcraft", "Blizzard", 2002, 5, ChatId);
+    }
+
+
+    /**
+     * Проверка, что /getbyauthor предлагает кнопками издателей из списка чата, а кнопка показывает их игры
+     */
+    @Test
+    public void testGetGamesByAuthorSuggestion() {
+        when(storage.getGamesByAuthor("Blizzard", ChatId)).thenReturn(List.of("Warcraft"));
+        when(storage.getAuthorsByPrefix("blizz", ChatId, MessageHandling.SUGGEST_LIMIT + 1))
+                .thenReturn(List.of("Blizzard"));
+        messageHandling.parseMessage("/getbyauthor", ChatId);
+        String response = messageHandling.parseMessage("blizz", ChatId);
+        Assert.assertTrue(response.endsWith("Издатели из вашего списка (можно выбрать кнопкой): Blizzard"));
+        Assert.assertEquals("Игры издателя 'Blizzard':\nWarcraft",
+                messageHandling.handleCallback(MessageHandling.SUGGEST_CALLBACK + "0", ChatId));
+
+        messageHandling.parseMessage("/getplayed", ChatId);
+        Assert.assertNull(messageHandling.getSuggestions(ChatId));
+    }
+
+
+    /**
+     * Проверка команды /search с запросом в той же строке и отдельным сообщением
+     */
+    @Test
+    public void testSearchCommand() {
+        when(storage.searchGames(ChatId, "вед 2015", MessageHandling.SEARCH_LIMIT))
+                .thenReturn(List.of(new PlayedGame(1, "Ведьмак 3", "CD Projekt", 2015, 5)));
+        String response = messageHandling.parseMessage("/search вед 2015", ChatId);
+        Assert.assertEquals("Найденные игры:\nВедьмак 3 - CD Projekt, 2015\n", response);
+
+        response = messageHandling.parseMessage("/search", ChatId);
+        Assert.assertEquals("Введите часть названия, издателя или год:", response);
+        response = messageHandling.parseMessage("Тетрис", ChatId);
+        verify(storage).searchGames(ChatId, "Тетрис", MessageHandling.SEARCH_LIMIT);
+        Assert.assertEquals("По запросу 'Тетрис' ничего не найдено.", response);
+        Assert.assertEquals("Привет", messageHandling.parseMessage("Привет", ChatId));
+    }
+
+
     /**
      * Проверка команды /getbyyear для получения списка пройденных игр в неправильном указанном году для случая, когда год указан неверно
      */
@@ -188,16 +295,16 @@ public class MesHandTest{
      */
     @Test
     public void testRemoveGameCommandWithValidGameNumber() {
-        List<String> playedGames = new ArrayList<>();
-        playedGames.add("Game 1");
-        playedGames.add("Game 2");
-        when(storage.getPlayedGames(ChatId)).thenReturn(playedGames);
+        when(storage.findGameId(ChatId, 1)).thenReturn(10L);
+        when(storage.removeById(ChatId, 10L)).thenReturn("Game 1");
         String response = messageHandling.parseMessage("/removegame", ChatId);
         Assert.assertEquals("Введите номер игры, которую нужно удалить:", response);
         response = messageHandling.parseMessage("1", ChatId);
-        verify(storage, times(1)).updatePlayedGames(eq(ChatId), any(ArrayList.class));
+        verify(storage, times(1)).removeById(ChatId, 10L);
         Assert.assertEquals("Игра 'Game 1' успешно удалена из списка пройденных!", response);
 
+        when(storage.getGamesPage(ChatId, 0, MessageHandling.PLAYED_PAGE_SIZE + 1))
+                .thenReturn(List.of(new PlayedGame(11, "Game 2", "Author", 2021, null)));
         response = messageHandling.parseMessage("/getplayed", ChatId);
         Assert.assertEquals("Пройденные игры:\n1. Game 2\n", response);
     }
@@ -208,14 +315,11 @@ public class MesHandTest{
      */
     @Test
     public void testRemoveGameCommandWithInvalidGameNumber() {
-        List<String> playedGames = new ArrayList<>();
-        playedGames.add("Game 1");
-        playedGames.add("Game 2");
-        when(storage.getPlayedGames(ChatId)).thenReturn(playedGames);
         String response = messageHandling.parseMessage("/removegame", ChatId);
         Assert.assertEquals("Введите номер игры, которую нужно удалить:", response);
         response = messageHandling.parseMessage("3", ChatId);
-        verify(storage, never()).updatePlayedGames(eq(ChatId), any(ArrayList.class));
+        verify(storage, times(1)).findGameId(ChatId, 3);
+        verify(storage, never()).removeById(anyLong(), anyLong());
         Assert.assertEquals("Указанный номер игры не существует.", response);
     }
 
@@ -228,7 +332,7 @@ public class MesHandTest{
         String response = messageHandling.parseMessage("/removegame", ChatId);
         Assert.assertEquals("Введите номер игры, которую нужно удалить:", response);
         response = messageHandling.parseMessage("abc", ChatId);
-        verify(storage, never()).updatePlayedGames(eq(ChatId), any(ArrayList.class));
+        verify(storage, never()).removeById(anyLong(), anyLong());
         Assert.assertEquals("Некорректный формат номера игры. Пожалуйста, введите число.", response);
     }
 
@@ -238,21 +342,34 @@ public class MesHandTest{
      */
     @Test
     public void testEditGameCommandWithValidData() {
-        List<String> playedGames = new ArrayList<>();
-        playedGames.add("Old Game\nOld Author\n2022");
-        when(storage.getPlayedGames(ChatId)).thenReturn(playedGames);
-        when(storage.getAllValues(ChatId)).thenReturn(playedGames);
+        when(storage.findGameId(ChatId, 1)).thenReturn(7L);
+        when(storage.updateById(ChatId, 7L, "New Game", "New Author", 2023)).thenReturn(new GameUpdate("Old Game", false));
         messageHandling.parseMessage("/editgame", ChatId);
         messageHandling.parseMessage("1", ChatId);
         messageHandling.parseMessage("New Game", ChatId);
         messageHandling.parseMessage("New Author", ChatId);
         String response = messageHandling.parseMessage("2023", ChatId);
-        verify(storage, times(1)).editPlayedGame(eq("Old Game"), eq("Old Author"),
-                eq(2022), eq("New Game"), eq("New Author"), eq(2023), eq(ChatId));
+        verify(storage, times(1)).updateById(ChatId, 7L, "New Game", "New Author", 2023);
         Assert.assertEquals("Игра 'Old Game' успешно заменена на игру 'New Game' от издателя New Author (2023) в списке пройденных!", response);
     }
 
 
+    /**
+     * Проверка команды /editgame, когда новая игра уже есть в списке: игра не меняется, название спрашивается заново
+     */
+    @Test
+    public void testEditGameCommandWithDuplicate() {
+        when(storage.findGameId(ChatId, 1)).thenReturn(7L);
+        when(storage.updateById(ChatId, 7L, "New Game", "New Author", 2023)).thenReturn(new GameUpdate("Old Game", true));
+        messageHandling.parseMessage("/editgame", ChatId);
+        messageHandling.parseMessage("1", ChatId);
+        messageHandling.parseMessage("New Game", ChatId);
+        messageHandling.parseMessage("New Author", ChatId);
+        Assert.assertEquals(MessageHandling.DUPLICATE_GAME, messageHandling.parseMessage("2023", ChatId));
+        Assert.assertEquals("Введите нового издателя игры.", messageHandling.parseMessage("Other Game", ChatId));
+    }
+
+
     /**
      * Проверка команды /editgame для случая, когда указанный номер игры недопустим (например, больше размера списка)
      */
@@ -265,8 +382,7 @@ public class MesHandTest{
         String response = messageHandling.parseMessage("/editgame", ChatId);
         Assert.assertEquals("Введите номер из списка:", response);
         response = messageHandling.handleEditNumber(String.valueOf(number), ChatId);
-        verify(storage, never()).editPlayedGame(
-                anyString(), anyString(), anyInt(), anyString(), anyString(), anyInt(), eq(ChatId));
+        verify(storage, never()).updateById(anyLong(), anyLong(), anyString(), anyString(), anyInt());
         Assert.assertEquals("Неверный формат. Введите номер игры из списка /getplayed", response);
     }
 
@@ -289,6 +405,7 @@ public class MesHandTest{
      */
     @Test
     public void testHandleRatingWithValidRating() {
+        when(storage.insertIfAbsent("Title", "Author", 2000, 4, 123L)).thenReturn(true);
         String response = messageHandling.parseMessage("/addgame", 123L);
         Assert.assertEquals("Введите название игры:", response);
         response = messageHandling.handleAddTitle("Title", 123L);
@@ -298,22 +415,60 @@ public class MesHandTest{
         response = messageHandling.handleAddYear("2000", 123L);
         Assert.assertEquals("Игра 'Title' издателя Author (2000) успешно добавлена!\nОцените игру от 1 до 5:", response);
         String textMsg = "4";
-        response = messageHandling.handleRating(textMsg);
-        verify(storage, times(1)).addPlayedGame(eq("Title"), eq("Author"),
+        response = messageHandling.handleRating(textMsg, 123L);
+        verify(storage, times(1)).insertIfAbsent(eq("Title"), eq("Author"),
                 eq(2000), eq(4), eq(123L));
         Assert.assertEquals("Отзыв 4⭐ оставлен.", response);
     }
 
 
+    /**
+     * Проверка, что два чата, одновременно добавляющие игры, не портят состояние друг друга
+     */
+    @Test
+    public void testAddGameInterleavedChats() {
+        long otherChatId = 54321L;
+        when(storage.insertIfAbsent(anyString(), anyString(), anyInt(), anyInt(), anyLong())).thenReturn(true);
+        messageHandling.parseMessage("/addgame", ChatId);
+        messageHandling.parseMessage("/addgame", otherChatId);
+        messageHandling.parseMessage("Title", ChatId);
+        messageHandling.parseMessage("Other", otherChatId);
+        messageHandling.parseMessage("Author", ChatId);
+        messageHandling.parseMessage("Other Author", otherChatId);
+        messageHandling.parseMessage("2000", ChatId);
+        messageHandling.parseMessage("2010", otherChatId);
+        messageHandling.parseMessage("5", otherChatId);
+        messageHandling.parseMessage("4", ChatId);
+        verify(storage).insertIfAbsent("Title", "Author", 2000, 4, ChatId);
+        verify(storage).insertIfAbsent("Other", "Other Author", 2010, 5, otherChatId);
+    }
+
+
+    /**
+     * Проверка, что игра, добавленная другим сообщением после проверки года, не дублируется
+     */
+    @Test
+    public void testHandleRatingWithDuplicateGame() {
+        messageHandling.parseMessage("/addgame", ChatId);
+        messageHandling.parseMessage("Title", ChatId);
+        messageHandling.parseMessage("Author", ChatId);
+        messageHandling.parseMessage("2000", ChatId);
+        String response = messageHandling.parseMessage("4", ChatId);
+        verify(storage).insertIfAbsent("Title", "Author", 2000, 4, ChatId);
+        Assert.assertEquals(MessageHandling.DUPLICATE_GAME, response);
+        Assert.assertEquals("Введите издателя игры:", messageHandling.parseMessage("Other Title", ChatId));
+    }
+
+
     /**
      * Тестирование метода handleRating с рейтингом больше 5 или меньше 1.
      */
     @Test
     public void testHandleRatingWithInvalidRating() {
         String textMsg = "6";
-        String response = messageHandling.handleRating(textMsg);
+        String response = messageHandling.handleRating(textMsg, ChatId);
 
-        verify(storage, never()).addPlayedGame(any(), any(), anyInt(), anyInt(), anyInt());
+        verify(storage, never()).insertIfAbsent(any(), any(), anyInt(), anyInt(), anyInt());
         Assert.assertEquals("Пожалуйста, введите оценку от 1 до 5.", response);
     }
 
@@ -324,9 +479,9 @@ public class MesHandTest{
     @Test
     public void testHandleRatingWithInvalidFormat() {
         String textMsg = "abc";
-        String response = messageHandling.handleRating(textMsg);
+        String response = messageHandling.handleRating(textMsg, ChatId);
 
-        verify(storage, never()).addPlayedGame(any(), any(), anyInt(), anyInt(), anyInt());
+        verify(storage, never()).insertIfAbsent(any(), any(), anyInt(), anyInt(), anyInt());
         Assert.assertEquals("Некорректный формат оценки. Пожалуйста, введите числовое значение от 1 до 5.", response);
     }
 
@@ -343,20 +498,48 @@ public class MesHandTest{
         games.add("1. Game 1: 3.0⭐");
         games.add("2. Game 2: 4.0⭐");
 
-        when(storage.getGamesByAverageRating(ChatId)).thenReturn(games);
+        when(storage.getTopRatedGames(0, MessageHandling.RATING_PAGE_SIZE + 1)).thenReturn(games);
         String response = messageHandling.parseMessage("/getbyrating", ChatId);
-        verify(storage).getGamesByAverageRating(ChatId);
+        verify(storage).getTopRatedGames(0, MessageHandling.RATING_PAGE_SIZE + 1);
         Assert.assertEquals("Список игр по среднему рейтингу:\n1. Game 1: 3.0⭐\n2. Game 2: 4.0⭐\n", response);
 
     }
 
 
+    /**
+     * Проверка второй страницы рейтинга и ссылки на следующую страницу
+     */
+    @Test
+    public void testHandleDefaultModeGetByRatingCommandPaging() {
+        List<String> games = new ArrayList<>();
+        for (int i = 11; i <= 21; i++) {
+            games.add(i + ". Game " + i + ": 3.0⭐");
+        }
+        when(storage.getTopRatedGames(10, MessageHandling.RATING_PAGE_SIZE + 1)).thenReturn(games);
+        String response = messageHandling.parseMessage("/getbyrating 2", ChatId);
+        Assert.assertTrue(response.startsWith("Список игр по среднему рейтингу:\n11. Game 11: 3.0⭐\n"));
+        Assert.assertFalse(response.contains("21. Game 21"));
+        Assert.assertTrue(response.endsWith("Следующая страница: /getbyrating 3\n"));
+    }
+
+
+    /**
+     * Проверка, что огромный номер страницы не переполняет смещение
+     */
+    @Test
+    public void testHandleDefaultModeGetByRatingCommandHugePage() {
+        String response = messageHandling.parseMessage("/getbyrating 300000000", ChatId);
+        verify(storage).getTopRatedGames(Integer.MAX_VALUE, MessageHandling.RATING_PAGE_SIZE + 1);
+        Assert.assertEquals("Нет данных о среднем рейтинге игр.", response);
+    }
+
+
     /**
      * Проверка ответа при отсутствии данных
      */
     @Test
     public void testHandleDefaultModeGetByRatingCommandNoGames() {
-        when(storage.getGamesByAverageRating(ChatId)).thenReturn(new ArrayList<>());
+        when(storage.getTopRatedGames(0, MessageHandling.RATING_PAGE_SIZE + 1)).thenReturn(new ArrayList<>());
         String response = messageHandling.parseMessage("/getbyrating", ChatId);
         Assert.assertEquals("Нет данных о среднем рейтинге игр.", response);
     }
@@ -0,0 +1,54 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class NameTrieTest {
+
+
+    /**
+     * Проверяет подсказки по началу имени без учета регистра и буквы ё, порядок и предел числа подсказок
+     */
+    @Test
+    public void suggestTest() {
+        NameTrie trie = new NameTrie(100);
+        for (String name : List.of("Blizzard Entertainment", "Blizzard", "Bethesda", "Bioware", "Ёжик Games", "Мосигра")) {
+            Assert.assertTrue(trie.add(name));
+        }
+        Assert.assertFalse(trie.add("BLIZZARD"));
+        Assert.assertEquals(6, trie.size());
+
+        Assert.assertEquals(List.of("Blizzard", "Blizzard Entertainment"), trie.suggest("bliz", 10));
+        Assert.assertEquals(List.of("Bethesda", "Bioware", "Blizzard"), trie.suggest("B", 3));
+        Assert.assertEquals(List.of("Blizzard Entertainment"), trie.suggest("Blizzard e", 10));
+        Assert.assertEquals(List.of("Ёжик Games"), trie.suggest("ежи", 10));
+        Assert.assertEquals(List.of("Мосигра"), trie.suggest("МОС", 10));
+        // Порядок алфавитный, а не по длине: короткое "Blox" идет после длинного "Blizzard Entertainment"
+        Assert.assertTrue(trie.add("Blox"));
+        Assert.assertEquals(List.of("Blizzard", "Blizzard Entertainment", "Blox"), trie.suggest("bl", 10));
+        Assert.assertTrue(trie.suggest("Blizzards", 10).isEmpty());
+        Assert.assertTrue(trie.suggest("x", 10).isEmpty());
+        Assert.assertTrue(trie.suggest("", 10).isEmpty());
+    }
+
+
+    /**
+     * Проверяет, что деление ребер не теряет имена, а имена сверх предела не добавляются
+     */
+    @Test
+    public void splitAndLimitTest() {
+        NameTrie trie = new NameTrie(4);
+        Assert.assertTrue(trie.add("abcdef"));
+        Assert.assertTrue(trie.add("abcxyz"));
+        Assert.assertTrue(trie.add("abc"));
+        Assert.assertTrue(trie.add("ab"));
+        Assert.assertFalse(trie.add("abd"));
+        Assert.assertFalse(trie.add("a"));
+        Assert.assertEquals(List.of("ab", "abc", "abcdef", "abcxyz"), trie.suggest("a", 10));
+        Assert.assertEquals(List.of("abcdef"), trie.suggest("abcd", 10));
+        Assert.assertTrue(trie.getStatistics().contains("не поместилось 2"));
+        Assert.assertTrue(trie.memoryBytes() > 0);
+    }
+}
@@ -0,0 +1,90 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class OutboundSenderTest {
+
+    /**
+     * Проверяет, что сообщения одного чата уходят по порядку
+     */
+    @Test
+    public void messagesKeepOrderTest() {
+        List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+        OutboundSender<Integer> sender = new OutboundSender<>("test", (chatId, message) -> delivered.add(message),
+                2, 1000, 1000, 1000);
+        for (int i = 0; i < 50; i++) {
+            sender.submit(7L, i);
+        }
+        sender.close();
+        Assert.assertEquals(50, delivered.size());
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(i, (int) delivered.get(i));
+        }
+    }
+
+
+    /**
+     * Проверяет, что сообщение, отклоненное с 429, отправляется повторно
+     */
+    @Test
+    public void rateLimitedMessageIsRetriedTest() {
+        StubTransport<String> transport = new StubTransport<>(0, 2);
+        OutboundSender<String> sender = new OutboundSender<>("test", transport, 1, 1000, 1000, 1000);
+        sender.submit(1L, "первое");
+        sender.submit(1L, "второе");
+        sender.close();
+        Assert.assertEquals(2, transport.getDelivered());
+        Assert.assertEquals(2, sender.getSent());
+        Assert.assertEquals(1, sender.getRetries());
+    }
+
+
+    /**
+     * Проверяет, что сообщение, ждущее лимита своего чата, не задерживает другие чаты того же потока
+     */
+    @Test
+    public void throttledChatDoesNotStallOthersTest() {
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        OutboundSender<String> sender = new OutboundSender<>("test", (chatId, message) -> delivered.add(message),
+                1, 1000, 1, 1);
+        sender.submit(1L, "первое");
+        sender.submit(1L, "второе");
+        sender.submit(2L, "другой чат");
+        sender.close();
+        Assert.assertEquals(List.of("первое", "другой чат", "второе"), delivered);
+    }
+
+
+    /**
+     * Проверяет, что отклоненное платформой сообщение отбрасывается без повторов,
+     * а после сетевой ошибки отправляется снова
+     */
+    @Test
+    public void onlyTransientErrorsAreRetriedTest() {
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        int[] calls = new int[1];
+        OutboundSender<String> sender = new OutboundSender<>("test", (chatId, message) -> {
+            calls[0]++;
+            if (message.equals("заблокирован")) {
+                throw new IllegalStateException("403 Forbidden");
+            }
+            if (message.equals("сеть") && calls[0] == 2) {
+                throw new java.io.IOException("Connection reset");
+            }
+            delivered.add(message);
+        }, 1, 1000, 1000, 1000);
+        sender.submit(1L, "заблокирован");
+        sender.submit(1L, "сеть");
+        sender.close();
+        Assert.assertEquals(List.of("сеть"), delivered);
+        Assert.assertEquals(3, calls[0]);
+        Assert.assertEquals(1, sender.getDropped());
+        Assert.assertEquals(1, sender.getRetries());
+        Assert.assertEquals(0, sender.getFailed());
+    }
+}
@@ -0,0 +1,80 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class PuzzleCorpusTest {
+
+    private static final String CSV = """
+            # комментарий
+            category;difficulty;question;answer;hint
+            природа;1;Белый, пушистый, летает без крыльев;Снег;Падает зимой
+            предметы;3;Имеет ушко, но не слышит;Игла;
+            """;
+
+
+    /**
+     * Проверяет, что загадки, категории и сложность читаются из собранного корпуса
+     */
+    @Test
+    public void buildAndReadTest() throws IOException {
+        PuzzleCorpus corpus = new PuzzleCorpus(PuzzleCorpusBuilder.build(new StringReader(CSV)));
+        Assert.assertEquals(2, corpus.size());
+        Assert.assertEquals("Белый, пушистый, летает без крыльев", corpus.question(0));
+        Assert.assertEquals("Снег", corpus.answer(0));
+        Assert.assertEquals("Падает зимой", corpus.hint(0));
+        Assert.assertEquals("природа", corpus.categoryName(corpus.category(0)));
+        Assert.assertEquals(1, corpus.difficulty(0));
+        Assert.assertEquals("Игла", corpus.get(1).getAnswer());
+        Assert.assertEquals("", corpus.hint(1));
+        Assert.assertEquals("предметы", corpus.categoryName(corpus.category(1)));
+        Assert.assertEquals(3, corpus.difficulty(1));
+    }
+
+
+    /**
+     * Проверяет большой корпус, отображенный в память из файла
+     */
+    @Test
+    public void mappedLargeCorpusTest() throws IOException {
+        int count = 100_000;
+        PuzzleCorpusBuilder builder = new PuzzleCorpusBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.add("категория " + (i % 10), 1 + i % 3, "Вопрос " + i, "Ответ " + i, "Подсказка " + i);
+        }
+        Path file = Files.createTempFile("puzzles", ".bin");
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                builder.writeTo(out);
+            }
+            PuzzleCorpus corpus = PuzzleCorpus.map(file);
+            Assert.assertEquals(count, corpus.size());
+            Assert.assertEquals("Вопрос 77777", corpus.question(77777));
+            Assert.assertEquals("Ответ 99999", corpus.answer(99999));
+            Assert.assertEquals("категория 7", corpus.categoryName(corpus.category(77777)));
+
+            PuzzleGame game = new PuzzleGame(corpus);
+            Assert.assertTrue(game.startPuzzle(1).startsWith("Добро пожаловать"));
+            Assert.assertTrue(game.checkAnswer(1, game.getCurrentPuzzle(1).getAnswer()).startsWith("Верно!"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    /**
+     * Проверяет встроенный корпус
+     */
+    @Test
+    public void defaultCorpusTest() {
+        PuzzleCorpus corpus = PuzzleCorpus.defaultCorpus();
+        Assert.assertEquals(20, corpus.size());
+        Assert.assertEquals("Капля", corpus.answer(0));
+    }
+}
@@ -0,0 +1,111 @@
+package org.example;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+public class PuzzleStatisticsTest {
+
+    private File database;
+
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        database = File.createTempFile("puzzle-stats", ".db");
+        url = "jdbc:sqlite:" + database.getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() {
+        database.delete();
+    }
+
+
+    /**
+     * Проверяет, что изменения копятся в памяти и после записи читаются новым хранилищем
+     */
+    @Test
+    public void flushAndReloadTest() throws SQLException {
+        Storage storage = new Storage(new SqliteConnectionPool(url));
+        PuzzleStatistics statistics = storage.getPuzzleStatistics();
+        statistics.recordAttempt(1);
+        statistics.recordAttempt(1);
+        statistics.recordCorrect(1, 3000);
+        statistics.recordHint(1);
+        statistics.recordAttempt(2);
+        Assert.assertEquals(2, statistics.getPendingChats());
+        statistics.flush();
+        Assert.assertEquals(0, statistics.getPendingChats());
+        statistics.recordAttempt(1);
+        storage.close();
+
+        Storage reopened = new Storage(new SqliteConnectionPool(url));
+        try {
+            ChatPuzzleStats chat = reopened.getPuzzleStatistics().get(1);
+            // Последняя попытка записана при закрытии хранилища
+            Assert.assertEquals(3, chat.attempts.get());
+            Assert.assertEquals(1, chat.correct.get());
+            Assert.assertEquals(1, chat.hints.get());
+            Assert.assertEquals(3000, chat.averageSolveMillis());
+            Assert.assertEquals(1, reopened.getPuzzleStatistics().get(2).attempts.get());
+        } finally {
+            reopened.close();
+        }
+    }
+
+
+    /**
+     * Проверяет, что записанные чаты выгружаются из памяти без потери счетчиков,
+     * а сохраненная строка читается в фоне и складывается с новыми изменениями
+     */
+    @Test
+    public void evictedChatKeepsCountsTest() throws SQLException {
+        Storage storage = new Storage(new SqliteConnectionPool(url));
+        try {
+            PuzzleStatistics statistics = storage.getPuzzleStatistics();
+            for (long chatId = 0; chatId <= PuzzleStatistics.MAX_CACHED_CHATS; chatId++) {
+                statistics.recordAttempt(chatId);
+            }
+            // Строки читаются по очереди одним потоком: последний прочитанный чат значит, что прочитаны все
+            statistics.get(PuzzleStatistics.MAX_CACHED_CHATS);
+            statistics.flush();
+            Assert.assertEquals(0, statistics.getPendingChats());
+            // Записанные чаты выгружаются, когда их больше предела; часть могла выгрузить фоновая запись
+            Assert.assertTrue(statistics.getCachedChats() < PuzzleStatistics.MAX_CACHED_CHATS);
+
+            statistics.recordAttempt(5);
+            statistics.recordHint(5);
+            ChatPuzzleStats chat = statistics.get(5);
+            Assert.assertEquals(2, chat.attempts.get());
+            Assert.assertEquals(1, chat.hints.get());
+        } finally {
+            storage.close();
+        }
+    }
+
+
+    /**
+     * Проверяет, что ответы и подсказки в игре попадают в статистику
+     */
+    @Test
+    public void gameRecordsStatisticsTest() {
+        PuzzleStatistics statistics = new PuzzleStatistics();
+        PuzzleGame game = new PuzzleGame(statistics);
+        Assert.assertEquals("Вы еще не отвечали на загадки.", game.getTotalStatistics(7));
+        game.startPuzzle(7);
+        game.getHint(7);
+        game.checkAnswer(7, "неверный ответ");
+        game.checkAnswer(7, game.getCurrentPuzzle(7).getAnswer());
+        ChatPuzzleStats chat = statistics.get(7);
+        Assert.assertEquals(2, chat.attempts.get());
+        Assert.assertEquals(1, chat.correct.get());
+        Assert.assertEquals(1, chat.hints.get());
+        Assert.assertTrue(game.getTotalStatistics(7).startsWith("Ответов: 2\nВерных: 1"));
+    }
+}
@@ -1,25 +1,43 @@
 package org.example;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
 public class PuzzleTest {
 
     private PuzzleGame game;
 
     private MessageHandling bot;
 
+    private File database;
+
+    private Storage storage;
+
     private long ChatId;
 
     @Before
-    public void setUp() {
+    public void setUp() throws IOException {
         // Заполняем словарь головоломками
         game = new PuzzleGame();
-        bot = new MessageHandling();
+        database = File.createTempFile("puzzle", ".db");
+        storage = new Storage(new SqliteConnectionPool("jdbc:sqlite:" + database.getAbsolutePath()));
+        bot = new MessageHandling(storage);
         ChatId = 12345L;
     }
 
+    @After
+    public void tearDown() {
+        storage.close();
+        database.delete();
+    }
+
 
     /**
      * Проверяет включение режима в загадки.
@@ -85,20 +103,36 @@ public class PuzzleTest {
         Assert.assertEquals("""
                 Режим головоломки завершен.
                 Правильных ответов: 0
-                Неправильных ответов: 20
+                Неправильных ответов: 0
                 Процент правильных ответов: 0.0%""", response);
     }
 
 
+    /**
+     * Проверяет, что статистика игры считается по ответам чата, а не по размеру каталога
+     */
+    @Test
+    public void statisticsCountAnsweredPuzzlesTest() {
+        game.startPuzzle(ChatId);
+        game.checkAnswer(ChatId, "неправильный ответ");
+        game.checkAnswer(ChatId, game.getCurrentPuzzle(ChatId).getAnswer());
+        game.checkAnswer(ChatId, game.getCurrentPuzzle(ChatId).getAnswer());
+        game.getNextPuzzle(ChatId);
+        Assert.assertEquals("""
+                Правильных ответов: 2
+                Неправильных ответов: 2
+                Процент правильных ответов: 50.0%""", game.getStatistics(ChatId));
+    }
+
+
     /**
      *  Тест проверяет правильный ответ на головоломку
      */
     @Test
     public void testCorrectAnswer() {
-        bot.parseMessage("/playpuzzle", ChatId);
-        // Устанавливаем текущую головоломку
-        game.currentPuzzle = new Puzzle("вопрос", "правильный ответ", "");
-        String response = game.checkAnswer(ChatId, "правильный ответ");
+        game.startPuzzle(ChatId);
+        // Отвечаем на текущую головоломку чата
+        String response = game.checkAnswer(ChatId, game.getCurrentPuzzle(ChatId).getAnswer());
         Assert.assertTrue(response.startsWith("Верно! Следующая загадка: "));
     }
 
@@ -108,8 +142,7 @@ public class PuzzleTest {
      */
     @Test
     public void testIncorrectAnswer() {
-        bot.parseMessage("/playpuzzle", ChatId);
-        game.currentPuzzle = new Puzzle("вопрос", "правильный ответ", "");
+        game.startPuzzle(ChatId);
         String response = game.checkAnswer(ChatId, "неправильный ответ");
         Assert.assertEquals("Неверно! Попробуйте еще раз.", response);
     }
@@ -121,10 +154,63 @@ public class PuzzleTest {
     @Test
     public void testNoCurrentPuzzle() {
         bot.parseMessage("/playpuzzle", ChatId);
-        game.currentPuzzle = null;
+        // Загадка начата только в другом экземпляре игры
         String response = game.checkAnswer(ChatId, "");
         Assert.assertEquals("Нет текущей загадки.", response);
     }
 
 
-}
\ No newline at end of file
+    /**
+     *  Тест проверяет, что решенная в одном чате загадка остается доступной в другом
+     */
+    @Test
+    public void testProgressIsPerChat() {
+        long otherChatId = ChatId + 1;
+        game.startPuzzle(ChatId);
+        game.startPuzzle(otherChatId);
+        for (int i = 0; i < 20; i++) {
+            game.checkAnswer(ChatId, game.getCurrentPuzzle(ChatId).getAnswer());
+        }
+        Assert.assertNull(game.getCurrentPuzzle(ChatId));
+        Assert.assertTrue(game.getStatistics(ChatId).startsWith("Правильных ответов: 20"));
+        Assert.assertNotNull(game.getCurrentPuzzle(otherChatId));
+        Assert.assertTrue(game.getStatistics(otherChatId).startsWith("Правильных ответов: 0"));
+
+        Assert.assertTrue(game.restart(ChatId).startsWith("Игра в загадки начата заново."));
+        Assert.assertNotNull(game.getCurrentPuzzle(ChatId));
+    }
+
+
+    /**
+     *  Тест проверяет, что пропущенные и решенные загадки не повторяются, пока не пройден весь каталог
+     */
+    @Test
+    public void testPuzzlesDoNotRepeat() {
+        PuzzleProgress progress = new PuzzleProgress(1000);
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            int puzzle = progress.pickRandom();
+            Assert.assertTrue(puzzle >= 0 && puzzle < 1000);
+            Assert.assertTrue(seen.add(puzzle));
+            progress.removeCurrent();
+        }
+        Assert.assertEquals(0, progress.remainingCount());
+        Assert.assertEquals(-1, progress.pickRandom());
+        progress.reset();
+        Assert.assertEquals(1000, progress.remainingCount());
+    }
+
+
+    /**
+     *  Тест проверяет, что прогресс чата забывается вместе с его сессией
+     */
+    @Test
+    public void testProgressIsForgottenWithSession() {
+        SessionStore sessions = new SessionStore(1, 60_000).onRemove(game::forget);
+        sessions.get(ChatId);
+        game.startPuzzle(ChatId);
+        Assert.assertNotNull(game.getCurrentPuzzle(ChatId));
+        sessions.get(ChatId + 1);
+        Assert.assertNull(game.getCurrentPuzzle(ChatId));
+    }
+}
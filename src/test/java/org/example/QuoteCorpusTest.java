@@ -0,0 +1,75 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Set;
+
+public class QuoteCorpusTest {
+
+    /**
+     * Проверяет разбор цитат, разделенных строкой %, в том числе многострочных и с переводами строк Windows
+     */
+    @Test
+    public void parseTest() {
+        String text = "Первая\nцитата\n%\n\n%\r\nВторая\r\n%\nТретья";
+        QuoteCorpus corpus = QuoteCorpus.fromText(text.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(3, corpus.size());
+        Assert.assertEquals("Первая\nцитата", corpus.quote(0));
+        Assert.assertEquals("Вторая", corpus.quote(1));
+        Assert.assertEquals("Третья", corpus.quote(2));
+    }
+
+
+    /**
+     * Проверяет, что чат получает все цитаты без повторов, прежде чем они начнут повторяться
+     */
+    @Test
+    public void noRepeatPerChatTest() {
+        StringBuilder text = new StringBuilder();
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            text.append("Цитата ").append(i).append("\n%\n");
+        }
+        QuoteService quotes = new QuoteService(QuoteCorpus.fromText(text.toString().getBytes(StandardCharsets.UTF_8)));
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            Assert.assertTrue(seen.add(quotes.getRandQuote(1)));
+        }
+        Assert.assertTrue(seen.contains(quotes.getRandQuote(1)));
+        Assert.assertTrue(seen.contains(quotes.getRandQuote()));
+    }
+
+
+    /**
+     * Проверяет, что индекс сохраняется рядом с файлом, а измененный файл перечитывается без перезапуска
+     */
+    @Test
+    public void mappedFileReloadTest() throws IOException {
+        Path file = Files.createTempFile("quotes", ".txt");
+        Path index = QuoteCorpus.indexPath(file);
+        try {
+            Files.writeString(file, "Одна\n%\nДве\n");
+            QuoteService quotes = new QuoteService(file);
+            Assert.assertEquals(2, quotes.size());
+            Assert.assertTrue(Files.exists(index));
+            Assert.assertEquals("Две", QuoteCorpus.map(file).quote(1));
+
+            Files.writeString(file, "Одна\n%\nДве\n%\nТри\n");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            quotes.reloadIfModified();
+            Assert.assertEquals(3, quotes.size());
+            Assert.assertEquals("Три", QuoteCorpus.map(file).quote(2));
+            quotes.close();
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(index);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class RatingLeaderboardTest {
+
+    /**
+     * Проверяет порядок мест и округление средней оценки
+     */
+    @Test
+    public void pageOrderTest() {
+        RatingLeaderboard leaderboard = new RatingLeaderboard();
+        leaderboard.apply("Doom", 9, 2);
+        leaderboard.apply("Quake", 5, 1);
+        leaderboard.apply("Heretic", 10, 2);
+        leaderboard.apply("Hexen", 3, 1);
+
+        Assert.assertEquals(List.of("1. Heretic: 5.0⭐", "2. Quake: 5.0⭐", "3. Doom: 4.5⭐", "4. Hexen: 3.0⭐"),
+                leaderboard.page(0, 10));
+        Assert.assertEquals(List.of("2. Quake: 5.0⭐", "3. Doom: 4.5⭐"), leaderboard.page(1, 2));
+        Assert.assertTrue(leaderboard.page(4, 10).isEmpty());
+
+        leaderboard.apply("Heretic", -10, -2);
+        Assert.assertEquals(3, leaderboard.size());
+        Assert.assertEquals(List.of("1. Quake: 5.0⭐"), leaderboard.page(0, 1));
+    }
+
+
+    /**
+     * Сравнивает страницы рейтинга после случайных изменений с сортировкой всех игр
+     */
+    @Test
+    public void pagesMatchSortedRatingsTest() {
+        RatingLeaderboard leaderboard = new RatingLeaderboard();
+        Map<String, long[]> ratings = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            String title = "Game " + random.nextInt(300);
+            long[] rating = ratings.computeIfAbsent(title, t -> new long[2]);
+            if (rating[1] > 0 && random.nextInt(4) == 0) {
+                leaderboard.apply(title, -rating[0], -rating[1]);
+                rating[0] = 0;
+                rating[1] = 0;
+            } else {
+                int value = 1 + random.nextInt(5);
+                leaderboard.apply(title, value, 1);
+                rating[0] += value;
+                rating[1]++;
+            }
+        }
+
+        List<RatingLeaderboard.Entry> expected = new ArrayList<>();
+        ratings.forEach((title, rating) -> {
+            if (rating[1] > 0) {
+                expected.add(new RatingLeaderboard.Entry(title, rating[0], rating[1]));
+            }
+        });
+        expected.sort((a, b) -> {
+            int byAverage = Long.compare(b.sum * a.count, a.sum * b.count);
+            if (byAverage != 0) {
+                return byAverage;
+            }
+            int byCount = Long.compare(b.count, a.count);
+            return byCount != 0 ? byCount : a.title.compareTo(b.title);
+        });
+
+        Assert.assertEquals(expected.size(), leaderboard.size());
+        for (int offset = 0; offset < expected.size() + 10; offset += 7) {
+            List<String> page = leaderboard.page(offset, 10);
+            List<String> expectedPage = new ArrayList<>();
+            for (int i = offset; i < Math.min(expected.size(), offset + 10); i++) {
+                RatingLeaderboard.Entry entry = expected.get(i);
+                expectedPage.add((i + 1) + ". " + entry.title + ": " + entry.formattedAverage() + "⭐");
+            }
+            Assert.assertEquals(expectedPage, page);
+        }
+    }
+}
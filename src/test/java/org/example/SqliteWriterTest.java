@@ -0,0 +1,148 @@
+package org.example;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class SqliteWriterTest {
+
+    private File database;
+
+    private SqliteWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        database = File.createTempFile("writer", ".db");
+        writer = new SqliteWriter(new WalConnectionPool("jdbc:sqlite:" + database.getAbsolutePath(), 1),
+                SqliteWriter.Durability.FULL, 64, 1000);
+        writer.executeExclusive(connection -> connection.getConnection().createStatement()
+                .execute("CREATE TABLE t (x INTEGER NOT NULL)"));
+    }
+
+    @After
+    public void tearDown() {
+        writer.close();
+        database.delete();
+    }
+
+    private CompletableFuture<Integer> insert(Integer value) {
+        return writer.submit(connection -> {
+            PreparedStatement statement = connection.prepare("INSERT INTO t (x) VALUES (?)");
+            statement.setObject(1, value);
+            return statement.executeUpdate();
+        });
+    }
+
+    private long count() throws SQLException {
+        return writer.execute(connection -> {
+            try (ResultSet resultSet = connection.prepare("SELECT COUNT(*) FROM t").executeQuery()) {
+                return resultSet.getLong(1);
+            }
+        });
+    }
+
+
+    /**
+     * Проверяет, что одновременные запросы фиксируются одной транзакцией
+     */
+    @Test
+    public void groupCommitTest() throws Exception {
+        // Занимаем писателя, чтобы запросы успели накопиться в очереди
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> busy = writer.submit(connection -> {
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new SQLException(e);
+            }
+        });
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(insert(i));
+        }
+        release.countDown();
+        Assert.assertTrue(busy.get());
+        for (CompletableFuture<Integer> result : results) {
+            Assert.assertEquals(Integer.valueOf(1), result.get());
+        }
+        Assert.assertEquals(20, count());
+        Assert.assertEquals(22, writer.getOperations());
+        Assert.assertTrue(writer.getBatches() <= 3);
+    }
+
+
+    /**
+     * Проверяет, что ошибка одного запроса откатывает только его, а остальные запросы пачки фиксируются
+     */
+    @Test
+    public void failedOperationIsRolledBackAloneTest() throws Exception {
+        CompletableFuture<Integer> first = insert(1);
+        CompletableFuture<Integer> failed = insert(null);
+        CompletableFuture<Integer> last = insert(3);
+        Assert.assertEquals(Integer.valueOf(1), first.get());
+        Assert.assertEquals(Integer.valueOf(1), last.get());
+        try {
+            failed.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLException);
+        }
+        Assert.assertEquals(2, count());
+    }
+
+
+    /**
+     * Проверяет, что после остановки писатель отклоняет новые запросы
+     */
+    @Test(expected = SQLException.class)
+    public void closedWriterRejectsTest() throws Exception {
+        insert(1).get();
+        writer.close();
+        count();
+    }
+
+
+    /**
+     * Проверяет, что запросы, поставленные одновременно с остановкой, не зависают:
+     * каждый либо выполняется, либо завершается ошибкой
+     */
+    @Test
+    public void submitRacingCloseCompletesTest() throws Exception {
+        List<CompletableFuture<Integer>> results = Collections.synchronizedList(new ArrayList<>());
+        Thread submitter = new Thread(() -> {
+            CompletableFuture<Integer> result;
+            do {
+                result = insert(1);
+                results.add(result);
+            } while (!result.isCompletedExceptionally());
+        });
+        submitter.start();
+        Thread.sleep(20);
+        writer.close();
+        submitter.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertFalse(submitter.isAlive());
+        synchronized (results) {
+            for (CompletableFuture<Integer> result : results) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof SQLException);
+                }
+            }
+        }
+    }
+}
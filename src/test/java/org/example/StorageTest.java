@@ -0,0 +1,409 @@
+package org.example;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class StorageTest {
+
+    private File database;
+
+    private String url;
+
+    private Storage storage;
+
+    @Before
+    public void setUp() throws IOException {
+        database = File.createTempFile("storage", ".db");
+        url = "jdbc:sqlite:" + database.getAbsolutePath();
+        storage = new Storage(new SqliteConnectionPool(url));
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+        database.delete();
+    }
+
+
+    /**
+     * Проверяет, что при запуске схема доводится до последней версии
+     */
+    @Test
+    public void schemaIsMigratedTest() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url)) {
+            Assert.assertEquals(new SchemaMigrations().latestVersion(), SchemaMigrations.currentVersion(connection));
+        }
+    }
+
+
+    /**
+     * Проверяет, что таблица старого формата без id пересоздается с сохранением данных
+     */
+    @Test
+    public void legacyTableIsMigratedTest() throws Exception {
+        File legacy = File.createTempFile("legacy", ".db");
+        String legacyUrl = "jdbc:sqlite:" + legacy.getAbsolutePath();
+        try (Connection connection = DriverManager.getConnection(legacyUrl);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE completed_games (title TEXT, author TEXT, year INTEGER, chat_id INTEGER, rating INTEGER)");
+            statement.execute("INSERT INTO completed_games VALUES ('Warcraft', 'Blizzard', 2001, 1, 5)");
+        }
+        Storage legacyStorage = new Storage(new SqliteConnectionPool(legacyUrl));
+        try {
+            Assert.assertEquals(List.of("Warcraft"), legacyStorage.getPlayedGames(1));
+            // Старые игры попадают и в индекс поиска
+            Assert.assertEquals(List.of("Warcraft"), titles(legacyStorage.searchGames(1, "warc", 10)));
+            try (Connection connection = DriverManager.getConnection(legacyUrl);
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT id FROM completed_games")) {
+                Assert.assertTrue(resultSet.next());
+                Assert.assertEquals(1, resultSet.getLong("id"));
+            }
+        } finally {
+            legacyStorage.close();
+            legacy.delete();
+        }
+    }
+
+
+    /**
+     * Проверяет, что миграция удаляет дубликаты старой базы, а новые дубликаты не записываются
+     */
+    @Test
+    public void duplicatesAreRejectedTest() throws Exception {
+        File legacy = File.createTempFile("legacy", ".db");
+        String legacyUrl = "jdbc:sqlite:" + legacy.getAbsolutePath();
+        try (Connection connection = DriverManager.getConnection(legacyUrl);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE completed_games (title TEXT, author TEXT, year INTEGER, chat_id INTEGER, rating INTEGER)");
+            statement.execute("INSERT INTO completed_games VALUES ('Warcraft', 'Blizzard', 2001, 1, 5)");
+            statement.execute("INSERT INTO completed_games VALUES ('Warcraft', 'Blizzard', 2001, 1, 1)");
+            statement.execute("INSERT INTO completed_games VALUES ('Warcraft', 'Blizzard', 2001, 2, 3)");
+        }
+        Storage legacyStorage = new Storage(new SqliteConnectionPool(legacyUrl));
+        try {
+            Assert.assertEquals(List.of("Warcraft"), legacyStorage.getPlayedGames(1));
+            Assert.assertEquals(List.of("1. Warcraft: 4.0⭐"), legacyStorage.getTopRatedGames(0, 10));
+
+            Assert.assertFalse(legacyStorage.insertIfAbsent("Warcraft", "Blizzard", 2001, 1, 1));
+            Assert.assertTrue(legacyStorage.insertIfAbsent("Diablo", "Blizzard", 1997, 2, 1));
+            Assert.assertEquals(List.of("Warcraft", "Diablo"), legacyStorage.getPlayedGames(1));
+            Assert.assertEquals(List.of("1. Warcraft: 4.0⭐", "2. Diablo: 2.0⭐"), legacyStorage.getTopRatedGames(0, 10));
+
+            long diablo = legacyStorage.findGameId(1, 2);
+            Assert.assertEquals(new GameUpdate("Diablo", true), legacyStorage.updateById(1, diablo, "Warcraft", "Blizzard", 2001));
+            Assert.assertEquals(GameUpdate.NOT_FOUND, legacyStorage.updateById(2, diablo, "Warcraft", "Blizzard", 2001));
+            Assert.assertEquals(List.of("Warcraft", "Diablo"), legacyStorage.getPlayedGames(1));
+            Assert.assertEquals(List.of("1. Warcraft: 4.0⭐", "2. Diablo: 2.0⭐"), legacyStorage.getTopRatedGames(0, 10));
+        } finally {
+            legacyStorage.close();
+            legacy.delete();
+        }
+    }
+
+
+    /**
+     * Проверяет, что название и издатель хранятся в словарях один раз, сколько бы чатов ни прошли игру
+     */
+    @Test
+    public void namesAreStoredOnceTest() throws SQLException {
+        for (long chatId = 1; chatId <= 3; chatId++) {
+            storage.addPlayedGame("Warcraft", "Blizzard", 2001, 5, chatId);
+        }
+        storage.addPlayedGame("Diablo", "Blizzard", 1997, 4, 1);
+        storage.updateById(1, storage.findGameId(1, 2), "Warcraft", "Blizzard", 2002);
+        Assert.assertEquals(List.of("Warcraft", "Warcraft"), storage.getPlayedGames(1));
+        Assert.assertEquals(List.of("Warcraft"), storage.getGamesByAuthor("Blizzard", 3));
+        Assert.assertTrue(storage.gameExists("Warcraft", "Blizzard", 2002, 1));
+        Assert.assertEquals(List.of("1. Warcraft: 4.8⭐"), storage.getTopRatedGames(0, 10));
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            Assert.assertEquals(2, count(statement, "SELECT COUNT(*) FROM titles"));
+            Assert.assertEquals(1, count(statement, "SELECT COUNT(*) FROM authors"));
+            Assert.assertEquals(1, count(statement, "SELECT COUNT(*) FROM game_ratings"));
+        }
+    }
+
+    private static long count(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.getLong(1);
+        }
+    }
+
+
+    /**
+     * Проверяет, что запросы, выполняемые на каждое сообщение, не сканируют таблицу целиком
+     */
+    @Test
+    public void hotQueriesUseIndexesTest() throws SQLException {
+        String[] hotQueries = {
+                Storage.SELECT_TITLES_BY_CHAT,
+                Storage.SELECT_TITLES_BY_AUTHOR,
+                Storage.SELECT_AUTHORS_BY_CHAT,
+                Storage.SELECT_TITLES_BY_YEAR,
+                Storage.SELECT_GAME_EXISTS,
+                Storage.SELECT_GAMES_BY_CHAT,
+                Storage.SELECT_GAME_ID_BY_NUMBER,
+                Storage.SELECT_GAME_BY_ID,
+                Storage.SELECT_GAME_BY_KEY,
+                Storage.SELECT_GAMES_PAGE,
+                Storage.SELECT_GAMES_PAGE_BEFORE,
+        };
+        try (Connection connection = DriverManager.getConnection(url)) {
+            for (String sql : hotQueries) {
+                for (String step : queryPlan(connection, sql)) {
+                    Assert.assertFalse("Полный просмотр в запросе " + sql + ": " + step, step.startsWith("SCAN"));
+                    Assert.assertFalse("Сортировка в запросе " + sql + ": " + step, step.contains("TEMP B-TREE"));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Проверяет, что рейтинг обновляется при добавлении, изменении и очистке игр
+     */
+    @Test
+    public void leaderboardFollowsWritesTest() {
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 5, 1);
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 4, 2);
+        storage.addPlayedGame("Minecraft", "Mojang", 2010, 3, 2);
+        Assert.assertEquals(List.of("1. Warcraft: 4.5⭐", "2. Minecraft: 3.0⭐"), storage.getTopRatedGames(0, 10));
+        Assert.assertEquals(List.of("2. Minecraft: 3.0⭐"), storage.getTopRatedGames(1, 10));
+
+        storage.editPlayedGame("Minecraft", "Mojang", 2010, "Terraria", "Re-Logic", 2011, 2);
+        Assert.assertEquals(List.of("1. Warcraft: 4.5⭐", "2. Terraria: 3.0⭐"), storage.getTopRatedGames(0, 10));
+
+        storage.clearPlayedGames(2);
+        Assert.assertEquals(List.of("1. Warcraft: 5.0⭐"), storage.getGamesByAverageRating(1));
+
+        // После перезапуска рейтинг восстанавливается из таблицы game_ratings
+        storage.close();
+        storage = new Storage(new SqliteConnectionPool(url));
+        Assert.assertEquals(List.of("1. Warcraft: 5.0⭐"), storage.getTopRatedGames(0, 10));
+    }
+
+
+    /**
+     * Проверяет, что фильтр заполняется из базы при запуске и следит за записями,
+     * а отсутствующие игры отсекаются без запроса к базе
+     */
+    @Test
+    public void gameFilterTest() {
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 5, 1);
+        storage.close();
+        storage = new Storage(new SqliteConnectionPool(url));
+        GameFilter filter = storage.getGameFilter();
+        Assert.assertTrue(filter.isReady());
+
+        Assert.assertTrue(storage.gameExists("Warcraft", "Blizzard", 2001, 1));
+        storage.updateById(1, storage.findGameId(1, 1), "Diablo", "Blizzard", 1997);
+        Assert.assertTrue(storage.gameExists("Diablo", "Blizzard", 1997, 1));
+        Assert.assertTrue(storage.insertIfAbsent("Minecraft", "Mojang", 2011, 3, 2));
+        Assert.assertTrue(storage.gameExists("Minecraft", "Mojang", 2011, 2));
+
+        long negatives = filter.getNegatives();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(storage.gameExists("Game " + i, "Nobody", 2000, 1));
+        }
+        Assert.assertEquals(100, filter.getNegatives() - negatives + filter.getFalsePositives());
+        Assert.assertTrue(storage.getStatistics().contains("Фильтр игр: заполнен, ключей 3"));
+    }
+
+
+    /**
+     * Проверяет поиск по началу слов без учета регистра и буквы ё, порядок результатов
+     * и то, что индекс поиска следует за записями
+     */
+    @Test
+    public void searchTest() throws SQLException {
+        storage.addPlayedGame("Ведьмак 3: Дикая Охота", "CD Projekt", 2015, 5, 1);
+        storage.addPlayedGame("Warcraft III", "Blizzard", 2002, 4, 1);
+        storage.addPlayedGame("Ёлки", "Blizzard Ёж", 2011, 3, 1);
+        storage.addPlayedGame("Blizzard Arcade Collection", "Activision", 2021, 3, 1);
+        storage.addPlayedGame("Warcraft", "Blizzard", 2002, 5, -100);
+
+        Assert.assertEquals(List.of("Ведьмак 3: Дикая Охота"), titles(storage.searchGames(1, "дикая ВЕД", 10)));
+        Assert.assertEquals(List.of("Ёлки"), titles(storage.searchGames(1, "елк", 10)));
+        Assert.assertEquals(List.of("Warcraft"), titles(storage.searchGames(-100, "war", 10)));
+        Assert.assertEquals(List.of("Warcraft III"), titles(storage.searchGames(1, "bliz 2002", 10)));
+        // Совпадение в названии выше совпадения в издателе
+        Assert.assertEquals("Blizzard Arcade Collection", storage.searchGames(1, "blizzard", 10).get(0).title());
+        Assert.assertEquals(2, storage.searchGames(1, "blizzard", 2).size());
+        Assert.assertEquals(List.of("Warcraft III", "Ёлки"), titles(storage.searchGamesByAuthor("BLIZ", 1, 10)));
+        Assert.assertTrue(storage.searchGames(1, "\" * OR :", 10).isEmpty());
+
+        storage.updateById(1, storage.findGameId(1, 2), "StarCraft", "Blizzard", 1998);
+        Assert.assertEquals(List.of("StarCraft"), titles(storage.searchGames(1, "star", 10)));
+        Assert.assertTrue(storage.searchGames(1, "warcraft", 10).isEmpty());
+        storage.removeById(1, storage.findGameId(1, 1));
+        Assert.assertTrue(storage.searchGames(1, "ведьмак", 10).isEmpty());
+        storage.clearPlayedGames(-100);
+        Assert.assertTrue(storage.searchGames(-100, "war", 10).isEmpty());
+
+        try (Connection connection = DriverManager.getConnection(url)) {
+            // Просматриваются только games_fts по индексу и не больше limit найденных строк f
+            for (String step : queryPlan(connection, Storage.SEARCH_GAMES)) {
+                Assert.assertFalse("Полный просмотр в поиске: " + step, step.matches("SCAN (g|t|a)\\b.*"));
+            }
+        }
+    }
+
+
+    /**
+     * Проверяет, что подсказки имен пополняются при записи и восстанавливаются из словарей после перезапуска
+     */
+    @Test
+    public void nameSuggestionsTest() {
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 5, 1);
+        storage.addPlayedGame("Diablo", "Blizzard North", 1997, 4, 2);
+        Assert.assertEquals(List.of("Blizzard", "Blizzard North"), storage.suggestAuthors("bli", 10));
+        Assert.assertEquals(List.of("Diablo"), storage.suggestTitles("DIA", 10));
+
+        storage.close();
+        storage = new Storage(new SqliteConnectionPool(url));
+        Assert.assertEquals(List.of("Blizzard", "Blizzard North"), storage.suggestAuthors("bli", 10));
+        storage.updateById(1, storage.findGameId(1, 1), "StarCraft", "Blizzard", 1998);
+        Assert.assertEquals(List.of("StarCraft"), storage.suggestTitles("star", 10));
+    }
+
+
+    /**
+     * Проверяет, что подсказка издателей чата берет только издателей его списка, по алфавиту и без учета регистра
+     */
+    @Test
+    public void authorsByPrefixTest() {
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 5, 1);
+        storage.addPlayedGame("Diablo", "Blizzard North", 1997, 4, 1);
+        storage.addPlayedGame("Doom", "Bethesda", 2016, 4, 1);
+        storage.addPlayedGame("Overwatch", "Blizzard Entertainment", 2016, 3, 2);
+
+        Assert.assertEquals(List.of("Blizzard", "Blizzard North"), storage.getAuthorsByPrefix("BLI", 1, 10));
+        Assert.assertEquals(List.of("Bethesda"), storage.getAuthorsByPrefix("b", 1, 1));
+        Assert.assertEquals(List.of("Blizzard Entertainment"), storage.getAuthorsByPrefix("bli", 2, 10));
+        Assert.assertTrue(storage.getAuthorsByPrefix("bli", 3, 10).isEmpty());
+    }
+
+
+    /**
+     * Проверяет удаление и изменение одной игры по номеру в списке, не затрагивая одноименные игры
+     */
+    @Test
+    public void removeAndUpdateByIdTest() {
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 5, 1);
+        storage.addPlayedGame("Minecraft", "Mojang", 2010, 3, 1);
+        storage.addPlayedGame("Warcraft", "Blizzard", 2002, 4, 1);
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 2, 2);
+
+        long second = storage.findGameId(1, 2);
+        Assert.assertEquals(0, storage.findGameId(1, 4));
+        Assert.assertNull(storage.removeById(2, second));
+        Assert.assertEquals("Minecraft", storage.removeById(1, second));
+        Assert.assertEquals(List.of("Warcraft", "Warcraft"), storage.getPlayedGames(1));
+        Assert.assertEquals(List.of("1. Warcraft: 3.7⭐"), storage.getTopRatedGames(0, 10));
+
+        Assert.assertEquals(new GameUpdate("Warcraft", false), storage.updateById(1, storage.findGameId(1, 2), "Diablo", "Blizzard", 1997));
+        Assert.assertEquals(List.of("Warcraft", "Diablo"), storage.getPlayedGames(1));
+        Assert.assertEquals(List.of("Warcraft"), storage.getPlayedGames(2));
+        Assert.assertEquals(List.of("1. Diablo: 4.0⭐", "2. Warcraft: 3.5⭐"), storage.getTopRatedGames(0, 10));
+    }
+
+
+    /**
+     * Проверяет чтение игр со всеми полями списком и потоком, а также возврат соединения после закрытия потока
+     */
+    @Test
+    public void typedGamesTest() {
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 5, 1);
+        storage.addPlayedGame("Minecraft", "Mojang", 2010, 3, 1);
+        List<PlayedGame> games = storage.getGames(1);
+        Assert.assertEquals(2, games.size());
+        Assert.assertEquals(new PlayedGame(games.get(0).id(), "Warcraft", "Blizzard", 2001, 5), games.get(0));
+        Assert.assertEquals("Mojang", games.get(1).author());
+        Assert.assertTrue(storage.getGames(2).isEmpty());
+
+        // Потоков открывается больше, чем соединений в пуле: каждое возвращается при закрытии
+        for (int i = 0; i < 50; i++) {
+            try (Stream<PlayedGame> stream = storage.streamGames(1, 1)) {
+                Assert.assertEquals(2010, stream.skip(1).findFirst().orElseThrow().year());
+            }
+        }
+    }
+
+
+    /**
+     * Проверяет постраничное чтение игр по id в обе стороны
+     */
+    @Test
+    public void keysetPagesTest() {
+        for (int i = 1; i <= 5; i++) {
+            storage.addPlayedGame("Game " + i, "Author", 2000 + i, 5, 1);
+            storage.addPlayedGame("Other " + i, "Author", 2000 + i, 5, 2);
+        }
+        List<PlayedGame> first = storage.getGamesPage(1, 0, 2);
+        Assert.assertEquals(List.of("Game 1", "Game 2"), titles(first));
+        List<PlayedGame> second = storage.getGamesPage(1, first.get(1).id(), 2);
+        Assert.assertEquals(List.of("Game 3", "Game 4"), titles(second));
+        Assert.assertEquals(List.of("Game 5"), titles(storage.getGamesPage(1, second.get(1).id(), 2)));
+        Assert.assertEquals(List.of("Game 1", "Game 2"), titles(storage.getGamesPageBefore(1, second.get(0).id(), 2)));
+        Assert.assertTrue(storage.getGamesPageBefore(1, first.get(0).id(), 2).isEmpty());
+    }
+
+
+    /**
+     * Проверяет, что ошибка базы не останавливает процесс: запросы к закрытому хранилищу
+     * возвращают пустой результат
+     */
+    @Test
+    public void failuresReturnEmptyResultsTest() {
+        storage.addPlayedGame("Warcraft", "Blizzard", 2001, 5, 1);
+        storage.close();
+
+        Assert.assertFalse(storage.insertIfAbsent("Minecraft", "Mojang", 2010, 3, 1));
+        Assert.assertNull(storage.removeById(1, 1));
+        Assert.assertTrue(storage.getPlayedGames(1).isEmpty());
+        Assert.assertTrue(storage.getGames(1).isEmpty());
+        Assert.assertTrue(storage.getGamesPage(1, 0, 10).isEmpty());
+        Assert.assertTrue(storage.searchGames(1, "Warcraft", 10).isEmpty());
+        Assert.assertFalse(storage.gameExists("Warcraft", "Blizzard", 2001, 1));
+        Assert.assertEquals(0, storage.findGameId(1, 1));
+    }
+
+
+    private static List<String> titles(List<PlayedGame> games) {
+        List<String> titles = new ArrayList<>();
+        for (PlayedGame game : games) {
+            titles.add(game.title());
+        }
+        return titles;
+    }
+
+
+    /**
+     * Возвращает шаги плана выполнения запроса
+     */
+    static List<String> queryPlan(Connection connection, String sql) throws SQLException {
+        List<String> steps = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                steps.add(resultSet.getString("detail"));
+            }
+        }
+        return steps;
+    }
+}
@@ -0,0 +1,69 @@
+package org.example;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class UpdateDispatcherTest {
+
+    private UpdateDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new UpdateDispatcher(4, 16);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.close();
+    }
+
+
+    /**
+     * Проверяет, что обновления одного чата обрабатываются в порядке поступления
+     */
+    @Test
+    public void sameChatKeepsOrderTest() throws InterruptedException {
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int number = i;
+            dispatcher.dispatch(42L, () -> {
+                handled.add(number);
+                done.countDown();
+            });
+        }
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, (int) handled.get(i));
+        }
+        Assert.assertEquals(100, dispatcher.getStage(UpdateDispatcher.STAGE_QUEUE).getCount());
+    }
+
+
+    /**
+     * Проверяет, что медленный чат не задерживает чат из другой полосы
+     */
+    @Test
+    public void slowChatDoesNotBlockOthersTest() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        dispatcher.dispatch(0L, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.dispatch(1L, otherDone::countDown);
+        Assert.assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+}
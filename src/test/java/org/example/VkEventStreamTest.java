@@ -0,0 +1,90 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VkEventStreamTest {
+
+    private HttpServer server;
+
+    private final AtomicInteger sessionsOpened = new AtomicInteger();
+
+    /**
+     * Поддельный сервер VK: выдает сессию Long Poll, на ts=1 отдает некорректное событие и одно сообщение,
+     * на ts=2 один раз сообщает об истекшем ключе, а затем возвращает пустые ответы.
+     */
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        AtomicInteger expired = new AtomicInteger();
+        server.createContext("/method/groups.getLongPollServer", exchange -> {
+            sessionsOpened.incrementAndGet();
+            reply(exchange, "{\"response\":{\"key\":\"k\",\"server\":\"" + base + "/lp\",\"ts\":\"1\"}}");
+        });
+        server.createContext("/lp", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            if (query.contains("ts=1")) {
+                reply(exchange, "{\"ts\":\"2\",\"updates\":[{\"type\":\"message_new\",\"object\":{}},"
+                        + "{\"type\":\"message_new\",\"object\":{\"message\":{\"peer_id\":5,\"text\":\"привет\"}}}]}");
+            } else if (expired.getAndIncrement() == 0) {
+                reply(exchange, "{\"failed\":2}");
+            } else {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                reply(exchange, "{\"ts\":\"2\",\"updates\":[]}");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static void reply(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+
+    /**
+     * Проверяет, что сообщение доставляется в очередь, некорректное событие рядом с ним пропускается,
+     * а сессия переоткрывается только по требованию VK
+     */
+    @Test
+    public void messageIsReceivedAndSessionReopenedOnlyWhenAskedTest() throws InterruptedException {
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        VkEventStream events = new VkEventStream(new HttpVkLongPollTransport(base, 1, "token"));
+        events.start();
+        try {
+            VkIncoming message = events.take(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(message);
+            Assert.assertEquals(5, message.peerId);
+            Assert.assertEquals("привет", message.text);
+            Thread.sleep(300);
+            Assert.assertEquals(2, sessionsOpened.get());
+            Assert.assertEquals(1, events.getReceived());
+        } finally {
+            events.close();
+        }
+    }
+}